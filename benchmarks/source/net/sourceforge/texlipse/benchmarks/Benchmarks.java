@@ -0,0 +1,32 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+/**
+ * Runs the benchmarks of TeXlipse.
+ *
+ * <p>The benchmarks are compiled with jmh-core and the JMH annotation
+ * processor (jmh-generator-annprocess) on the class path, together with
+ * the plugin classes and the Eclipse and jazzy jars the plugin depends on.
+ * They run headless, the plugin does not need to be started.
+ * <code>benchmarks/build.xml</code> compiles and runs them with Ant.
+ * The arguments are those of the JMH runner, for example
+ * <code>ParserBenchmark -p lines=10000</code> runs only the parser
+ * benchmarks on documents of 10000 lines.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        org.openjdk.jmh.Main.main(args);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.texlipse.bibparser.BibParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of parsing BibTeX files for the citation completions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BibBenchmark {
+
+    @Param({"10000", "50000", "200000"})
+    public int entries;
+
+    private String bibFile;
+
+    @Setup
+    public void setUp() {
+        bibFile = new CorpusGenerator(entries).bibFile(entries);
+    }
+
+    @Benchmark
+    public List<?> getEntries() throws IOException {
+        BibParser parser = new BibParser(new StringReader(bibFile));
+        return parser.getEntries();
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.texlipse.model.ReferenceContainer;
+import net.sourceforge.texlipse.model.ReferenceEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the checks of the \cite keys done after each parse of a
+ * document: every cite of the document is looked up from the BibTeX
+ * container. Some of the cited keys differ in case from the entries and
+ * some are missing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CiteCheckBenchmark {
+
+    @Param({"100000"})
+    public int entries;
+
+    @Param({"50000"})
+    public int cites;
+
+    private ReferenceContainer bibContainer;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(cites);
+        List<ReferenceEntry> bibs = new ArrayList<ReferenceEntry>(entries);
+        for (int i = 0; i < entries; i++) {
+            String key = CorpusGenerator.bibKey(i);
+            if (i % 3 == 0) {
+                key = Character.toUpperCase(key.charAt(0)) + key.substring(1);
+            }
+            bibs.add(new ReferenceEntry(key, "info"));
+        }
+        bibContainer = new ReferenceContainer();
+        bibContainer.addRefSource("references.bib", bibs);
+        bibContainer.organize();
+
+        keys = new String[cites];
+        for (int i = 0; i < cites; i++) {
+            String key = bibs.get(random.nextInt(entries)).key;
+            switch (i % 4) {
+            case 0:
+                // missing key
+                keys[i] = key + "x";
+                break;
+            case 1:
+                // wrong case
+                keys[i] = key.toUpperCase();
+                break;
+            default:
+                keys[i] = key;
+            }
+        }
+    }
+
+    @Benchmark
+    public int binTest() {
+        int found = 0;
+        for (String key : keys) {
+            if (bibContainer.binTest(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public ReferenceContainer organize() {
+        bibContainer.organize();
+        return bibContainer;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.texlipse.model.ReferenceContainer;
+import net.sourceforge.texlipse.model.ReferenceEntry;
+import net.sourceforge.texlipse.model.ReferenceManager;
+import net.sourceforge.texlipse.model.TexCommandContainer;
+import net.sourceforge.texlipse.model.TexCommandEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the reference containers and the completion lookups done
+ * on each keystroke in \ref, \cite and command completion. Each lookup
+ * benchmark runs a fixed set of prefixes of 1 to 4 characters, the search
+ * benchmark a set of parts of the authors of the entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CompletionBenchmark {
+
+    private static final int SOURCES = 10;
+    private static final int QUERIES = 256;
+    private static final int SEARCH_LIMIT = 50;
+
+    @Param({"1000", "20000", "200000"})
+    public int entries;
+
+    private ReferenceContainer bibContainer;
+    private ReferenceContainer labelContainer;
+    private TexCommandContainer commandContainer;
+    private ReferenceManager manager;
+
+    private String[] bibPrefixes;
+    private String[] labelPrefixes;
+    private String[] commandPrefixes;
+    private String[] searchTerms;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(entries);
+        bibContainer = new ReferenceContainer();
+        labelContainer = new ReferenceContainer();
+        commandContainer = new TexCommandContainer();
+        for (int s = 0; s < SOURCES; s++) {
+            List<ReferenceEntry> bibs = new ArrayList<ReferenceEntry>();
+            List<ReferenceEntry> labels = new ArrayList<ReferenceEntry>();
+            List<TexCommandEntry> commands = new ArrayList<TexCommandEntry>();
+            for (int i = s; i < entries; i += SOURCES) {
+                ReferenceEntry bib = new ReferenceEntry(CorpusGenerator.bibKey(i), "info");
+                bib.author = author(i);
+                bib.year = String.valueOf(1950 + i % 70);
+                bibs.add(bib);
+                labels.add(new ReferenceEntry(CorpusGenerator.labelKey(i), "info"));
+                if (i % 100 == 0) {
+                    commands.add(new TexCommandEntry(CorpusGenerator.word(i), "", 1));
+                }
+            }
+            bibContainer.addRefSource("references" + s + ".bib", bibs);
+            labelContainer.addRefSource("chapter" + s + ".tex", labels);
+            commandContainer.addRefSource("chapter" + s + ".tex", commands);
+        }
+        bibContainer.organize();
+        labelContainer.organize();
+        commandContainer.organize();
+        manager = new ReferenceManager(bibContainer, labelContainer, commandContainer);
+
+        bibPrefixes = new String[QUERIES];
+        labelPrefixes = new String[QUERIES];
+        commandPrefixes = new String[QUERIES];
+        searchTerms = new String[QUERIES];
+        keys = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            int index = random.nextInt(entries);
+            int length = 1 + random.nextInt(4);
+            String bib = CorpusGenerator.bibKey(index);
+            String label = CorpusGenerator.labelKey(index);
+            String command = CorpusGenerator.word(index);
+            bibPrefixes[i] = bib.substring(0, Math.min(length, bib.length()));
+            labelPrefixes[i] = label.substring(0, Math.min(length, label.length()));
+            commandPrefixes[i] = command.substring(0, Math.min(length, command.length()));
+            String author = author(index);
+            int start = random.nextInt(author.length() / 2);
+            searchTerms[i] = author.substring(start, start + 1 + random.nextInt(author.length() / 2));
+            // every other key is missing
+            keys[i] = i % 2 == 0 ? bib : bib + "x";
+        }
+    }
+
+    private static String author(int index) {
+        return CorpusGenerator.word(index * 7) + " and " + CorpusGenerator.word(index * 13);
+    }
+
+    @Benchmark
+    public void organize() {
+        bibContainer.organize();
+        labelContainer.organize();
+    }
+
+    @Benchmark
+    public int binTest() {
+        int found = 0;
+        for (String key : keys) {
+            if (bibContainer.binTest(key)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public void getCompletionsBib(Blackhole bh) {
+        for (String prefix : bibPrefixes) {
+            bh.consume(manager.getCompletionsBib(prefix));
+        }
+    }
+
+    @Benchmark
+    public void searchBib(Blackhole bh) {
+        for (String term : searchTerms) {
+            bh.consume(manager.searchBib(term, SEARCH_LIMIT));
+        }
+    }
+
+    @Benchmark
+    public void getCompletionsRef(Blackhole bh) {
+        for (String prefix : labelPrefixes) {
+            bh.consume(manager.getCompletionsRef(prefix));
+        }
+    }
+
+    @Benchmark
+    public void getCompletionsCom(Blackhole bh) {
+        for (String prefix : commandPrefixes) {
+            bh.consume(manager.getCompletionsCom(prefix, TexCommandEntry.NORMAL_CONTEXT));
+        }
+    }
+}
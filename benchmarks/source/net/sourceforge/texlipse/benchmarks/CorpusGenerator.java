@@ -0,0 +1,251 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic LaTeX documents, BibTeX files, LaTeX logs and
+ * word lists for the benchmarks. The output only depends on the
+ * arguments, so the benchmark results are reproducible.
+ */
+public final class CorpusGenerator {
+
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ne", "tu", "ra", "sen", "bor", "vil", "tex",
+        "qua", "dri", "fel", "gan", "hos", "jul", "pre", "stru", "mon", "cal"
+    };
+
+    private static final String[] ENVIRONMENTS = {
+        "itemize", "enumerate", "equation", "center", "quote"
+    };
+
+    private final Random random;
+
+    /**
+     * Creates a new generator.
+     *
+     * @param seed The seed of the generator, the same seed gives the same output
+     */
+    public CorpusGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param index The number of the word
+     * @return A pseudo-word unique for the index
+     */
+    public static String word(int index) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append(SYLLABLES[index % SYLLABLES.length]);
+            index /= SYLLABLES.length;
+        } while (index > 0);
+        return sb.toString();
+    }
+
+    /**
+     * @param count The number of words
+     * @return A list of distinct pseudo-words
+     */
+    public List<String> words(int count) {
+        List<String> words = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            words.add(word(i));
+        }
+        return words;
+    }
+
+    /**
+     * @param index The number of the key
+     * @return The key of a BibTeX entry
+     */
+    public static String bibKey(int index) {
+        return word(index) + ":" + (1950 + index % 70);
+    }
+
+    /**
+     * @param index The number of the label
+     * @return The key of a label
+     */
+    public static String labelKey(int index) {
+        return (index % 3 == 0 ? "sec:" : index % 3 == 1 ? "fig:" : "eq:") + word(index);
+    }
+
+    private void sentence(StringBuilder sb, int vocabulary) {
+        int length = 6 + random.nextInt(10);
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(word(random.nextInt(vocabulary)));
+        }
+        sb.append(". ");
+    }
+
+    /**
+     * Creates a LaTeX document with a preamble, sectioning commands,
+     * environments, labels, references, citations, user defined commands
+     * and task comments. All braces and environments are balanced.
+     *
+     * @param lines The approximate number of lines
+     * @return The document
+     */
+    public String texDocument(int lines) {
+        StringBuilder sb = new StringBuilder(lines * 60);
+        sb.append("\\documentclass[a4paper]{book}\n");
+        sb.append("\\usepackage[utf8]{inputenc}\n");
+        sb.append("\\usepackage{amsmath}\n");
+        sb.append("\\newcommand{\\R}{\\mathbb{R}}\n");
+        sb.append("\\newcommand{\\mysection}[1]{\\section{#1}}\n");
+        sb.append("\\newcommand\\norm[1]{\\left\\| #1 \\right\\|}\n");
+        sb.append("\\begin{document}\n");
+        int line = 8;
+        int labels = 0;
+        while (line < lines - 3) {
+            int r = random.nextInt(100);
+            if (r < 1) {
+                sb.append("\\chapter{").append(word(line)).append("}\n");
+                line++;
+            } else if (r < 4) {
+                sb.append(r == 1 ? "\\mysection{" : "\\section{").append(word(line)).append("}\\label{")
+                    .append(labelKey(labels++)).append("}\n");
+                line++;
+            } else if (r < 8) {
+                sb.append("\\subsection{").append(word(line)).append("}\n");
+                line++;
+            } else if (r < 14) {
+                String env = ENVIRONMENTS[random.nextInt(ENVIRONMENTS.length)];
+                sb.append("\\begin{").append(env).append("}\n");
+                int items = 1 + random.nextInt(4);
+                for (int i = 0; i < items; i++) {
+                    sb.append("  \\item ");
+                    sentence(sb, 2000);
+                    sb.append("$\\norm{x_").append(i).append("} \\in \\R$\n");
+                }
+                sb.append("\\label{").append(labelKey(labels++)).append("}\n");
+                sb.append("\\end{").append(env).append("}\n");
+                line += items + 3;
+            } else if (r < 16) {
+                sb.append("% TODO check the ").append(word(line)).append(" paragraph\n");
+                line++;
+            } else if (r < 18) {
+                sb.append("\\begin{verbatim}\nint ").append(word(line)).append(" = {0};\n\\end{verbatim}\n");
+                line += 3;
+            } else {
+                sentence(sb, 2000);
+                if (labels > 0 && random.nextInt(4) == 0) {
+                    sb.append("See \\ref{").append(labelKey(random.nextInt(labels))).append("} ");
+                }
+                if (random.nextInt(3) == 0) {
+                    sb.append("\\cite{").append(bibKey(random.nextInt(10000))).append(',')
+                        .append(bibKey(random.nextInt(10000))).append("} ");
+                }
+                sb.append("{\\em ").append(word(line)).append("}\n");
+                line++;
+                if (random.nextInt(5) == 0) {
+                    sb.append('\n');
+                    line++;
+                }
+            }
+        }
+        sb.append("\\bibliographystyle{plain}\n");
+        sb.append("\\bibliography{references}\n");
+        sb.append("\\end{document}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Creates a BibTeX file with string abbreviations and articles,
+     * books and conference papers.
+     *
+     * @param entries The number of entries
+     * @return The BibTeX file
+     */
+    public String bibFile(int entries) {
+        StringBuilder sb = new StringBuilder(entries * 250);
+        sb.append("@string{jcs = \"Journal of Computer Science\"}\n\n");
+        for (int i = 0; i < entries; i++) {
+            int type = random.nextInt(3);
+            sb.append(type == 0 ? "@article{" : type == 1 ? "@book{" : "@inproceedings{");
+            sb.append(bibKey(i)).append(",\n");
+            sb.append("  author = {").append(word(random.nextInt(5000))).append(", A. and ")
+                .append(word(random.nextInt(5000))).append(", B.},\n");
+            sb.append("  title = {");
+            sentence(sb, 5000);
+            sb.append("},\n");
+            if (type == 0) {
+                sb.append("  journal = jcs,\n  volume = ").append(1 + random.nextInt(40)).append(",\n");
+            } else if (type == 1) {
+                sb.append("  publisher = \"").append(word(random.nextInt(100))).append(" Press\",\n");
+            } else {
+                sb.append("  booktitle = {Proceedings of ").append(word(random.nextInt(100))).append("},\n");
+            }
+            sb.append("  year = ").append(1950 + i % 70).append("\n}\n\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a pdflatex log with file nesting, pages, box warnings,
+     * LaTeX warnings and errors.
+     *
+     * @param size The approximate size of the log in characters
+     * @return The log
+     */
+    public String latexLog(int size) {
+        StringBuilder sb = new StringBuilder(size + 1000);
+        sb.append("This is pdfTeX, Version 3.14159265-2.6-1.40.21 (TeX Live 2020) (preloaded format=pdflatex)\n");
+        sb.append("entering extended mode\n(./main.tex\nLaTeX2e <2020-02-02> patch level 2\n");
+        sb.append("(/usr/share/texlive/texmf-dist/tex/latex/base/book.cls\nDocument Class: book 2019/12/20 v1.4l Standard LaTeX document class\n)\n");
+        int page = 1;
+        int chapter = 1;
+        while (sb.length() < size) {
+            sb.append("(./chapter").append(chapter).append(".tex\n");
+            int events = 5 + random.nextInt(30);
+            for (int i = 0; i < events; i++) {
+                int r = random.nextInt(20);
+                int line = 1 + random.nextInt(2000);
+                if (r < 6) {
+                    sb.append("Overfull \\hbox (").append(random.nextInt(30)).append(".2pt too wide) in paragraph at lines ")
+                        .append(line).append("--").append(line + 2).append('\n');
+                    sb.append("[]\\T1/cmr/m/n/10 ").append(word(line)).append(' ').append(word(line + 1)).append("\n\n");
+                } else if (r < 9) {
+                    sb.append("Underfull \\hbox (badness 10000) in paragraph at lines ")
+                        .append(line).append("--").append(line + 1).append("\n\n");
+                } else if (r < 12) {
+                    sb.append("LaTeX Warning: Reference `").append(labelKey(line)).append("' on page ")
+                        .append(page).append(" undefined on input line ").append(line).append(".\n\n");
+                } else if (r < 13) {
+                    sb.append("LaTeX Warning: Citation `").append(bibKey(line)).append("' on page ")
+                        .append(page).append(" undefined on input line ").append(line).append(".\n\n");
+                } else if (r < 14) {
+                    sb.append("! Undefined control sequence.\nl.").append(line).append(" \\foo")
+                        .append(word(line)).append("\n                   bar\n\n");
+                } else if (r < 15) {
+                    sb.append("Package hyperref Warning: Token not allowed in a PDF string (PDFDocEncoding):\n")
+                        .append("(hyperref)                removing `math shift' on input line ").append(line).append(".\n\n");
+                } else {
+                    sb.append('[').append(page++).append("] ");
+                    if (random.nextBoolean()) {
+                        sb.append('\n');
+                    }
+                }
+            }
+            sb.append(")\n");
+            chapter++;
+        }
+        sb.append("\nLaTeX Warning: There were undefined references.\n\n");
+        sb.append(" )\nOutput written on main.pdf (").append(page).append(" pages, 123456 bytes).\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * Stand-ins for workspace resources, so that code taking resources can be
+ * benchmarked without a running workspace. Every method of a stand-in does
+ * nothing: it returns another stand-in for interface types, an empty array
+ * for arrays and false, 0 or null otherwise. Markers and properties set
+ * through them are dropped.
+ */
+public final class HeadlessResources {
+
+    private static final InvocationHandler HANDLER = new InvocationHandler() {
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("equals") && args != null && args.length == 1) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode") && args == null) {
+                return System.identityHashCode(proxy);
+            } else if (name.equals("toString") && args == null) {
+                return "HeadlessResource";
+            }
+            return defaultValue(method.getReturnType());
+        }
+    };
+
+    private HeadlessResources() {
+    }
+
+    /**
+     * @param type The type of the stand-in
+     * @return A stand-in implementing the given interface
+     */
+    public static <T> T create(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(HeadlessResources.class.getClassLoader(),
+                new Class[] { type }, HANDLER));
+    }
+
+    /**
+     * @return A stand-in for a file
+     */
+    public static IFile file() {
+        return create(IFile.class);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == Void.TYPE) {
+            return null;
+        } else if (type == Boolean.TYPE) {
+            return Boolean.FALSE;
+        } else if (type == Character.TYPE) {
+            return Character.valueOf('\0');
+        } else if (type.isPrimitive()) {
+            if (type == Long.TYPE) return Long.valueOf(0);
+            if (type == Float.TYPE) return Float.valueOf(0);
+            if (type == Double.TYPE) return Double.valueOf(0);
+            if (type == Short.TYPE) return Short.valueOf((short) 0);
+            if (type == Byte.TYPE) return Byte.valueOf((byte) 0);
+            return Integer.valueOf(0);
+        } else if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        } else if (type.isInterface()) {
+            return create(type);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.texlipse.builder.LatexRunner;
+
+import org.eclipse.core.resources.IResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of parsing the output of pdflatex for errors and warnings
+ * after a build. The markers are collected into a batch for a stand-in
+ * resource, which is never applied, so the cost of the workspace is not
+ * included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogParserBenchmark {
+
+    /**
+     * Exposes the log parsing of the runner. The collected markers are
+     * dropped with the runner.
+     */
+    private static final class Runner extends LatexRunner {
+
+        boolean parse(IResource resource, String output) {
+            collectMarkers();
+            return parseErrors(resource, output);
+        }
+    }
+
+    @Param({"1", "8"})
+    public int megabytes;
+
+    private String log;
+    private IResource resource;
+
+    @Setup
+    public void setUp() {
+        log = new CorpusGenerator(megabytes).latexLog(megabytes << 20);
+        resource = HeadlessResources.file();
+    }
+
+    @Benchmark
+    public boolean parseErrors() {
+        return new Runner().parse(resource, log);
+    }
+}
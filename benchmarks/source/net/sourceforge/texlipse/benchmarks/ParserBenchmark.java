@@ -0,0 +1,153 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.texlipse.model.OutlineNode;
+import net.sourceforge.texlipse.texparser.CharSequenceReader;
+import net.sourceforge.texlipse.texparser.LatexLexer;
+import net.sourceforge.texlipse.texparser.LatexParser;
+import net.sourceforge.texlipse.texparser.LatexParserUtils;
+import net.sourceforge.texlipse.texparser.LatexRefExtractingParser;
+import net.sourceforge.texlipse.texparser.TexParser;
+import net.sourceforge.texlipse.texparser.lexer.LexerException;
+import net.sourceforge.texlipse.texparser.node.EOF;
+import net.sourceforge.texlipse.texparser.node.Token;
+
+import org.eclipse.jface.text.IRegion;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of parsing LaTeX documents: the full parse done for the
+ * outline on each edit pause, the parser alone on already lexed tokens,
+ * the label extraction done for project files and the environment
+ * matching used by the editor.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    /**
+     * Replays the tokens of a document, so that the parser can be
+     * measured without the lexer.
+     */
+    private static final class ReplayLexer extends LatexLexer {
+
+        private final Token[] tokens;
+        private int index;
+
+        ReplayLexer(Token[] tokens) {
+            super(new CharSequenceReader(""));
+            this.tokens = tokens;
+        }
+
+        public Token next() {
+            return tokens[index++];
+        }
+
+        public Token peek() {
+            return tokens[index];
+        }
+    }
+
+    /**
+     * Records the tokens given to the parser.
+     */
+    private static final class RecordingLexer extends LatexLexer {
+
+        private final List<Token> tokens;
+
+        RecordingLexer(String input, List<Token> tokens) {
+            super(input);
+            this.tokens = tokens;
+        }
+
+        public Token next() throws LexerException, IOException {
+            Token t = super.next();
+            tokens.add(t);
+            return t;
+        }
+    }
+
+    @Param({"1000", "10000", "100000"})
+    public int lines;
+
+    private String document;
+    private Token[] tokens;
+    private int documentBegin;
+
+    @Setup
+    public void setUp() throws LexerException, IOException {
+        document = new CorpusGenerator(lines).texDocument(lines);
+        documentBegin = document.indexOf("\\begin{document}");
+
+        // record the tokens of a real parse, since the lexer depends on
+        // the commands the parser registers
+        List<Token> list = new ArrayList<Token>();
+        new LatexParser().parse(new RecordingLexer(document, list),
+                new OutlineNode("Preamble", OutlineNode.TYPE_PREAMBLE, 1, null), true);
+        tokens = list.toArray(new Token[list.size()]);
+    }
+
+    @Benchmark
+    public Object parseDocument() throws IOException {
+        TexParser parser = new TexParser(null);
+        parser.parseDocument(document, true);
+        return parser.getOutlineTree();
+    }
+
+    @Benchmark
+    public Object parseTokens() throws LexerException, IOException {
+        LatexParser parser = new LatexParser();
+        parser.parse(new ReplayLexer(tokens),
+                new OutlineNode("Preamble", OutlineNode.TYPE_PREAMBLE, 1, null), true);
+        return parser.getOutlineTree();
+    }
+
+    @Benchmark
+    public int lexDocument() throws LexerException, IOException {
+        LatexLexer lexer = new LatexLexer(document);
+        int count = 0;
+        while (!(lexer.next() instanceof EOF)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Object extractReferences() throws IOException {
+        LatexRefExtractingParser parser = new LatexRefExtractingParser();
+        parser.parse(document);
+        return parser.getLabels();
+    }
+
+    @Benchmark
+    public IRegion findMatchingEndEnvironment() {
+        return LatexParserUtils.findMatchingEndEnvironment(document, "document", documentBegin);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.texlipse.spelling.TexSpellDictionary;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the spelling dictionary lookups done for every word of a
+ * document. The words are a mix of correct, misspelled and capitalized
+ * words.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SpellingBenchmark {
+
+    private static final int QUERIES = 1024;
+
+    @Param({"50000", "200000"})
+    public int words;
+
+    private TexSpellDictionary dictionary;
+    private String[] queries;
+
+    @Setup
+    public void setUp() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(words);
+        List<String> list = generator.words(words);
+        StringBuilder sb = new StringBuilder(words * 10);
+        for (String word : list) {
+            sb.append(word).append('\n');
+        }
+        dictionary = new TexSpellDictionary(new StringReader(sb.toString()));
+
+        Random random = new Random(words);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            String word = list.get(random.nextInt(words));
+            switch (i % 4) {
+            case 0:
+                queries[i] = word + "q";
+                break;
+            case 1:
+                queries[i] = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                break;
+            default:
+                queries[i] = word;
+            }
+        }
+    }
+
+    @Benchmark
+    public int isCorrect() {
+        int correct = 0;
+        for (String word : queries) {
+            if (dictionary.isCorrect(word)) {
+                correct++;
+            }
+        }
+        return correct;
+    }
+}
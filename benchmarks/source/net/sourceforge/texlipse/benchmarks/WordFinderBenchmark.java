@@ -0,0 +1,88 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import net.sourceforge.texlipse.spelling.TexSpellDictionary;
+import net.sourceforge.texlipse.spelling.TexlipseWordFinder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.swabunga.spell.event.SpellChecker;
+import com.swabunga.spell.event.StringWordTokenizer;
+
+/**
+ * Benchmarks of spell checking a whole LaTeX document: finding the words
+ * outside of commands, comments and math, and checking them with Jazzy
+ * against a dictionary that contains most of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WordFinderBenchmark {
+
+    @Param({"1000", "10000"})
+    public int lines;
+
+    private String document;
+    private SpellChecker spellChecker;
+
+    @Setup
+    public void setUp() throws IOException {
+        CorpusGenerator generator = new CorpusGenerator(lines);
+        document = generator.texDocument(lines);
+
+        StringBuilder sb = new StringBuilder();
+        for (String word : generator.words(Math.max(lines, 2000))) {
+            sb.append(word).append('\n');
+        }
+        spellChecker = new SpellChecker(new TexSpellDictionary(new StringReader(sb.toString())));
+    }
+
+    private static TexlipseWordFinder createFinder() {
+        TexlipseWordFinder finder = new TexlipseWordFinder();
+        finder.setIgnoreComments(true);
+        finder.setIgnoreMath(true);
+        return finder;
+    }
+
+    @Benchmark
+    public int findWords() {
+        TexlipseWordFinder finder = createFinder();
+        finder.setText(document);
+        int words = 0;
+        while (finder.hasNext()) {
+            finder.next();
+            words++;
+        }
+        return words;
+    }
+
+    @Benchmark
+    public int checkSpelling() {
+        return spellChecker.checkSpelling(new StringWordTokenizer(document, createFinder()));
+    }
+}
@@ -16,7 +16,10 @@ import java.util.ResourceBundle;
 import net.sourceforge.texlipse.bibeditor.BibCodeScanner;
 import net.sourceforge.texlipse.bibeditor.BibColorProvider;
 import net.sourceforge.texlipse.bibeditor.BibEntryScanner;
+import net.sourceforge.texlipse.bibparser.BibCache;
+import net.sourceforge.texlipse.extension.BibProviderRegistry;
 import net.sourceforge.texlipse.properties.StringListFieldEditor;
+import net.sourceforge.texlipse.spelling.SpellingCache;
 import net.sourceforge.texlipse.templates.BibTexContextType;
 import net.sourceforge.texlipse.templates.TexContextType;
 
@@ -111,6 +114,9 @@ public class TexlipsePlugin extends AbstractUIPlugin {
      * This method is called when the plug-in is stopped
      */
     public void stop(BundleContext context) throws Exception {
+        BibCache.disposeInstance();
+        BibProviderRegistry.disposeInstance();
+        SpellingCache.saveAll();
         super.stop(context);
     }
     
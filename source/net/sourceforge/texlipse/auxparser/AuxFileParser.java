@@ -1,8 +1,6 @@
 package net.sourceforge.texlipse.auxparser;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -99,7 +97,7 @@ public class AuxFileParser {
             return new LinkedList<String>();
         }
 
-        LatexLexer lexer = new LatexLexer(new PushbackReader(new StringReader(input), 4096));
+        LatexLexer lexer = new LatexLexer(input);
         Token prevCommand = null;
         Token prevSymbol = null;
         Token prevText = null;
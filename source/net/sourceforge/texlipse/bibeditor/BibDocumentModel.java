@@ -10,14 +10,13 @@
 package net.sourceforge.texlipse.bibeditor;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.bibparser.BibCache;
 import net.sourceforge.texlipse.bibparser.BibOutlineContainer;
-import net.sourceforge.texlipse.bibparser.BibParser;
 import net.sourceforge.texlipse.editor.TexDocumentParseException;
 import net.sourceforge.texlipse.model.MarkerHandler;
 import net.sourceforge.texlipse.model.ParseErrorMessage;
@@ -74,13 +73,14 @@ public class BibDocumentModel {
      */
     private void doParse() throws TexDocumentParseException {
         try {
-            BibParser parser = new BibParser(new StringReader(this.editor.getDocumentProvider().getDocument(this.editor.getEditorInput()).get()));
+            BibCache.Result parser = BibCache.getInstance().getContents(
+                    this.editor.getDocumentProvider().getDocument(this.editor.getEditorInput()).get());
             
             this.entryList = parser.getEntries();
             
             List<ParseErrorMessage> parseErrors = parser.getErrors();
-            List parseWarnings = parser.getWarnings();
-            List tasks = parser.getTasks();
+            List<ParseErrorMessage> parseWarnings = parser.getWarnings();
+            List<ParseErrorMessage> tasks = parser.getTasks();
             
             MarkerHandler marker = MarkerHandler.getInstance();
             marker.clearErrorMarkers(editor);
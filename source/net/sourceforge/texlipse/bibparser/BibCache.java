@@ -0,0 +1,331 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.bibparser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.sourceforge.texlipse.model.ParseErrorMessage;
+import net.sourceforge.texlipse.model.ReferenceEntry;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Workspace wide cache of parsed BibTeX files, so that a BibTeX file used
+ * by several projects or open in the BibTeX editor is parsed only once.
+ *
+ * The parse results are keyed by the digest of the contents, so a file
+ * read from the disk and the same contents in an editor share a result.
+ * The digest of a file read from the disk is remembered with its
+ * modification time and size, so an unchanged file isn't read again.
+ * The parse results are held through soft references and at most
+ * <code>MAX_FILES</code> results are kept. The digests of changed and
+ * removed files of the workspace are dropped when the resource change
+ * event arrives.
+ *
+ * The cached entries are never handed out, the users get copies of them,
+ * since the reference containers and the editor set the file names and
+ * positions of the entries.
+ */
+public final class BibCache {
+
+    private static final int MAX_FILES = 32;
+    private static final int MAX_PATHS = 256;
+
+    private static BibCache instance;
+
+    /**
+     * The result of parsing a BibTeX file.
+     */
+    public static final class Result {
+        private final List<ReferenceEntry> entries;
+        private final List<ReferenceEntry> abbrevs;
+        private final List<ParseErrorMessage> errors;
+        private final List<ParseErrorMessage> warnings;
+        private final List<ParseErrorMessage> tasks;
+
+        private Result(BibParser parser) throws IOException {
+            entries = unmodifiable(parser.getEntries());
+            abbrevs = unmodifiable(parser.getAbbrevs());
+            errors = unmodifiable(parser.getErrors());
+            warnings = unmodifiable(parser.getWarnings());
+            tasks = unmodifiable(parser.getTasks());
+        }
+
+        /**
+         * @return Copies of the BibTeX entries, or null if there were fatal
+         * errors in the file
+         */
+        public List<ReferenceEntry> getEntries() {
+            return copy(entries);
+        }
+
+        /**
+         * @return Copies of the abbreviations, or null if there were fatal
+         * errors in the file
+         */
+        public List<ReferenceEntry> getAbbrevs() {
+            return copy(abbrevs);
+        }
+
+        /**
+         * @return The fatal errors
+         */
+        public List<ParseErrorMessage> getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return The warnings
+         */
+        public List<ParseErrorMessage> getWarnings() {
+            return warnings;
+        }
+
+        /**
+         * @return The tasks
+         */
+        public List<ParseErrorMessage> getTasks() {
+            return tasks;
+        }
+
+        private static <T> List<T> unmodifiable(List<T> list) {
+            return list != null ? Collections.unmodifiableList(list) : null;
+        }
+
+        private static List<ReferenceEntry> copy(List<ReferenceEntry> list) {
+            if (list == null) {
+                return null;
+            }
+            List<ReferenceEntry> copies = new ArrayList<ReferenceEntry>(list.size());
+            for (ReferenceEntry re : list) {
+                copies.add((ReferenceEntry) re.copy());
+            }
+            return copies;
+        }
+    }
+
+    /**
+     * The digest of the contents of a file with the modification time
+     * and size of the file when it was read.
+     */
+    private static final class FileStamp {
+        final long modified;
+        final long size;
+        final String digest;
+
+        FileStamp(long modified, long size, String digest) {
+            this.modified = modified;
+            this.size = size;
+            this.digest = digest;
+        }
+    }
+
+    // the parse results by the digests of the contents
+    private final Map<String, SoftReference<Result>> results;
+    // the digests of the files read from the disk by their absolute paths
+    private final Map<String, FileStamp> stamps;
+    private final IResourceChangeListener listener;
+
+    private BibCache() {
+        results = new LinkedHashMap<String, SoftReference<Result>>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, SoftReference<Result>> eldest) {
+                return size() > MAX_FILES;
+            }
+        };
+        stamps = new LinkedHashMap<String, FileStamp>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, FileStamp> eldest) {
+                return size() > MAX_PATHS;
+            }
+        };
+        listener = new IResourceChangeListener() {
+            public void resourceChanged(IResourceChangeEvent event) {
+                if (event.getDelta() == null) {
+                    return;
+                }
+                try {
+                    event.getDelta().accept(new IResourceDeltaVisitor() {
+                        public boolean visit(IResourceDelta delta) {
+                            IResource res = delta.getResource();
+                            if (res.getType() == IResource.FILE) {
+                                IPath location = res.getLocation();
+                                if (location != null && "bib".equals(res.getFileExtension())
+                                        && (delta.getKind() == IResourceDelta.REMOVED
+                                        || (delta.getFlags() & IResourceDelta.CONTENT) != 0)) {
+                                    removeStamp(location.toOSString());
+                                }
+                                return false;
+                            }
+                            return true;
+                        }
+                    });
+                } catch (CoreException e) {
+                    // the checks of the modification times keep the cache valid
+                }
+            }
+        };
+        ResourcesPlugin.getWorkspace().addResourceChangeListener(listener,
+                IResourceChangeEvent.POST_CHANGE);
+    }
+
+    /**
+     * @return The shared cache
+     */
+    public static synchronized BibCache getInstance() {
+        if (instance == null) {
+            instance = new BibCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Empties the shared cache and stops listening to resource changes.
+     * Called when the plugin is stopped.
+     */
+    public static synchronized void disposeInstance() {
+        if (instance != null) {
+            ResourcesPlugin.getWorkspace().removeResourceChangeListener(instance.listener);
+            instance = null;
+        }
+    }
+
+    private synchronized void removeStamp(String path) {
+        stamps.remove(new File(path).getAbsolutePath());
+    }
+
+    private synchronized String lookupDigest(String path, long modified, long size) {
+        FileStamp stamp = stamps.get(path);
+        if (stamp != null && stamp.modified == modified && stamp.size == size) {
+            return stamp.digest;
+        }
+        return null;
+    }
+
+    private synchronized void storeDigest(String path, FileStamp stamp) {
+        stamps.put(path, stamp);
+    }
+
+    private synchronized Result lookup(String digest) {
+        SoftReference<Result> ref = results.get(digest);
+        return ref != null ? ref.get() : null;
+    }
+
+    private synchronized void store(String digest, Result result) {
+        results.put(digest, new SoftReference<Result>(result));
+    }
+
+    /**
+     * Returns the parsed contents of the given BibTeX file, parsing the
+     * file if its contents are not cached.
+     *
+     * @param filepath The absolute path of the file
+     * @return The parse result
+     * @throws IOException If the file can't be read
+     */
+    public Result getFile(String filepath) throws IOException {
+        File file = new File(filepath);
+        String path = file.getAbsolutePath();
+        long modified = file.lastModified();
+        long size = file.length();
+        String digest = lookupDigest(path, modified, size);
+        if (digest != null) {
+            Result result = lookup(digest);
+            if (result != null) {
+                return result;
+            }
+        }
+        String contents = readFile(file);
+        digest = digest(contents);
+        storeDigest(path, new FileStamp(modified, size, digest));
+        return getResult(digest, contents);
+    }
+
+    /**
+     * Returns the parsed contents of a BibTeX file open in an editor,
+     * parsing the contents if they are not cached.
+     *
+     * @param contents The contents of the editor
+     * @return The parse result
+     * @throws IOException If the contents can't be read
+     */
+    public Result getContents(String contents) throws IOException {
+        return getResult(digest(contents), contents);
+    }
+
+    private Result getResult(String digest, String contents) throws IOException {
+        Result result = lookup(digest);
+        if (result == null) {
+            // parsed outside the lock, the same contents may rarely get parsed twice
+            result = new Result(new BibParser(new StringReader(contents)));
+            store(digest, result);
+        }
+        return result;
+    }
+
+    /**
+     * Reads a file with the default encoding, which the BibTeX parser
+     * uses for files.
+     */
+    private static String readFile(File file) throws IOException {
+        Reader in = new InputStreamReader(new FileInputStream(file));
+        try {
+            StringBuilder sb = new StringBuilder((int) Math.min(file.length(), Integer.MAX_VALUE));
+            char[] buf = new char[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                sb.append(buf, 0, n);
+            }
+            return sb.toString();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String digest(String contents) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] digest = md.digest(contents.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+}
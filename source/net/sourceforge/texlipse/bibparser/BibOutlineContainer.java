@@ -100,7 +100,7 @@ public class BibOutlineContainer {
         // Replace the keys with the names of the authors
         for (Iterator iter = newboc.childEntries.iterator(); iter.hasNext();) {
             ReferenceEntry re = (ReferenceEntry) iter.next();
-            re.key = re.author + "; " + re.key;
+            re.setKey(re.author + "; " + re.key);
         }
         // Build a tree structure
         newboc.partition();
@@ -181,7 +181,7 @@ public class BibOutlineContainer {
 
         for (Iterator iter = newboc.childEntries.iterator(); iter.hasNext();) {
             ReferenceEntry re = (ReferenceEntry) iter.next();
-            re.key = re.year + "; " + re.key;
+            re.setKey(re.year + "; " + re.key);
         }
 
         newboc.partition();
@@ -207,7 +207,7 @@ public class BibOutlineContainer {
         });
         for (Iterator iter = newboc.childEntries.iterator(); iter.hasNext();) {
             ReferenceEntry re = (ReferenceEntry) iter.next();
-            re.key = re.journal + "; " + re.key;
+            re.setKey(re.journal + "; " + re.key);
         }
         newboc.partition();
         return newboc;
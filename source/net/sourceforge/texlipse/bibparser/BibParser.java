@@ -18,10 +18,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.sourceforge.texlipse.bibparser.lexer.LexerException;
-import net.sourceforge.texlipse.bibparser.node.Start;
-import net.sourceforge.texlipse.bibparser.parser.Parser;
 import net.sourceforge.texlipse.bibparser.parser.ParserException;
 import net.sourceforge.texlipse.model.ParseErrorMessage;
+import net.sourceforge.texlipse.model.ReferenceEntry;
 
 import org.eclipse.core.resources.IMarker;
 
@@ -39,9 +38,9 @@ public class BibParser {
     private Reader reader;
     
     private List<ParseErrorMessage> errors;
-    private List warnings;
-    private List tasks;
-    private Start ast;
+    private List<ParseErrorMessage> warnings;
+    private List<ParseErrorMessage> tasks;
+    private List<ReferenceEntry> abbrevs;
     
     /**
      * Constructs a new BibTeX parser.
@@ -51,7 +50,7 @@ public class BibParser {
     public BibParser(String filename) {
         this.filename = filename;
         this.errors = new ArrayList<ParseErrorMessage>();
-        this.warnings = new ArrayList();
+        this.warnings = new ArrayList<ParseErrorMessage>();
     }
     
     /**
@@ -61,8 +60,8 @@ public class BibParser {
      */
     public BibParser(Reader r) {
         this.reader = r;
-        this.errors = new ArrayList();
-        this.warnings = new ArrayList();
+        this.errors = new ArrayList<ParseErrorMessage>();
+        this.warnings = new ArrayList<ParseErrorMessage>();
     }
     
     /**
@@ -71,8 +70,7 @@ public class BibParser {
      * 
      * @return BibTeX entries (<code>ReferenceEntry</code>)
      */
-//    public List<ReferenceEntry> getEntries() throws IOException, FileNotFoundException {
-    public List getEntries() throws IOException, FileNotFoundException {
+    public List<ReferenceEntry> getEntries() throws IOException, FileNotFoundException {
         try {
             BibLexer l;
             if (filename != null) {
@@ -81,14 +79,16 @@ public class BibParser {
                 l = new BibLexer(new PushbackReader(reader, 1024));
             }
             
-            Parser p = new Parser(l);
-            this.ast = p.parse();
-            
+            // the entries are handled one at a time as they are parsed,
+            // the AST of the whole file is never built
             EntryRetriever er = new EntryRetriever();
-            ast.apply(er);
+            AbbrevRetriever ar = new AbbrevRetriever();
+            EntryScanner scanner = new EntryScanner(l, er, ar);
+            scanner.scan();
             er.finishParse();
             warnings = er.getWarnings();
             tasks = er.getTasks();
+            abbrevs = ar.getAbbrevs();
             
             // FIXME
             // Search for files of the referenced material to be able to display
@@ -123,13 +123,8 @@ public class BibParser {
     /**
      * @return Returns the abbreviations (<code>ReferenceEntry</code>)
      */
-    public List getAbbrevs() {
-        if (ast != null) {
-            AbbrevRetriever ar = new AbbrevRetriever();
-            ast.apply(ar);
-            return ar.getAbbrevs();
-        }
-        return null;
+    public List<ReferenceEntry> getAbbrevs() {
+        return abbrevs;
     }
     
     /**
@@ -142,14 +137,14 @@ public class BibParser {
     /**
      * @return Returns the warnings.
      */
-    public List getWarnings() {
+    public List<ParseErrorMessage> getWarnings() {
         return warnings;
     }
     
     /**
      * @return Returns the tasks
      */
-    public List getTasks() {
+    public List<ParseErrorMessage> getTasks() {
         return tasks;
     }
 }
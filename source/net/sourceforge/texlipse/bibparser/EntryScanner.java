@@ -0,0 +1,237 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.bibparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.sourceforge.texlipse.bibparser.analysis.Analysis;
+import net.sourceforge.texlipse.bibparser.lexer.LexerException;
+import net.sourceforge.texlipse.bibparser.node.ABibtaskBibEntry;
+import net.sourceforge.texlipse.bibparser.node.AConcat;
+import net.sourceforge.texlipse.bibparser.node.AEntryDef;
+import net.sourceforge.texlipse.bibparser.node.AEntrybraceEntry;
+import net.sourceforge.texlipse.bibparser.node.AEntryparenEntry;
+import net.sourceforge.texlipse.bibparser.node.AIdValOrSid;
+import net.sourceforge.texlipse.bibparser.node.AKeyvalDecl;
+import net.sourceforge.texlipse.bibparser.node.ANumValOrSid;
+import net.sourceforge.texlipse.bibparser.node.AStrbraceStringEntry;
+import net.sourceforge.texlipse.bibparser.node.AStrparenStringEntry;
+import net.sourceforge.texlipse.bibparser.node.AValueBValOrSid;
+import net.sourceforge.texlipse.bibparser.node.AValueQValOrSid;
+import net.sourceforge.texlipse.bibparser.node.EOF;
+import net.sourceforge.texlipse.bibparser.node.Node;
+import net.sourceforge.texlipse.bibparser.node.PConcat;
+import net.sourceforge.texlipse.bibparser.node.PKeyvalDecl;
+import net.sourceforge.texlipse.bibparser.node.PValOrSid;
+import net.sourceforge.texlipse.bibparser.node.TComma;
+import net.sourceforge.texlipse.bibparser.node.TComment;
+import net.sourceforge.texlipse.bibparser.node.TEntryName;
+import net.sourceforge.texlipse.bibparser.node.TEquals;
+import net.sourceforge.texlipse.bibparser.node.TEstring;
+import net.sourceforge.texlipse.bibparser.node.TIdentifier;
+import net.sourceforge.texlipse.bibparser.node.TLBrace;
+import net.sourceforge.texlipse.bibparser.node.TLParen;
+import net.sourceforge.texlipse.bibparser.node.TNumber;
+import net.sourceforge.texlipse.bibparser.node.TQuotec;
+import net.sourceforge.texlipse.bibparser.node.TRBrace;
+import net.sourceforge.texlipse.bibparser.node.TRParen;
+import net.sourceforge.texlipse.bibparser.node.TSharp;
+import net.sourceforge.texlipse.bibparser.node.TStringLiteral;
+import net.sourceforge.texlipse.bibparser.node.TTaskcomment;
+import net.sourceforge.texlipse.bibparser.node.TWhitespace;
+import net.sourceforge.texlipse.bibparser.node.Token;
+import net.sourceforge.texlipse.bibparser.parser.ParserException;
+
+/**
+ * Parses a BibTeX file one entry at a time. Instead of building the
+ * AST of the whole file like the generated parser, the scanner builds
+ * the subtree of a single entry and applies the visitors to it, so the
+ * memory used besides the results doesn't grow with the file.
+ *
+ * The scanner accepts the same language as the grammar in bibtex6.sablecc
+ * and the visitors see the entries in the same order as in the AST.
+ */
+final class EntryScanner {
+
+    private final BibLexer lexer;
+    private final Analysis entryVisitor;
+    private final Analysis abbrevVisitor;
+
+    private Token token;
+
+    /**
+     * Creates a new scanner.
+     *
+     * @param lexer The lexer to read the tokens from
+     * @param entryVisitor The visitor applied to all entries
+     * @param abbrevVisitor The visitor applied to the string entries
+     */
+    EntryScanner(BibLexer lexer, Analysis entryVisitor, Analysis abbrevVisitor) {
+        this.lexer = lexer;
+        this.entryVisitor = entryVisitor;
+        this.abbrevVisitor = abbrevVisitor;
+    }
+
+    /**
+     * Scans the whole input.
+     *
+     * @throws ParserException If the input doesn't follow the BibTeX grammar
+     * @throws LexerException If the input can't be tokenized
+     * @throws IOException If the input can't be read
+     */
+    void scan() throws ParserException, LexerException, IOException {
+        next();
+        while (!(token instanceof EOF)) {
+            if (token instanceof TTaskcomment) {
+                new ABibtaskBibEntry((TTaskcomment) token).apply(entryVisitor);
+                next();
+            } else if (token instanceof TEstring) {
+                Node stringEntry = stringEntry();
+                stringEntry.apply(entryVisitor);
+                stringEntry.apply(abbrevVisitor);
+            } else if (token instanceof TEntryName) {
+                entry().apply(entryVisitor);
+            } else {
+                throw error("expecting: taskcomment, estring, entry name, EOF");
+            }
+        }
+    }
+
+    /**
+     * Reads the next token that is not ignored by the grammar.
+     */
+    private void next() throws LexerException, IOException {
+        do {
+            token = lexer.next();
+        } while (token instanceof TWhitespace || token instanceof TComment);
+    }
+
+    private ParserException error(String message) {
+        return new ParserException(token,
+                "[" + token.getLine() + "," + token.getPos() + "] " + message);
+    }
+
+    /**
+     * Checks that the current token is of the given type and reads
+     * the next token.
+     *
+     * @return The checked token
+     */
+    private Token expect(Class<? extends Token> type, String message)
+            throws ParserException, LexerException, IOException {
+        if (!type.isInstance(token)) {
+            throw error(message);
+        }
+        Token t = token;
+        next();
+        return t;
+    }
+
+    /**
+     * Parses a string (abbreviation) entry starting with @string.
+     */
+    private Node stringEntry() throws ParserException, LexerException, IOException {
+        next();
+        boolean brace = token instanceof TLBrace;
+        expect(brace ? TLBrace.class : TLParen.class, "expecting: '{', '('");
+        TIdentifier key = (TIdentifier) expect(TIdentifier.class, "expecting: identifier");
+        expect(TEquals.class, "expecting: '='");
+
+        TStringLiteral value;
+        if (token instanceof TQuotec) {
+            next();
+            value = (TStringLiteral) expect(TStringLiteral.class, "expecting: string literal");
+        } else {
+            value = (TStringLiteral) expect(TStringLiteral.class, "expecting: '\"', string literal");
+        }
+        if (token instanceof TQuotec) {
+            next();
+            expect(brace ? TRBrace.class : TRParen.class, brace ? "expecting: '}'" : "expecting: ')'");
+        } else {
+            expect(brace ? TRBrace.class : TRParen.class,
+                    brace ? "expecting: '}', '\"'" : "expecting: ')', '\"'");
+        }
+        return brace ? new AStrbraceStringEntry(key, value) : new AStrparenStringEntry(key, value);
+    }
+
+    /**
+     * Parses a bibliography entry, e.g. @article.
+     */
+    private Node entry() throws ParserException, LexerException, IOException {
+        AEntryDef entryDef = new AEntryDef((TEntryName) token);
+        next();
+        boolean brace = token instanceof TLBrace;
+        expect(brace ? TLBrace.class : TLParen.class, "expecting: '{', '('");
+        TIdentifier key = (TIdentifier) expect(TIdentifier.class, "expecting: identifier");
+
+        List<PKeyvalDecl> keyvals = new ArrayList<PKeyvalDecl>();
+        expect(TComma.class, "expecting: ','");
+        keyvals.add(keyvalDecl());
+        while (token instanceof TComma) {
+            next();
+            if (token instanceof TIdentifier) {
+                keyvals.add(keyvalDecl());
+            } else if (!(token instanceof TRBrace || token instanceof TRParen)) {
+                throw error(brace ? "expecting: '}', identifier" : "expecting: ')', identifier");
+            }
+        }
+        if (brace) {
+            TRBrace end = (TRBrace) expect(TRBrace.class, "expecting: '}', ','");
+            return new AEntrybraceEntry(entryDef, key, keyvals, end);
+        }
+        TRParen end = (TRParen) expect(TRParen.class, "expecting: ')', ','");
+        return new AEntryparenEntry(entryDef, key, keyvals, end);
+    }
+
+    /**
+     * Parses a field of an entry, the preceding comma has been read.
+     */
+    private PKeyvalDecl keyvalDecl() throws ParserException, LexerException, IOException {
+        TIdentifier field = (TIdentifier) expect(TIdentifier.class, "expecting: identifier");
+        expect(TEquals.class, "expecting: '='");
+        PValOrSid value = valOrSid();
+        List<PConcat> concats = new ArrayList<PConcat>();
+        while (token instanceof TSharp) {
+            next();
+            concats.add(new AConcat(valOrSid()));
+        }
+        return new AKeyvalDecl(field, value, concats);
+    }
+
+    /**
+     * Parses a field value: a braced or quoted string, a number or
+     * an abbreviation.
+     */
+    private PValOrSid valOrSid() throws ParserException, LexerException, IOException {
+        Token t = token;
+        if (t instanceof TStringLiteral) {
+            next();
+            return new AValueBValOrSid((TStringLiteral) t);
+        } else if (t instanceof TQuotec) {
+            next();
+            TStringLiteral value = null;
+            if (token instanceof TStringLiteral) {
+                value = (TStringLiteral) token;
+                next();
+            }
+            expect(TQuotec.class, "expecting: '\"'");
+            return new AValueQValOrSid(value);
+        } else if (t instanceof TNumber) {
+            next();
+            return new ANumValOrSid((TNumber) t);
+        } else if (t instanceof TIdentifier) {
+            next();
+            return new AIdValOrSid((TIdentifier) t);
+        }
+        throw error("expecting: number, identifier, '\"', string literal");
+    }
+}
@@ -12,18 +12,20 @@ package net.sourceforge.texlipse.builder;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 
 import net.sourceforge.texlipse.PathUtils;
 import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.model.MarkerBatch;
 import net.sourceforge.texlipse.properties.TexlipseProperties;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.jface.preference.IPreferenceStore;
-import org.eclipse.ui.texteditor.MarkerUtilities;
 
 
 /**
@@ -36,6 +38,9 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
     // the currently running program
     private ExternalProgram extrun;
     
+    // the markers created while parsing the output, or null
+    private MarkerBatch markers;
+    
     /**
      * Create a new program runner.
      * @param project the project holding the properties
@@ -188,6 +193,19 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
      *                       or if there was an error during the build
      */
     public void run(IResource resource) throws CoreException {
+        processOutput(resource, execute(resource));
+    }
+
+    /**
+     * Runs the external program without touching the workspace, so this
+     * can be called outside the build thread. The output is processed
+     * with <code>processOutput</code>.
+     * 
+     * @param resource the input file to feed to the external program
+     * @return the output of the external program
+     * @throws CoreException if the external program is not found or fails to run
+     */
+    protected String execute(final IResource resource) throws CoreException {
         
         File sourceDir = resource.getLocation().toFile().getParentFile();
         
@@ -210,16 +228,15 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
             console = getProgramName();
         }
         extrun.setup(command, sourceDir, console);
+        extrun.setCharset(getOutputCharset(resource));
         
         String output = null;
         try {
-            
-            String[] query = getQueryString();
-            if (query != null) {
-                output = extrun.run(query);
-            } else {
-                output = extrun.run();
-            }
+            output = extrun.run(getQueryString(), createOutputListener(resource), new Runnable() {
+                public void run() {
+                    outputProgress(resource);
+                }
+            });
             
         } catch (Exception e) {
             throw new CoreException(new Status(IStatus.ERROR, TexlipsePlugin.getPluginId(),
@@ -227,8 +244,66 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
         } finally {
             extrun.stop();
         }
+        return output;
+    }
+
+    /**
+     * Returns the charset of the output of the external program. The
+     * default is the charset of the input file.
+     * 
+     * @param resource the input file
+     * @return the name of the charset, or null for the platform default
+     */
+    protected String getOutputCharset(IResource resource) {
+        if (resource instanceof IFile) {
+            try {
+                return ((IFile) resource).getCharset();
+            } catch (CoreException e) {
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a listener that receives the output of the external program
+     * line by line while the program runs. The listener is called outside
+     * the build thread, so it must not modify the workspace.
+     * 
+     * @param resource the input file
+     * @return the listener, or null if the output is returned
+     *  from <code>execute</code> as a string
+     */
+    protected OutputListener createOutputListener(IResource resource) {
+        return null;
+    }
 
-        if (parseErrors(resource, output)) {
+    /**
+     * Called periodically while the external program runs, in the thread
+     * that called <code>execute</code>. A runner whose output listener
+     * finds problems can show them here before the program has finished.
+     * 
+     * @param resource the input file
+     */
+    protected void outputProgress(IResource resource) {
+    }
+
+    /**
+     * Parses the errors from the output of the external program and
+     * creates the problem markers.
+     * 
+     * @param resource the input file that was processed
+     * @param output the output of the external program
+     * @throws CoreException if there were errors during the build
+     */
+    protected void processOutput(IResource resource, String output) throws CoreException {
+        boolean errors;
+        collectMarkers();
+        try {
+            errors = parseErrors(resource, output);
+        } finally {
+            applyMarkers();
+        }
+        if (errors) {
             throw new BuilderCoreException(TexlipsePlugin.stat("Errors during build. See the problems dialog."));
         }
     }
@@ -250,6 +325,33 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
         return null;
     }
     
+    /**
+     * Collects the markers created by this runner into a batch, which is
+     * applied with <code>applyMarkers</code>. Without a batch each marker
+     * is created right away.
+     */
+    protected void collectMarkers() {
+        if (markers == null) {
+            markers = new MarkerBatch();
+        }
+    }
+
+    /**
+     * Creates the collected markers in a single workspace operation.
+     * The markers are collected until this is called.
+     */
+    protected void applyMarkers() {
+        MarkerBatch batch = markers;
+        markers = null;
+        if (batch != null) {
+            try {
+                batch.apply();
+            } catch (CoreException e) {
+                TexlipsePlugin.log("Creating markers", e);
+            }
+        }
+    }
+
     /**
      * Create a layout warning marker to the given resource.
      *
@@ -259,27 +361,14 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
      * @param markerType
      * @param severity Severity of the error
      */
-    @SuppressWarnings("unchecked")
-	protected static void createMarker(IResource resource, 
+    protected static void createMarker(IResource resource, 
     		Integer lineNumber, String message, String markerType, int severity) {
-    	int lineNr = -1;
-    	if (lineNumber != null) {
-    		lineNr = lineNumber;
-    	}
-    	IMarker marker = AbstractProgramRunner.findMarker(resource, lineNr, message, markerType);
-    	if (marker == null) {
-    		try {
-    			HashMap map = new HashMap();
-    			map.put(IMarker.MESSAGE, message);
-    			map.put(IMarker.SEVERITY, new Integer (severity));
-
-    			if (lineNumber != null)
-    				map.put(IMarker.LINE_NUMBER, lineNumber);
-
-    			MarkerUtilities.createMarker(resource, map, markerType);
-    		} catch (CoreException e) {
-    			throw new RuntimeException(e);
-    		}
+    	MarkerBatch batch = new MarkerBatch();
+    	batch.add(resource, markerType, createAttributes(lineNumber, message, severity));
+    	try {
+    		batch.apply();
+    	} catch (CoreException e) {
+    		throw new RuntimeException(e);
     	}
     }
     
@@ -319,6 +408,72 @@ public abstract class AbstractProgramRunner implements ProgramRunner {
     public static void createMarker(IResource resource, Integer lineNumber, String message) {
         createMarker(resource, lineNumber, message, IMarker.SEVERITY_ERROR);
     }
+
+    private static Map<String, Object> createAttributes(Integer lineNumber, String message, int severity) {
+    	Map<String, Object> map = new HashMap<String, Object>();
+    	map.put(IMarker.MESSAGE, message);
+    	map.put(IMarker.SEVERITY, Integer.valueOf(severity));
+    	if (lineNumber != null) {
+    		map.put(IMarker.LINE_NUMBER, lineNumber);
+    	}
+    	return map;
+    }
+
+    /**
+     * Adds a marker to the batch of this runner, or creates it right
+     * away if the markers are not being collected.
+     *
+     * @param resource the file where the problem occurred
+     * @param message error message
+     * @param lineNumber line number
+     * @param markerType
+     * @param severity Severity of the error
+     * @see #collectMarkers()
+     */
+    protected void addMarker(IResource resource, 
+    		Integer lineNumber, String message, String markerType, int severity) {
+    	if (markers != null) {
+    		markers.add(resource, markerType, createAttributes(lineNumber, message, severity));
+    	} else {
+    		createMarker(resource, lineNumber, message, markerType, severity);
+    	}
+    }
+    
+    /**
+     * Adds a layout warning marker to the batch of this runner.
+     *
+     * @param resource the file where the problem occured
+     * @param message error message
+     * @param lineNumber line number
+     */
+    protected void addLayoutMarker(IResource resource, Integer lineNumber, String message) {
+        addMarker(resource, lineNumber, message, TexlipseBuilder.LAYOUT_WARNING_TYPE,
+                IMarker.SEVERITY_WARNING);
+    }
+    
+    /**
+     * Adds a marker to the batch of this runner.
+     * 
+     * @param resource the file where the problem occured
+     * @param message error message
+     * @param lineNumber line number
+     * @param severity severity of the marker
+     */
+    protected void addMarker(IResource resource, Integer lineNumber, String message, int severity) {
+        addMarker(resource, lineNumber, message, TexlipseBuilder.MARKER_TYPE, severity);
+    }
+
+    /**
+     * Adds a marker to the batch of this runner. The marker's severity
+     * will be "ERROR".
+     * 
+     * @param resource the file where the problem occured
+     * @param message error message
+     * @param lineNumber line number
+     */
+    protected void addMarker(IResource resource, Integer lineNumber, String message) {
+        addMarker(resource, lineNumber, message, IMarker.SEVERITY_ERROR);
+    }
     
     /**
      * Checks pre-existance of marker.
@@ -0,0 +1,201 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IResource;
+
+/**
+ * The digests of the contents of the auxiliary files of a LaTeX document
+ * at some moment. Comparing the snapshots taken before and after a LaTeX
+ * run tells which of the files the run changed, and thus whether LaTeX
+ * must be run again to read the new contents.
+ *
+ * The digest of the .aux file includes the .aux files of the included
+ * files, which are read with \@input.
+ */
+class AuxFileSnapshot {
+
+    /**
+     * The extensions of the auxiliary files
+     */
+    static final String[] AUX_FILES = {
+        "aux", "toc", "lof", "lot", "bbl", "idx", "ind", "nlo", "nls", "bcf", "out"
+    };
+
+    /**
+     * The extensions of the auxiliary files read by LaTeX; the other
+     * files are only read by bibtex, biber and makeindex
+     */
+    static final String[] LATEX_INPUTS = {
+        "aux", "toc", "lof", "lot", "bbl", "ind", "nls", "out"
+    };
+
+    private static final String[] CITATION_COMMANDS = {
+        "\\citation{", "\\bibdata{", "\\bibstyle{"
+    };
+
+    private final String baseName;
+    private final Map<String, byte[]> digests;
+
+    /**
+     * Takes a snapshot of the auxiliary files of the given main file.
+     *
+     * @param resource The main file
+     */
+    AuxFileSnapshot(IResource resource) {
+        String name = resource.getName();
+        baseName = name.substring(0, name.length() - resource.getFileExtension().length());
+        digests = new HashMap<String, byte[]>();
+        for (String ext : AUX_FILES) {
+            File file = getFile(resource, ext);
+            digests.put(ext, "aux".equals(ext) ? digestAux(file, false) : digest(file));
+        }
+    }
+
+    /**
+     * Finds the files that differ in the given snapshot.
+     *
+     * @param later The later snapshot of the same document
+     * @param extensions The extensions of the files to compare
+     * @return The names of the changed files
+     */
+    List<String> getChanged(AuxFileSnapshot later, String[] extensions) {
+        List<String> changed = new ArrayList<String>();
+        for (String ext : extensions) {
+            byte[] a = digests.get(ext);
+            byte[] b = later.digests.get(ext);
+            if (a == null ? b != null : b == null || !MessageDigest.isEqual(a, b)) {
+                changed.add(baseName + ext);
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param resource The main file
+     * @param extension The extension of the file
+     * @return The file of the main file with the given extension
+     */
+    static File getFile(IResource resource, String extension) {
+        String name = resource.getName();
+        String baseName = name.substring(0, name.length() - resource.getFileExtension().length());
+        return new File(resource.getLocation().toFile().getParentFile(), baseName + extension);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has MD5
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @param file The file
+     * @return The digest of the contents of the file, or null if the file
+     *         doesn't exist or can't be read
+     */
+    static byte[] digest(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        MessageDigest md = createDigest();
+        byte[] buffer = new byte[8192];
+        InputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+        return md.digest();
+    }
+
+    /**
+     * Computes the digest of an .aux file and the .aux files it includes.
+     *
+     * @param file The .aux file
+     * @param citationsOnly true, if only the lines read by bibtex are included
+     * @return The digest, or null if the file doesn't exist or can't be read
+     */
+    static byte[] digestAux(File file, boolean citationsOnly) {
+        if (!file.isFile()) {
+            return null;
+        }
+        MessageDigest md = createDigest();
+        try {
+            updateAux(md, file.getParentFile(), file, citationsOnly, new HashSet<File>());
+        } catch (IOException e) {
+            return null;
+        }
+        return md.digest();
+    }
+
+    private static void updateAux(MessageDigest md, File dir, File file, boolean citationsOnly,
+            Set<File> visited) throws IOException {
+        if (!visited.add(file) || !file.isFile()) {
+            return;
+        }
+        // the bytes are hashed, so the encoding doesn't matter as long as
+        // it maps every byte to a char
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "ISO-8859-1"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("\\@input{") && line.endsWith("}")) {
+                    // the names are relative to the directory of the main file
+                    String name = line.substring("\\@input{".length(), line.length() - 1);
+                    updateAux(md, dir, new File(dir, name), citationsOnly, visited);
+                } else if (!citationsOnly || isCitationLine(line)) {
+                    md.update(line.getBytes("ISO-8859-1"));
+                    md.update((byte) '\n');
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private static boolean isCitationLine(String line) {
+        for (String command : CITATION_COMMANDS) {
+            if (line.startsWith(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
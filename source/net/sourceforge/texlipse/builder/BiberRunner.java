@@ -48,7 +48,7 @@ public class BiberRunner extends AbstractProgramRunner {
         while (st.hasMoreTokens()) {
             String s = st.nextToken();
             if (s.startsWith("FATAL")) {
-                createMarker(resource, null, s);
+                addMarker(resource, null, s);
                 hasErrors = true;
             }
         }
@@ -201,17 +201,17 @@ public class BibtexRunner extends AbstractProgramRunner {
                     
                     String fileName = nextLine.substring(index + 9);
                     IResource resource = sourceDir.findMember(fileName);
-                    createMarker(resource, lineNumber, message, IMarker.SEVERITY_WARNING);
+                    addMarker(resource, lineNumber, message, IMarker.SEVERITY_WARNING);
                     
                 } else if (nextLine.startsWith("Warning--")) {
                     
                     // if followed by another warning, this is the endlist with no info
-                    createMarker(bibResource, lineNumber, message, IMarker.SEVERITY_WARNING);
-                    createMarker(bibResource, lineNumber, nextLine.substring(9), IMarker.SEVERITY_WARNING);
+                    addMarker(bibResource, lineNumber, message, IMarker.SEVERITY_WARNING);
+                    addMarker(bibResource, lineNumber, nextLine.substring(9), IMarker.SEVERITY_WARNING);
                     
                 } else {
                     // list of warnings ended
-                    createMarker(bibResource, lineNumber, message, IMarker.SEVERITY_WARNING);
+                    addMarker(bibResource, lineNumber, message, IMarker.SEVERITY_WARNING);
                 }
                 
             } else if (line.startsWith("Database file ")) {
@@ -231,7 +231,7 @@ public class BibtexRunner extends AbstractProgramRunner {
                 String srcFile = TexlipseProperties.getProjectProperty(project,
                         TexlipseProperties.MAINFILE_PROPERTY);
                 IResource mainFileResource = sourceDir.findMember(srcFile);
-                createMarker(mainFileResource, new Integer(0), "Could not open bibtex database file " + bibName);
+                addMarker(mainFileResource, new Integer(0), "Could not open bibtex database file " + bibName);
                 
                 return true; // errors found, and no use in parsing the rest of the file
             }
@@ -264,6 +264,6 @@ public class BibtexRunner extends AbstractProgramRunner {
         IResource resource = sourceDir.findMember(fileName);
         
         String error = line.substring(0, index);
-        createMarker(resource, lineNumber, error);
+        addMarker(resource, lineNumber, error);
     }
 }
@@ -0,0 +1,427 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.properties.TexlipseProperties;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+
+/**
+ * The files read by the last build of a project's main document. The
+ * up-to-date check only needs to look at these files instead of all the
+ * files of the project, and changes of files the document doesn't use
+ * don't cause a rebuild.
+ *
+ * The files are taken from the .fls file which LaTeX writes when it is
+ * run with -recorder, otherwise from the names of the opened files in
+ * the .log file. The output file and the temporary files of the build are
+ * left out, but other files named after the main file, e.g. its own style
+ * or images, are kept. The databases and styles read by BibTeX and
+ * makeindex are taken from their .blg and .ilg files, and the .bib files
+ * of the project are added, since LaTeX itself doesn't read them. The dependencies are stored in the
+ * plugin state location, so they survive restarting Eclipse.
+ */
+final class BuildDependencies {
+
+    private static final int MAGIC = 0x54584450;
+    private static final int VERSION = 1;
+    private static final String DEPENDENCY_DIR = "dependencies";
+
+    /**
+     * The length of the lines in the .log file, longer lines are wrapped
+     */
+    private static final int LOG_LINE_LENGTH = 79;
+
+    /**
+     * The time in milliseconds the .fls file may be older than the .log
+     * file written by the same LaTeX run
+     */
+    private static final long RECORDER_TOLERANCE = 2000;
+
+    private final String sourcePath;
+    private final String[] inputs;
+
+    private BuildDependencies(String sourcePath, String[] inputs) {
+        this.sourcePath = sourcePath;
+        this.inputs = inputs;
+    }
+
+    private static File getStoreFile(IProject project) {
+        File dir = TexlipsePlugin.getDefault().getStateLocation().append(DEPENDENCY_DIR).toFile();
+        return new File(dir, project.getName() + ".dep");
+    }
+
+    /**
+     * Returns the dependencies of the last build of the given main file.
+     *
+     * @param project the project
+     * @param sourceFile the main file of the project
+     * @return the dependencies, or null if they are not known
+     */
+    static synchronized BuildDependencies get(IProject project, IFile sourceFile) {
+        BuildDependencies deps = (BuildDependencies) TexlipseProperties.getSessionProperty(project,
+                TexlipseProperties.SESSION_BUILD_DEPENDENCIES);
+        if (deps == null) {
+            deps = load(getStoreFile(project));
+            if (deps == null) {
+                return null;
+            }
+            TexlipseProperties.setSessionProperty(project,
+                    TexlipseProperties.SESSION_BUILD_DEPENDENCIES, deps);
+        }
+        String path = resolve(null, sourceFile.getLocation().toOSString()).getPath();
+        return deps.sourcePath.equals(path) ? deps : null;
+    }
+
+    /**
+     * Records the files read by the build of the given main file from
+     * the .fls or .log file next to it.
+     *
+     * @param project the project
+     * @param sourceFile the main file, which has just been built
+     * @param outputExt the extension of the output file, beginning with a dot
+     * @param tempExts the extensions of the temporary files of the build,
+     *  beginning with a dot
+     */
+    static synchronized void record(IProject project, IFile sourceFile, String outputExt,
+            String[] tempExts) {
+        File source = resolve(null, sourceFile.getLocation().toOSString());
+        File dir = source.getParentFile();
+        String baseName = OutputFileManager.stripFileExt(source.getName(), null);
+
+        File fls = new File(dir, baseName + ".fls");
+        File log = new File(dir, baseName + ".log");
+        Set<File> files = null;
+        // a .fls file older than the log is left from a build with -recorder
+        if (!log.isFile() || fls.lastModified() + RECORDER_TOLERANCE >= log.lastModified()) {
+            files = readRecorderFile(fls, dir);
+        }
+        if (files == null) {
+            files = readLogFile(log, dir);
+        }
+        BuildDependencies deps = null;
+        if (files != null) {
+            List<String> inputs = new ArrayList<String>();
+            for (File f : files) {
+                String name = f.getName();
+                if (name.equals(baseName + outputExt)
+                        || (!f.equals(source) && hasExtension(name, tempExts))) {
+                    // the output and temporary files of the build, they are
+                    // moved away afterwards
+                    continue;
+                }
+                inputs.add(f.getPath());
+            }
+            if (!inputs.contains(source.getPath())) {
+                inputs.add(source.getPath());
+            }
+            // the main file may have the same base name as these
+            Set<File> toolInputs = new LinkedHashSet<File>();
+            readToolLogFile(new File(dir, baseName + ".blg"), dir, toolInputs);
+            readToolLogFile(new File(dir, baseName + ".ilg"), dir, toolInputs);
+            String[] bibs = (String[]) TexlipseProperties.getSessionProperty(project,
+                    TexlipseProperties.BIBFILE_PROPERTY);
+            if (bibs != null) {
+                for (String bib : bibs) {
+                    File f = resolve(dir, bib.endsWith(".bib") ? bib : bib + ".bib");
+                    if (f.isFile()) {
+                        toolInputs.add(f);
+                    }
+                }
+            }
+            for (File f : toolInputs) {
+                if (!inputs.contains(f.getPath())) {
+                    inputs.add(f.getPath());
+                }
+            }
+            deps = new BuildDependencies(source.getPath(),
+                    inputs.toArray(new String[inputs.size()]));
+        }
+
+        TexlipseProperties.setSessionProperty(project,
+                TexlipseProperties.SESSION_BUILD_DEPENDENCIES, deps);
+        File storeFile = getStoreFile(project);
+        if (deps == null) {
+            storeFile.delete();
+        } else {
+            deps.save(storeFile);
+        }
+    }
+
+    /**
+     * Determines whether a file read by the build has been modified or
+     * removed after the given time.
+     *
+     * @param stamp the time stamp of the output file
+     * @return true, if none of the files has changed
+     */
+    boolean isUpToDate(long stamp) {
+        for (String path : inputs) {
+            File f = new File(path);
+            long modified = f.lastModified();
+            // a removed file gives 0
+            if (modified == 0 || modified > stamp) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasExtension(String name, String[] exts) {
+        for (String ext : exts) {
+            if (name.endsWith(ext)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the files from a .fls file, which has the lines
+     * "PWD dir", "INPUT file" and "OUTPUT file".
+     *
+     * @return the files read but not written by LaTeX, or null if the
+     *  file doesn't exist or can't be read
+     */
+    private static Set<File> readRecorderFile(File fls, File dir) {
+        if (!fls.isFile()) {
+            return null;
+        }
+        Set<File> inputs = new LinkedHashSet<File>();
+        Set<File> outputs = new LinkedHashSet<File>();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(fls), "UTF-8"));
+            try {
+                File pwd = dir;
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("PWD ")) {
+                        pwd = new File(line.substring(4));
+                    } else if (line.startsWith("INPUT ")) {
+                        inputs.add(resolve(pwd, line.substring(6)));
+                    } else if (line.startsWith("OUTPUT ")) {
+                        outputs.add(resolve(pwd, line.substring(7)));
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        inputs.removeAll(outputs);
+        return inputs;
+    }
+
+    /**
+     * Reads the names of the opened files from a .log file. TeX prints
+     * "(file" when it starts reading an input file and pdfTeX prints
+     * "&lt;file" for an included image. Only the names of existing files
+     * are taken.
+     *
+     * @return the files, or null if the file doesn't exist or can't be read
+     */
+    private static Set<File> readLogFile(File log, File dir) {
+        if (!log.isFile()) {
+            return null;
+        }
+        Set<File> inputs = new LinkedHashSet<File>();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(log), "ISO-8859-1"));
+            try {
+                StringBuffer sb = new StringBuffer();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    sb.append(line);
+                    // a line of full length continues on the next line
+                    if (line.length() == LOG_LINE_LENGTH) {
+                        continue;
+                    }
+                    scanLogLine(sb, dir, inputs);
+                    sb.setLength(0);
+                }
+                scanLogLine(sb, dir, inputs);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return inputs;
+    }
+
+    /**
+     * Reads the databases and styles from a BibTeX .blg file, which has
+     * the lines "Database file #1: file" and "The style file: file", or
+     * from a makeindex .ilg file, which has the line "Scanning style file
+     * file". Only the names of existing files are taken, the styles found
+     * elsewhere in the TeX installation are given without a directory.
+     *
+     * @param inputs the set to add the files to
+     */
+    private static void readToolLogFile(File toolLog, File dir, Set<File> inputs) {
+        if (!toolLog.isFile()) {
+            return;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(toolLog), "ISO-8859-1"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    String name = null;
+                    if (line.startsWith("Database file #")) {
+                        int colon = line.indexOf(": ");
+                        if (colon > 0) {
+                            name = line.substring(colon + 2);
+                        }
+                    } else if (line.startsWith("The style file: ")) {
+                        name = line.substring(16);
+                    } else if (line.startsWith("Scanning style file ")) {
+                        name = line.substring(20);
+                        // followed by dots and the number of attributes
+                        int dots = name.indexOf("...");
+                        if (dots > 0) {
+                            name = name.substring(0, dots);
+                        }
+                    }
+                    if (name != null && name.trim().length() > 0) {
+                        File f = resolve(dir, name.trim());
+                        if (f.isFile()) {
+                            inputs.add(f);
+                        }
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // the files of the tool are just left out
+        }
+    }
+
+    private static void scanLogLine(CharSequence line, File dir, Set<File> inputs) {
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c != '(' && c != '<') {
+                continue;
+            }
+            int start = i + 1;
+            int end = start;
+            while (end < length) {
+                char d = line.charAt(end);
+                if (Character.isWhitespace(d) || d == '(' || d == ')' || d == '<' || d == '>'
+                        || (c == '<' && d == ',')) {
+                    break;
+                }
+                end++;
+            }
+            if (end > start) {
+                File f = resolve(dir, line.subSequence(start, end).toString());
+                if (f.isFile()) {
+                    inputs.add(f);
+                    i = end - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the canonical file of the given name, which is relative to
+     *  the given directory unless it is absolute
+     */
+    private static File resolve(File dir, String name) {
+        File f = new File(name);
+        if (!f.isAbsolute() && dir != null) {
+            f = new File(dir, name);
+        }
+        try {
+            return f.getCanonicalFile();
+        } catch (IOException e) {
+            return f.getAbsoluteFile();
+        }
+    }
+
+    private void save(File storeFile) {
+        File tmpFile = new File(storeFile.getPath() + ".tmp");
+        try {
+            storeFile.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(sourcePath);
+                out.writeInt(inputs.length);
+                for (String path : inputs) {
+                    out.writeUTF(path);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(storeFile)) {
+                storeFile.delete();
+                tmpFile.renameTo(storeFile);
+            }
+        } catch (IOException e) {
+            TexlipsePlugin.log("Unable to write the build dependencies " + storeFile, e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * @return the stored dependencies, or null if the file is missing,
+     *  old or damaged
+     */
+    private static BuildDependencies load(File storeFile) {
+        if (!storeFile.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(storeFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return null;
+                }
+                String sourcePath = in.readUTF();
+                String[] inputs = new String[in.readInt()];
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = in.readUTF();
+                }
+                return new BuildDependencies(sourcePath, inputs);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.eclipse.core.resources.IResource;
+
+/**
+ * A step run by a <code>BuildStepRunner</code>: a program runner applied
+ * to the main file, with the files the program reads and writes. The files
+ * are given as extensions of the main file name, e.g. "idx" for makeindex.
+ *
+ * A forced step always runs, other steps run only if an input has changed
+ * since their last run or an output is missing.
+ */
+class BuildStep {
+
+    private final ProgramRunner runner;
+    private final String[] inputs;
+    private final String[] outputs;
+    private boolean forced;
+    private boolean hasRun;
+
+    /**
+     * Creates a new build step.
+     *
+     * @param runner The program to run
+     * @param inputs The extensions of the files the program reads
+     * @param outputs The extensions of the files the program writes
+     */
+    BuildStep(ProgramRunner runner, String[] inputs, String[] outputs) {
+        this.runner = runner;
+        this.inputs = inputs;
+        this.outputs = outputs;
+    }
+
+    ProgramRunner getRunner() {
+        return runner;
+    }
+
+    /**
+     * @param forced true, if the step must run even if its inputs haven't changed
+     */
+    void setForced(boolean forced) {
+        this.forced = forced;
+    }
+
+    boolean isForced() {
+        return forced;
+    }
+
+    /**
+     * @return true, if the step has run in the current build
+     */
+    boolean hasRun() {
+        return hasRun;
+    }
+
+    void setRun() {
+        hasRun = true;
+    }
+
+    /**
+     * @param resource The main file
+     * @return A key identifying this step of the given main file
+     */
+    String getKey(IResource resource) {
+        return runner.getClass().getName() + ":"
+            + AuxFileSnapshot.getFile(resource, outputs.length > 0 ? outputs[0] : "").getAbsolutePath();
+    }
+
+    /**
+     * @param resource The main file
+     * @return true, if an input of the step exists
+     */
+    boolean inputsExist(IResource resource) {
+        for (String ext : inputs) {
+            if (AuxFileSnapshot.getFile(resource, ext).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param resource The main file
+     * @return true, if all outputs of the step exist
+     */
+    boolean outputsExist(IResource resource) {
+        for (String ext : outputs) {
+            if (!AuxFileSnapshot.getFile(resource, ext).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the digest of an input file.
+     *
+     * @param file The input file
+     * @return The digest, or null if the file doesn't exist or can't be read
+     */
+    protected byte[] digest(File file) {
+        return AuxFileSnapshot.digest(file);
+    }
+
+    /**
+     * Computes a digest of the contents of the input files.
+     *
+     * @param resource The main file
+     * @return The digest
+     */
+    byte[] digestInputs(IResource resource) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        for (String ext : inputs) {
+            byte[] d = digest(AuxFileSnapshot.getFile(resource, ext));
+            // a missing file differs from an empty one
+            md.update((byte) (d != null ? 1 : 0));
+            if (d != null) {
+                md.update(d);
+            }
+        }
+        return md.digest();
+    }
+}
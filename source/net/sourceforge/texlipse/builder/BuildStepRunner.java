@@ -0,0 +1,171 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Runs the <code>BuildStep</code>s of a build concurrently, each only if
+ * it needs to run. The output of the programs is parsed and the markers
+ * are created in the build thread, because only it may modify the
+ * workspace during the build.
+ *
+ * The steps must not depend on each other's output and must not share
+ * a program runner.
+ */
+class BuildStepRunner {
+
+    private static ExecutorService executor;
+
+    private final List<BuildStep> steps;
+    /**
+     * The input digests of the steps at their last successful run,
+     * by the keys of the steps
+     */
+    private final Map<String, byte[]> digests;
+
+    /**
+     * Creates a new step runner.
+     *
+     * @param digests The input digests of the previous builds, which
+     *                are updated by this build
+     */
+    BuildStepRunner(Map<String, byte[]> digests) {
+        this.digests = digests;
+        steps = new ArrayList<BuildStep>();
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "TeXlipse build step");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Adds a step to the build.
+     *
+     * @param step The step
+     */
+    void add(BuildStep step) {
+        steps.add(step);
+    }
+
+    /**
+     * Decides whether the step must run.
+     */
+    private boolean needsRun(BuildStep step, IResource resource) {
+        if (step.isForced()) {
+            return true;
+        }
+        if (!step.inputsExist(resource)) {
+            return false;
+        }
+        byte[] old = digests.get(step.getKey(resource));
+        return old == null || !step.outputsExist(resource)
+            || !MessageDigest.isEqual(old, step.digestInputs(resource));
+    }
+
+    /**
+     * Runs the programs of the steps that need to run concurrently and
+     * processes their output in the build thread in the order of the steps.
+     *
+     * @param resource The main file to build
+     * @param monitor The progress monitor of the build
+     * @throws CoreException If a step fails, the other steps are finished
+     *                       before the first error is thrown
+     */
+    void run(final IResource resource, IProgressMonitor monitor) throws CoreException {
+        List<BuildStep> running = new ArrayList<BuildStep>();
+        for (BuildStep step : steps) {
+            if (needsRun(step, resource)) {
+                running.add(step);
+            }
+        }
+
+        List<Future<String>> outputs = new ArrayList<Future<String>>(running.size());
+        List<byte[]> inputDigests = new ArrayList<byte[]>(running.size());
+        for (BuildStep step : running) {
+            inputDigests.add(step.digestInputs(resource));
+            final ProgramRunner runner = step.getRunner();
+            if (running.size() > 1 && runner instanceof AbstractProgramRunner) {
+                outputs.add(getExecutor().submit(new Callable<String>() {
+                    public String call() throws CoreException {
+                        return ((AbstractProgramRunner) runner).execute(resource);
+                    }
+                }));
+            } else {
+                outputs.add(null);
+            }
+        }
+
+        CoreException error = null;
+        for (int i = 0; i < running.size(); i++) {
+            BuildStep step = running.get(i);
+            try {
+                Future<String> output = outputs.get(i);
+                if (output == null) {
+                    step.getRunner().run(resource);
+                } else {
+                    ((AbstractProgramRunner) step.getRunner()).processOutput(resource, getOutput(output));
+                }
+                digests.put(step.getKey(resource), inputDigests.get(i));
+            } catch (CoreException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+            step.setRun();
+            monitor.worked(10);
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static String getOutput(Future<String> output) throws CoreException {
+        try {
+            return output.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CoreException) {
+                throw (CoreException) e.getCause();
+            }
+            throw new CoreException(new Status(IStatus.ERROR, TexlipsePlugin.getPluginId(),
+                    IStatus.ERROR, "Building the project: ", e.getCause()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CoreException(new Status(IStatus.ERROR, TexlipsePlugin.getPluginId(),
+                    IStatus.ERROR, "Building the project: ", e));
+        }
+    }
+}
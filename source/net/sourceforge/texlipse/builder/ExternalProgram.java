@@ -9,12 +9,8 @@
  */
 package net.sourceforge.texlipse.builder;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringWriter;
 import java.util.Properties;
 
 import net.sourceforge.texlipse.PathUtils;
@@ -30,6 +26,9 @@ import net.sourceforge.texlipse.properties.TexlipseProperties;
  */
 public class ExternalProgram {
     
+    // the interval of calling the progress callback in milliseconds
+    private static final long PROGRESS_INTERVAL = 500;
+    
     // the command to run
     private String[] command;
 
@@ -42,6 +41,9 @@ public class ExternalProgram {
     // output messages to this console
     private String consoleOutput;
     
+    // the charset of the output of the process, null for the default charset
+    private String charset;
+    
     /**
      * Creates a new command runner.
      */
@@ -50,6 +52,7 @@ public class ExternalProgram {
         this.dir = null;
         this.process = null;
         this.consoleOutput = null;
+        this.charset = null;
     }
 
     /**
@@ -63,6 +66,17 @@ public class ExternalProgram {
         this.dir = dir;
         this.process = null;
         this.consoleOutput = console;
+        this.charset = null;
+    }
+
+    /**
+     * Sets the charset used to decode the output of the process.
+     * Must be called after <code>setup</code>.
+     * 
+     * @param charset the name of the charset, or null for the default charset
+     */
+    public void setCharset(String charset) {
+        this.charset = charset;
     }
 
     /**
@@ -76,35 +90,6 @@ public class ExternalProgram {
         }
     }
     
-    /**
-     * Reads the contents of a stream.
-     * 
-     * @param is the stream
-     * @return the contents of the stream as a String
-     */
-    protected String readOutput(InputStream is) {
-        
-        StringWriter store = new StringWriter();
-        try {
-            
-            InputStreamReader isr = new InputStreamReader(is);
-            BufferedReader br = new BufferedReader(isr);
-            String line = null;
-
-            while ((line = br.readLine()) != null) {
-                store.write(line + '\n');
-                if (consoleOutput != null) {
-                    BuilderRegistry.printToConsole(consoleOutput + "> " + line);
-                }
-            }
-            
-        } catch (IOException e) {
-        }
-        
-        store.flush();
-        return store.getBuffer().toString();
-    }
-
     /**
      * Runs the external program as a process and waits 
      * for the process to finish execution.
@@ -114,7 +99,7 @@ public class ExternalProgram {
      * @throws Exception
      */
     public String run(String[] queryMessage) throws Exception {
-        return run(true, queryMessage);
+        return run(true, queryMessage, null, null);
     }
 
     /**
@@ -125,7 +110,43 @@ public class ExternalProgram {
      * @throws Exception
      */
     public String run() throws Exception {
-        return run(true, null);
+        return run(true, null, null, null);
+    }
+    
+    /**
+     * Runs the external program as a process and waits 
+     * for the process to finish execution. The lines of the standard
+     * output are passed to the listener as soon as they are read, and the
+     * lines of the standard error after them.
+     * 
+     * @param queryMessage text which will trigger the query dialog, or null
+     * @param listener receives the output, or null
+     * @return the output of the process, or an empty string if the output
+     *  was passed to the listener
+     * @throws Exception
+     */
+    public String run(String[] queryMessage, OutputListener listener) throws Exception {
+        return run(true, queryMessage, listener, null);
+    }
+    
+    /**
+     * Runs the external program as a process and waits 
+     * for the process to finish execution. The lines of the standard
+     * output are passed to the listener as soon as they are read, and the
+     * lines of the standard error after them. The progress callback is
+     * called in this thread every now and then while the program runs,
+     * and once after the output has been read.
+     * 
+     * @param queryMessage text which will trigger the query dialog, or null
+     * @param listener receives the output, or null
+     * @param progress called while waiting for the program, or null
+     * @return the output of the process, or an empty string if the output
+     *  was passed to the listener
+     * @throws Exception
+     */
+    public String run(String[] queryMessage, OutputListener listener, Runnable progress)
+            throws Exception {
+        return run(true, queryMessage, listener, progress);
     }
     
     /**
@@ -134,13 +155,15 @@ public class ExternalProgram {
      * 
      * @param wait if true, this method will block until
      *             the process has finished execution
+     * @param queryMessage text which will trigger the query dialog, or null
+     * @param listener receives the output, or null
+     * @param progress called while waiting for the output, or null
      * @return the text produced to standard output by the process
      * @throws IOException 
      */
-    protected String run(boolean wait, String[] queryMessage) throws IOException {
+    protected String run(boolean wait, String[] queryMessage, OutputListener listener,
+            Runnable progress) throws IOException {
         
-        String output = null;
-        String errorOutput = null;
         if ((command != null) && (dir != null)) {
             
         	StringBuffer commandSB = new StringBuffer();
@@ -170,30 +193,29 @@ public class ExternalProgram {
             throw new IllegalStateException();
         }
 
-        final StringBuffer thErrorOutput = new StringBuffer();
-        final StringBuffer thOutput = new StringBuffer();
-        
         // scan the standard output stream
         final OutputScanner scanner = new OutputScanner(process.getInputStream(), 
-                process.getOutputStream(), queryMessage, consoleOutput);
+                process.getOutputStream(), queryMessage, consoleOutput, charset, listener);
         
-        // scan also the standard error stream
+        // scan also the standard error stream, the lines are kept until
+        // the standard output has been read
         final OutputScanner errorScanner = new OutputScanner(process.getErrorStream(), 
-                process.getOutputStream(), queryMessage, consoleOutput);
+                process.getOutputStream(), queryMessage, consoleOutput, charset, null);
         
+        // aborted by the user in the standard output or the error output
+        final boolean[] aborted = new boolean[2];
         final Thread errorThread = new Thread() {
             public void run() {
-                if (errorScanner.scanOutput()) {
-                    thErrorOutput.append(errorScanner.getText());
+                if (!errorScanner.scanOutput()) {
+                    aborted[1] = true;
                 }
             };
         };
         final Thread outputThread = new Thread() {
             public void run() {
-                if (scanner.scanOutput()) {
-                    thOutput.append(scanner.getText());
-                } else {
+                if (!scanner.scanOutput()) {
                     // Abort by user: Abort build, clear all output
+                    aborted[0] = true;
                     process.destroy();
                     try {
                         errorThread.join();
@@ -201,8 +223,6 @@ public class ExternalProgram {
                         // Should not happen
                         TexlipsePlugin.log("Output scanner interrupted", e);
                     }
-                    thOutput.setLength(0);
-                    thErrorOutput.setLength(0);
                 }
             };
         };
@@ -211,16 +231,17 @@ public class ExternalProgram {
         errorThread.start();
         try {
             // Wait until stream read has finished
+            while (outputThread.isAlive()) {
+                outputThread.join(PROGRESS_INTERVAL);
+                if (progress != null) {
+                    progress.run();
+                }
+            }
             errorThread.join();
-            outputThread.join();
         } catch (InterruptedException e) {
             TexlipsePlugin.log("Output scanner interrupted", e);
             // Should not happen
         }
-
-        output = thOutput.toString();
-        errorOutput = thErrorOutput.toString();
-        
         
         if (wait) {
             // the process status code is not useful here
@@ -235,8 +256,23 @@ public class ExternalProgram {
         
         process = null;
         
+        if (aborted[0]) {
+            return "";
+        }
+        
         // combine the error output with normal output
         // to collect information from for example makeindex
+        String errorOutput = aborted[1] ? "" : errorScanner.getText();
+        if (listener != null) {
+            int start = 0;
+            int end;
+            while ((end = errorOutput.indexOf('\n', start)) >= 0) {
+                listener.lineRead(errorOutput.substring(start, end));
+                start = end + 1;
+            }
+            return "";
+        }
+        String output = scanner.getText();
         if (errorOutput.length() > 0) {
         	output += "\n" + errorOutput;
         }
@@ -0,0 +1,469 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+
+import org.eclipse.core.resources.IMarker;
+
+/**
+ * Parses the output of LaTeX line by line while LaTeX runs. The lines
+ * are pushed to the parser in the thread that reads the output, and the
+ * problems found so far can be taken from the parser in another thread.
+ *
+ * Most lines of the output are not problems, so the first characters of
+ * a line are checked before any pattern is matched against it.
+ */
+class LatexLogParser implements OutputListener {
+
+    private static final int MAX_LINE_LENGTH = 79;
+
+    private static final Pattern LATEXERROR = Pattern.compile("^! LaTeX Error: (.*)$");
+    private static final Pattern LATEXCERROR = Pattern.compile("^(.+?\\.\\w{3}):(\\d+): (.+)$");
+    private static final Pattern TEXERROR = Pattern.compile("^!\\s+(.*)$");
+    private static final Pattern FULLBOX = Pattern.compile("^(?:Over|Under)full \\\\[hv]box .* at lines? (\\d+)-?-?(\\d+)?");
+    private static final Pattern WARNING = Pattern.compile("^.+[Ww]arning.*: (.*)$");
+    private static final Pattern ATLINE =  Pattern.compile("^l\\.(\\d+)(.*)$");
+    private static final Pattern ATLINE2 =  Pattern.compile(".* line (\\d+).*");
+
+    // what the next line of the output continues
+    private static final int NONE = 0;
+    private static final int LATEX_ERROR = 1;
+    private static final int LATEX_WARNING = 2;
+    private static final int AT_LINE = 3;
+
+    /**
+     * A problem found in the output.
+     */
+    static class Problem {
+        final String message;
+        final String sourceFile;
+        final int lineNumber;
+        final int severity;
+        final boolean layout;
+
+        Problem(String message, String sourceFile, int lineNumber, int severity, boolean layout) {
+            this.message = message;
+            this.sourceFile = sourceFile;
+            this.lineNumber = lineNumber;
+            this.severity = severity;
+            this.layout = layout;
+        }
+    }
+
+    private final Stack<String> parsingStack;
+    private boolean alreadyShowError;
+
+    // a line of full length, which may continue on the next line
+    private String pendingLine;
+    private int continuation;
+    private String continuedLine;
+
+    private boolean hasProblem;
+    private String error;
+    private int severity;
+    private int linenr;
+    private String occurance;
+
+    private boolean errorsFound;
+    private List<Problem> problems;
+    private volatile boolean cancelled;
+
+    LatexLogParser() {
+        parsingStack = new Stack<String>();
+        problems = new ArrayList<Problem>();
+        severity = IMarker.SEVERITY_WARNING;
+        linenr = -1;
+    }
+
+    /**
+     * Stops parsing, the following lines are ignored and no more
+     * problems are reported.
+     */
+    void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            problems.clear();
+        }
+    }
+
+    /**
+     * @return true, if error messages were found in the output
+     */
+    synchronized boolean hasErrors() {
+        return errorsFound;
+    }
+
+    /**
+     * Takes the problems found since the last call.
+     *
+     * @return the problems, the list is empty if there are none
+     */
+    synchronized List<Problem> takeProblems() {
+        if (problems.isEmpty()) {
+            return new ArrayList<Problem>(0);
+        }
+        List<Problem> result = problems;
+        problems = new ArrayList<Problem>();
+        return result;
+    }
+
+    /**
+     * Parses the whole output at once.
+     *
+     * @param output the output of LaTeX
+     */
+    void parse(String output) {
+        int start = 0;
+        int length = output.length();
+        while (start < length && !cancelled) {
+            int end = start;
+            while (end < length && output.charAt(end) != '\n' && output.charAt(end) != '\r') {
+                end++;
+            }
+            lineRead(output.substring(start, end));
+            start = end + 1;
+        }
+        finish();
+    }
+
+    public synchronized void lineRead(String line) {
+        if (cancelled || line.length() == 0) {
+            return;
+        }
+        if (continuation != NONE) {
+            continueProblem(line);
+            return;
+        }
+        //Add more lines if line length is a multiple of 79 and
+        //it does not end with ...
+        if (pendingLine != null) {
+            line = pendingLine + line;
+            pendingLine = null;
+        }
+        if (line.length() % MAX_LINE_LENGTH == 0 && !line.endsWith("...")) {
+            pendingLine = line;
+            return;
+        }
+        parseLine(line);
+    }
+
+    /**
+     * Called after the last line of the output.
+     */
+    synchronized void finish() {
+        if (cancelled) {
+            return;
+        }
+        if (pendingLine != null) {
+            String line = pendingLine;
+            pendingLine = null;
+            parseLine(line);
+        }
+        if (continuation != NONE) {
+            continueProblem("");
+        }
+        if (hasProblem) {
+            // We have a not reported problem
+            addProblem(error, occurance, linenr, severity, false);
+            hasProblem = false;
+        }
+    }
+
+    private void addProblem(String message, String sourceFile, int lineNumber,
+            int severity, boolean layout) {
+        problems.add(new Problem(message, sourceFile, lineNumber, severity, layout));
+    }
+
+    /**
+     * Reports the unreported problem, if there is one.
+     */
+    private void flushProblem() {
+        if (hasProblem) {
+            addProblem(error, occurance, linenr, severity, false);
+            linenr = -1;
+            hasProblem = false;
+        }
+    }
+
+    private void parseLine(String line) {
+        line = collapseSpaces(line).trim();
+        if (line.length() == 0) {
+            return;
+        }
+        char first = line.charAt(0);
+
+        int colon = line.indexOf(": ");
+        if (colon > 0 && colon + 2 < line.length()) {
+            Matcher m = LATEXCERROR.matcher(line);
+            if (m.matches()) {
+                //C-Style LaTeX error
+                addProblem(m.group(3), m.group(1), Integer.parseInt(m.group(2)), IMarker.SEVERITY_ERROR, false);
+                //Maybe parsingStack is empty...
+                if (parsingStack.isEmpty()) {
+                    //Add the file to the stack
+                    parsingStack.push("(" + m.group(1));
+                }
+                return;
+            }
+        }
+        boolean warning = line.indexOf("arning") > 0;
+        if (first == '!') {
+            Matcher m = TEXERROR.matcher(line);
+            if (m.matches() && line.toLowerCase().indexOf("warning") == -1) {
+                // We have a not reported problem
+                flushProblem();
+                hasProblem = true;
+                errorsFound = true;
+                severity = IMarker.SEVERITY_ERROR;
+                occurance = determineSourceFile();
+                Matcher m2 = LATEXERROR.matcher(line);
+                if (m2.matches()) {
+                    // LaTex error
+                    error = m2.group(1);
+                    continuation = LATEX_ERROR;
+                    return;
+                }
+                if (line.startsWith("! Undefined control sequence.")){
+                    // Undefined Control Sequence
+                    error = "Undefined control sequence: ";
+                    return;
+                }
+                if (warning && WARNING.matcher(line).matches()) {
+                    severity = IMarker.SEVERITY_WARNING;
+                }
+                error = m.group(1);
+                return;
+            }
+        }
+        if (warning) {
+            Matcher m = WARNING.matcher(line);
+            if (m.matches()) {
+                // We have a not reported problem
+                flushProblem();
+                // Reruns are decided by the builder from the contents
+                // of the auxiliary files
+                if (line.indexOf("Label(s) may have changed.") > -1
+                        || line.indexOf("There were undefined") > -1) {
+                    return;
+                }
+
+                // Ignore undefined references because they are
+                // found by the parser
+                if (line.indexOf("Warning: Reference ") > -1)
+                    return;
+                if (line.indexOf("Warning: Citation ") > -1)
+                    return;
+                severity = IMarker.SEVERITY_WARNING;
+                occurance = determineSourceFile();
+                hasProblem = true;
+                error = m.group(1);
+                //Try to get the line number
+                Matcher pM = matchAtLine2(line);
+                if (pM != null) {
+                    linenr = Integer.parseInt(pM.group(1));
+                }
+                if (line.startsWith("LaTeX Warning: ") || line.indexOf("pdfTeX warning") != -1) {
+                    continuedLine = line;
+                    continuation = LATEX_WARNING;
+                }
+                return;
+            }
+        }
+        if ((first == 'O' || first == 'U') && line.indexOf("full \\") > 0) {
+            Matcher m = FULLBOX.matcher(line);
+            if (m.matches()) {
+                // We have a not reported problem
+                flushProblem();
+                occurance = determineSourceFile();
+                addProblem(line, occurance, Integer.parseInt(m.group(1)), IMarker.SEVERITY_WARNING, true);
+                return;
+            }
+        }
+        if (first == 'N' && line.startsWith("No file ")
+                && (line.endsWith(".bbl.") || line.endsWith(".toc."))) {
+            return;
+        }
+        if (hasProblem) {
+            if (first == 'l') {
+                Matcher m = ATLINE.matcher(line);
+                if (m.matches()) {
+                    linenr = Integer.parseInt(m.group(1));
+                    // the text before the error, which is empty at the
+                    // start of a line
+                    continuedLine = m.group(2).trim();
+                    continuation = AT_LINE;
+                    return;
+                }
+            }
+            Matcher m = matchAtLine2(line);
+            if (m != null) {
+                linenr = Integer.parseInt(m.group(1));
+                addProblem(error, occurance, linenr, severity, false);
+                linenr = -1;
+                hasProblem = false;
+                return;
+            }
+        }
+        updateParsedFile(line);
+    }
+
+    /**
+     * Handles the line following a problem, which contains the rest of
+     * the message.
+     *
+     * @param next the next line of the output
+     */
+    private void continueProblem(String next) {
+        int type = continuation;
+        continuation = NONE;
+        String line = continuedLine;
+        continuedLine = null;
+        switch (type) {
+        case LATEX_ERROR:
+            String part2 = next.trim();
+            if (part2.length() > 0 && Character.isLowerCase(part2.charAt(0))) {
+                error += ' ' + part2;
+            }
+            updateParsedFile(part2);
+            break;
+        case LATEX_WARNING:
+            String nextLine = collapseSpaces(next);
+            Matcher pM = matchAtLine2(nextLine);
+            if (pM != null) {
+                linenr = Integer.parseInt(pM.group(1));
+            }
+            updateParsedFile(nextLine);
+            error += nextLine;
+            if (linenr != -1) {
+                addProblem(line, occurance, linenr, severity, false);
+                hasProblem = false;
+                linenr = -1;
+            }
+            break;
+        case AT_LINE:
+            String after = next.trim();
+            if (line.length() > 0) {
+                error += " " + line;
+            }
+            if (after.length() > 0) {
+                error += " (followed by: " + after + ")";
+            }
+            addProblem(error, occurance, linenr, severity, false);
+            linenr = -1;
+            hasProblem = false;
+            break;
+        }
+    }
+
+    private static Matcher matchAtLine2(String line) {
+        if (line.indexOf(" line ") == -1) {
+            return null;
+        }
+        Matcher m = ATLINE2.matcher(line);
+        return m.matches() ? m : null;
+    }
+
+    /**
+     * Replaces each run of spaces with a single space.
+     *
+     * @param line the line
+     * @return the line without repeated spaces
+     */
+    private static String collapseSpaces(String line) {
+        int i = line.indexOf("  ");
+        if (i == -1) {
+            return line;
+        }
+        StringBuilder sb = new StringBuilder(line.length());
+        sb.append(line, 0, i + 1);
+        for (i++; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c != ' ' || line.charAt(i - 1) != ' ') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Updates the stack that determines which file we are currently
+     * parsing, so that errors can be annotated in the correct file.
+     *
+     * @param logLine A line from latex' output containing which file we are in
+     */
+    private void updateParsedFile(String logLine) {
+        if (logLine.indexOf('(') == -1 && logLine.indexOf(')') == -1)
+            return;
+        for (int i = 0; i < logLine.length(); i++) {
+            if (logLine.charAt(i) == '(') {
+                int j;
+                for (j = i + 1; j < logLine.length()
+                        && isAllowedinName(logLine.charAt(j)); j++)
+                    ;
+                parsingStack.push(logLine.substring(i, j).trim());
+                i = j - 1;
+            } else if (logLine.charAt(i) == ')' && !parsingStack.isEmpty()) {
+                parsingStack.pop();
+            } else if (logLine.charAt(i) == ')' && !alreadyShowError) {
+                alreadyShowError = true;
+                // There was a parsing error, this is very rare
+                TexlipsePlugin.log("Error while parsing the LaTeX output. " +
+                        "Please consult the console output", null);
+            }
+        }
+    }
+
+    /**
+     * Check if the character is allowed in a filename
+     * @param c the character
+     * @return true if the character is legal
+     */
+    private static boolean isAllowedinName(char c) {
+        if (c == '(' || c == ')' || c == '[')
+            return false;
+        else
+            return true;
+    }
+
+    private static boolean isValidName(String name) {
+        //File must have a file ending
+        int p = name.lastIndexOf('.');
+        if (p < 0) return false;
+        //File ending must be shorter than 9 characters
+        if (name.length()-p > 10) return false;
+        return true;
+    }
+
+    /**
+     * Determines the source file we are currently parsing.
+     *
+     * @return The filename or null if no file could be determined
+     */
+    private String determineSourceFile() {
+        int i = parsingStack.size()-1;
+        while (i >= 0) {
+            String fileName = parsingStack.get(i).substring(1);
+            //Remove "
+            if (fileName.startsWith("\"") && fileName.endsWith("\"")) {
+                fileName = fileName.substring(1, fileName.length() - 1);
+            }
+            if (isValidName(fileName)) return fileName;
+            i--;
+        }
+        return null;
+    }
+}
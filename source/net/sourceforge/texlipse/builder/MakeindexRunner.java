@@ -88,7 +88,7 @@ public class MakeindexRunner extends AbstractProgramRunner {
             String line = st.nextToken();
             if (line.endsWith("not found.")) {
                 errorsFound = true;
-                createMarker(resource, null, line);
+                addMarker(resource, null, line);
             }
         }
         
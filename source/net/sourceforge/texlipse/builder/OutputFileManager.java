@@ -626,6 +626,13 @@ public class OutputFileManager {
         // all following steps)
         refreshView(monitor);
 
+        // remember the files read by a build of the main document, before
+        // the .fls and .log files are moved away
+        if (sourceFile != null && sourceFile.equals(getActualSourceFile())) {
+            BuildDependencies.record(project, sourceFile, '.' + format,
+                    TexlipsePlugin.getPreferenceArray(TexlipseProperties.TEMP_FILE_EXTS));
+        }
+
         Set<IPath> outputFiles = null;
         try { // possibly move output files away from the source dir and mark as derived
             outputFiles = moveOutputFiles(monitor);
@@ -701,13 +708,31 @@ public class OutputFileManager {
 
     /**
      * Determines, if the current output file is up to date (i.e. all source
-     * files are older). This method is aware of partial builds.
+     * files are older). This method is aware of partial builds. If the files
+     * read by the last build of the main document are known, only they are
+     * checked. The output is never up to date while the .bib files are
+     * marked as changed.
      * 
      * @return true, if the output file does not need to be rebuilt; false
      *  if it should
      */
     public boolean isUpToDate() {
         long lastBuildStamp = getOutputFileDate();
+        if (lastBuildStamp == -1) {
+            return false;
+        }
+        if (TexlipseProperties.getSessionProperty(project,
+                TexlipseProperties.BIBFILES_CHANGED) != null) {
+            return false;
+        }
+
+        if (sourceFile != null && TexlipseProperties.getProjectProperty(project,
+                TexlipseProperties.PARTIAL_BUILD_PROPERTY) == null) {
+            BuildDependencies deps = BuildDependencies.get(project, sourceFile);
+            if (deps != null) {
+                return deps.isUpToDate(lastBuildStamp);
+            }
+        }
 
         IResource[] files = TexlipseProperties.getAllProjectFiles(project);
         for (int i = 0; i < files.length; i++) {
@@ -0,0 +1,24 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.builder;
+
+/**
+ * Receives the output of an external program line by line while the
+ * program runs. The lines are passed in a background thread.
+ */
+public interface OutputListener {
+
+    /**
+     * Called for each line of the output.
+     *
+     * @param line the line without the line separator
+     */
+    public void lineRead(String line);
+}
@@ -9,10 +9,12 @@
  */
 package net.sourceforge.texlipse.builder;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.actions.InputQueryDialog;
@@ -22,13 +24,21 @@ import org.eclipse.swt.widgets.Display;
 
 /**
  * Scans the input stream for the given trigger strings and produces a query dialog if sees one.
+ * The input is decoded with the given charset and split into lines, which are passed to
+ * the console and to a listener or saved into a buffer as they are read.
  * 
  * @author Kimmo Karlsson
  */
 public class OutputScanner {
 
+    // the size of the read buffer
+    private static final int BUFFER_SIZE = 8192;
+
+    // the length of the end of the input kept for the trigger strings and the query dialog
+    private static final int RECENT_LENGTH = 4096;
+
     // input stream to scan
-    private BufferedInputStream in;
+    private Reader in;
     
     // output stream to write user's responses
     private OutputStream out;
@@ -42,9 +52,15 @@ public class OutputScanner {
     // the text that the user wrote to the dialog
     private String query;
     
-    // the scanned input
+    // the scanned input, if there is no listener
     private StringBuilder sb;
     
+    // the end of the scanned input, since the last question
+    private StringBuilder recent;
+    
+    // receives the lines, if not null
+    private OutputListener listener;
+    
     // the length of the occured trigger string
     protected int currentTriggerStringLength;
 
@@ -60,12 +76,37 @@ public class OutputScanner {
      * @param console
      */
     public OutputScanner(InputStream in, OutputStream out, String[] trig, String console) {
-        this.in = new BufferedInputStream(in);
+        this(in, out, trig, console, null, null);
+    }
+
+    /**
+     * Create new OutputProducer.
+     * 
+     * @param in the stream to scan
+     * @param out the stream to write the user's responses to
+     * @param trig the trigger strings of the query dialog
+     * @param console the prefix of the lines in the console, or null if the
+     *  lines are not shown in the console
+     * @param charset the charset of the input, or null for the default charset
+     * @param listener receives the lines instead of the buffer, or null
+     */
+    public OutputScanner(InputStream in, OutputStream out, String[] trig, String console,
+            String charset, OutputListener listener) {
+        Reader reader = null;
+        if (charset != null) {
+            try {
+                reader = new InputStreamReader(in, charset);
+            } catch (UnsupportedEncodingException e) {
+            }
+        }
+        this.in = reader != null ? reader : new InputStreamReader(in);
         this.out = out;
         this.triggerString = trig;
         this.okPressed = false;
         this.query = null;
         this.sb = new StringBuilder();
+        this.recent = new StringBuilder();
+        this.listener = listener;
         this.consoleOutput = console;
     }
 
@@ -77,76 +118,85 @@ public class OutputScanner {
     }
 
     /**
-     * Read output from the stream and save it into a buffer.
+     * Read output from the stream and pass it on line by line.
      * If the trigger string occurs in the stream, a question dialog will be popped up.
      * 
-     * Reading is done byte-by-byte because we don't know when the stream is
-     * going to pause. Reading by buffers would mean that we could end up waiting
-     * input from the program when the program is waiting input from us, i.e. a deadlock.
+     * The reader returns what the program has written so far instead of
+     * waiting for the buffer to fill up, so we don't end up waiting input
+     * from the program when the program is waiting input from us.
      * 
-     * @return true if the output was read successfully into the buffer
+     * @return true if the output was read successfully
      */
     public boolean scanOutput() {
         try {
-            // this was the index we had parsed the output to
-            // when the user pressed ok on our dialog
-            int startOfLine = 0;
-            int okIndex = 0;
-            int maxLength = 0;
-            if (triggerString != null) {
-                //determine max length of a triggerString
-                for (int i = 0; i < triggerString.length; i++) {
-                    if (maxLength < triggerString[i].length()) 
-                        maxLength = triggerString[i].length();
+            char[] buf = new char[BUFFER_SIZE];
+            StringBuilder line = new StringBuilder();
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                int start = 0;
+                for (int i = 0; i < n; i++) {
+                    if (buf[i] == '\n') {
+                        line.append(buf, start, i - start);
+                        endLine(line);
+                        start = i + 1;
+                    }
                 }
-            }
-            int avail = 0;
-            while (true) {
-                
-                int nextByte = in.read();
-                if (nextByte == -1) break;
-                sb.append((char)nextByte);
+                line.append(buf, start, n - start);
                 
-                avail--;                
-                if (avail <= 0) avail = in.available();
-                
-                //TriggerStrings can only occur if the program is waiting for input => in.available() == 0
-                if (triggerString != null && avail == 0) {
-                    for (int i = 0; i < triggerString.length; i++) {
-                        if (sb.length() > maxLength)
-                            okIndex = sb.length() - maxLength;
-                        int foundIndex = sb.indexOf(triggerString[i], okIndex);
-                        if (foundIndex >= 0) {
-                            currentTriggerStringLength = triggerString[i].length();
-                            
-                            boolean retry = askUserInput();
-                            if (!retry) {
-                                return false;
-                            } else {
-                                okIndex = foundIndex+1;
-                                break;
+                if (triggerString != null) {
+                    recent.append(buf, 0, n);
+                    if (recent.length() > RECENT_LENGTH) {
+                        recent.delete(0, recent.length() - RECENT_LENGTH);
+                    }
+                    //TriggerStrings can only occur if the program is waiting for input
+                    if (!in.ready()) {
+                        for (int i = 0; i < triggerString.length; i++) {
+                            int foundIndex = recent.indexOf(triggerString[i]);
+                            if (foundIndex >= 0) {
+                                currentTriggerStringLength = triggerString[i].length();
+                                
+                                boolean retry = askUserInput();
+                                if (!retry) {
+                                    return false;
+                                } else {
+                                    recent.delete(0, foundIndex + 1);
+                                    break;
+                                }
                             }
                         }
                     }
                 }
-                
-                if (consoleOutput != null && (char)nextByte == '\n') {
-                    
-                    int lf = 1;
-                    if (sb.charAt(sb.length()-2) == '\r') { // fix for windows linefeeds
-                        lf++;
-                    }
-                    // don't print the whole buffer as the printToConsole() outputs a linefeed
-                    BuilderRegistry.printToConsole(consoleOutput + "> " + sb.substring(startOfLine, sb.length()-lf));
-                    startOfLine = sb.length();
-                }
-                
+            }
+            if (line.length() > 0) {
+                endLine(line);
             }
         } catch (IOException e) {
         }
         return true;
     }
     
+    /**
+     * Passes a complete line to the console and to the listener or the buffer.
+     * 
+     * @param line the line, which is cleared
+     */
+    private void endLine(StringBuilder line) {
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r') { // fix for windows linefeeds
+            length--;
+        }
+        String text = line.substring(0, length);
+        line.setLength(0);
+        if (consoleOutput != null) {
+            BuilderRegistry.printToConsole(consoleOutput + "> " + text);
+        }
+        if (listener != null) {
+            listener.lineRead(text);
+        } else {
+            sb.append(text).append('\n');
+        }
+    }
+    
     /**
      * Create the build error input query dialog.
      * @param message
@@ -169,13 +219,13 @@ public class OutputScanner {
         
         display.syncExec(new Runnable() {
             public void run() {
-                int i = sb.lastIndexOf("!");
+                int i = recent.lastIndexOf("!");
                 if (i < 0) {
-                    i = currentTriggerStringLength;
+                    i = Math.min(currentTriggerStringLength, recent.length());
                 } else {
-                    i+=2;
+                    i = Math.min(i + 2, recent.length());
                 }
-                InputQueryDialog dlg = createQueryDialog(sb.substring(i));
+                InputQueryDialog dlg = createQueryDialog(recent.substring(i));
                 okPressed = (dlg.open() == 0);
                 query = dlg.getInput();
             }});
@@ -10,10 +10,10 @@
 package net.sourceforge.texlipse.builder;
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-
-import javax.swing.text.StyledEditorKit.BoldAction;
+import java.util.Map;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.auxparser.AuxFileParser;
@@ -22,7 +22,6 @@ import net.sourceforge.texlipse.model.ReferenceEntry;
 import net.sourceforge.texlipse.properties.TexlipseProperties;
 import net.sourceforge.texlipse.viewer.ViewerManager;
 
-import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
@@ -42,6 +41,11 @@ import org.eclipse.swt.widgets.Shell;
  */
 public class TexBuilder extends AbstractBuilder implements AdaptableBuilder {
 
+    /**
+     * The maximum number of LaTeX runs in one build
+     */
+    private static final int MAX_LATEX_RUNS = 5;
+
     private boolean biblatexMode;
     private String biblatexBackend;
     private ProgramRunner latex;
@@ -51,6 +55,7 @@ public class TexBuilder extends AbstractBuilder implements AdaptableBuilder {
     private String output;
     private boolean stopped;
     private int alternative;
+    private final Map<String, byte[]> stepDigests;
     
     public TexBuilder(int i, String outputFormat, int alt) {
         super(i);
@@ -61,6 +66,7 @@ public class TexBuilder extends AbstractBuilder implements AdaptableBuilder {
         bibtex = null;
         makeIndex = null;
         alternative = alt;
+        stepDigests = new HashMap<String, byte[]>();
         isValid();
     }
     
@@ -243,144 +249,132 @@ public class TexBuilder extends AbstractBuilder implements AdaptableBuilder {
     	}
     	
     	IProject project = resource.getProject();
-    	boolean parseAuxFiles = TexlipsePlugin.getDefault().getPreferenceStore().getBoolean(TexlipseProperties.BUILDER_PARSE_AUX_FILES);
-    	String auxFileName = getAuxFileName(project);
-		IResource auxFile = project.getFile(auxFileName);
-    	List<String> oldCitations = null;
-    
-		if (!biblatexMode && parseAuxFiles && auxFile.exists()) {
-			// read all citations from the aux-files and save them for later
-			AuxFileParser afp = new AuxFileParser(project, auxFileName);
-			oldCitations = afp.getCitations();
-		}		
-    	
-    	monitor.subTask("Building document");
-        try {
-            latex.run(resource);
-        } catch (BuilderCoreException ex) {
-            //Don't stop here, we will ask the user later
-            //TODO: Error managment
-            //error = true;
-        }
-        monitor.worked(10);
-        if (stopped)
-            return;
-        
         String runBib = (String) TexlipseProperties.getSessionProperty(project, TexlipseProperties.SESSION_BIBTEX_RERUN);
         Boolean bibChange = (Boolean) TexlipseProperties.getSessionProperty(project, TexlipseProperties.BIBFILES_CHANGED);
-        IResource runIdx = findIndex(project, resource);
-        IResource runNomencl = findNomencl(project, resource);
+        boolean forceBib = runBib != null || bibChange != null;
         
-        // if bibtex is not used, maybe the references need to be updated in the main document
-        String rerun = (String) TexlipseProperties.getSessionProperty(resource.getProject(), TexlipseProperties.SESSION_LATEX_RERUN);
-        
-		if (parseAuxFiles && auxFile.exists()) {
-			AuxFileParser afp = new AuxFileParser(project, auxFileName);
-
-			if (!biblatexMode) {
-    			// check whether a new bibtex run is required
-    			List<String> newCitations = afp.getCitations();
-    			if (!newCitations.equals(oldCitations))
-    				bibChange = new Boolean(true);
-			}
-
-			// add the labels defined in the .aux-file to the label container
-			extractLabels(afp);
-		}
-        
-        // if bibtex is used, the bibliography might be changed
-        String[] bibs = (String[]) TexlipseProperties.getSessionProperty(project, TexlipseProperties.BIBFILE_PROPERTY);
+        AuxFileSnapshot before = new AuxFileSnapshot(resource);
+    	monitor.subTask("Building document");
+        runLatex(resource);
+        if (stopped)
+            return;
         
-        if (bibs != null && bibs.length > 0 && (runBib != null || bibChange != null)) {
-            
-/*            if (error) {
-                if (askUserForContinue(project) == false) {
-                    throw new BuilderCoreException(TexlipsePlugin.stat("Errors during build. See the problems dialog."));
-                }
-            }*/
-            
-            bibtex.run(resource);
+        // run bibtex and the indexes as long as LaTeX changes their inputs,
+        // and LaTeX as long as it or they change the files LaTeX reads
+        int runs = 1;
+        while (true) {
+            forceBib = runTools(resource, forceBib);
             if (stopped)
                 return;
-            monitor.worked(10);
-            
-            TexlipseProperties.setSessionProperty(project, TexlipseProperties.SESSION_BIBTEX_RERUN, null);
-            TexlipseProperties.setSessionProperty(project, TexlipseProperties.BIBFILES_CHANGED, null);
             
-            if (runIdx != null) {
-                makeIndex.run(resource);
-                if (stopped)
-                    return;
-                monitor.worked(10);
+            AuxFileSnapshot after = new AuxFileSnapshot(resource);
+            List<String> changed = before.getChanged(after, AuxFileSnapshot.LATEX_INPUTS);
+            if (changed.isEmpty()) {
+                break;
             }
-            
-            if (runNomencl != null)
-            {
-                // Running makeindex to build nomenclature index
-                // when %input.nlo file is detected
-                makeIndexNomencl.run(resource);
-                if (stopped)
-                    return;
-                monitor.worked(10);
-            }
-              
-            try {
-                latex.run(resource);
-            } catch (BuilderCoreException ex) {
-                //if (!error)
-                //    throw ex;
+            if (runs >= MAX_LATEX_RUNS) {
+                BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("builderLatexRunLimit")
+                        .replace("%i", String.valueOf(runs)).replace("%s", join(changed)));
+                break;
             }
-            if (stopped)
-                return;
-            monitor.worked(10);
+            runs++;
+            BuilderRegistry.printToConsole(TexlipsePlugin.getResourceString("builderLatexRerun")
+                    .replace("%i", String.valueOf(runs)).replace("%s", join(changed)));
+            before = after;
+            // only show the messages of the last run
             clearMarkers(project);
-            try {
-                latex.run(resource);
-            } catch (BuilderCoreException ex) {
-                //if (!error)
-                //    throw ex;
-            }
+            runLatex(resource);
             if (stopped)
                 return;
-            monitor.worked(10);
-            
-        } else if (rerun != null || runIdx != null || runNomencl != null) {
-
-/*            if (error) {
-                if (askUserForContinue(project) == false) {
-                    throw new BuilderCoreException(TexlipsePlugin.stat("Errors during build. See the problems dialog."));
-                }
-            }*/
-            
-            if (runIdx != null) {
-                makeIndex.run(resource);
-                if (stopped)
-                    return;
-                monitor.worked(10);
-            }
-            
-            if (runNomencl != null)
-            {
-                // Running makeindex to build nomenclature index
-                // when %input.nlo file is detected
-                makeIndexNomencl.run(resource);
-                if (stopped)
-                    return;
-                monitor.worked(10);
+        }
+        
+        String auxFileName = getAuxFileName(project);
+        boolean parseAuxFiles = TexlipsePlugin.getDefault().getPreferenceStore().getBoolean(TexlipseProperties.BUILDER_PARSE_AUX_FILES);
+		if (parseAuxFiles && project.getFile(auxFileName).exists()) {
+			// add the labels defined in the .aux-file to the label container
+			extractLabels(new AuxFileParser(project, auxFileName));
+		}
+    }
+    
+    /**
+     * Runs LaTeX once. The errors are shown as markers and don't stop the build.
+     * 
+     * @param resource the main file
+     * @throws CoreException if LaTeX couldn't be run
+     */
+    private void runLatex(IResource resource) throws CoreException {
+        try {
+            latex.run(resource);
+        } catch (BuilderCoreException ex) {
+            //Don't stop here, we will ask the user later
+            //TODO: Error managment
+        }
+        monitor.worked(10);
+    }
+    
+    /**
+     * Runs bibtex or biber, makeindex and makeindex for the nomenclature
+     * concurrently, each only if its input has changed since its last run.
+     * 
+     * @param resource the main file
+     * @param forceBib true, if bibtex must run anyway, e.g. because the .bib files changed
+     * @return true, if bibtex still must be forced because it didn't run
+     * @throws CoreException if a program fails
+     */
+    private boolean runTools(IResource resource, boolean forceBib) throws CoreException {
+        IProject project = resource.getProject();
+        BuildStepRunner steps = new BuildStepRunner(stepDigests);
+        
+        BuildStep bib = null;
+        String[] bibs = (String[]) TexlipseProperties.getSessionProperty(project, TexlipseProperties.BIBFILE_PROPERTY);
+        if (bibs != null && bibs.length > 0) {
+            if (bibtex.getInputFormat().equals(TexlipseProperties.INPUT_FORMAT_BCF)) {
+                bib = new BuildStep(bibtex, new String[] { TexlipseProperties.INPUT_FORMAT_BCF },
+                        new String[] { TexlipseProperties.OUTPUT_FORMAT_BBL });
+            } else {
+                // bibtex only reads the citations from the .aux files
+                bib = new BuildStep(bibtex, new String[] { TexlipseProperties.OUTPUT_FORMAT_AUX },
+                        new String[] { TexlipseProperties.OUTPUT_FORMAT_BBL }) {
+                    protected byte[] digest(File file) {
+                        return AuxFileSnapshot.digestAux(file, true);
+                    }
+                };
             }
-            
-            try {
-                latex.run(resource);
-            } catch (BuilderCoreException ex) {
-                //if (!error)
-                    //throw ex;
+            bib.setForced(forceBib);
+            steps.add(bib);
+        }
+        steps.add(new BuildStep(makeIndex,
+                new String[] { TexlipseProperties.INPUT_FORMAT_IDX },
+                new String[] { TexlipseProperties.OUTPUT_FORMAT_IDX }));
+        if (makeIndexNomencl != null) {
+            // Running makeindex to build nomenclature index
+            // when %input.nlo file is detected
+            steps.add(new BuildStep(makeIndexNomencl,
+                    new String[] { TexlipseProperties.INPUT_FORMAT_NOMENCL },
+                    new String[] { TexlipseProperties.OUTPUT_FORMAT_NOMENCL }));
+        }
+        
+        steps.run(resource, monitor);
+        
+        if (bib == null || bib.hasRun()) {
+            // without .bib files there is nothing to rerun, and the build
+            // must not stay out of date
+            TexlipseProperties.setSessionProperty(project, TexlipseProperties.SESSION_BIBTEX_RERUN, null);
+            TexlipseProperties.setSessionProperty(project, TexlipseProperties.BIBFILES_CHANGED, null);
+            return false;
+        }
+        return forceBib;
+    }
+    
+    private static String join(List<String> names) {
+        StringBuffer sb = new StringBuffer();
+        for (String name : names) {
+            if (sb.length() > 0) {
+                sb.append(", ");
             }
-            if (stopped)
-                return;
-            monitor.worked(10);
-            
-            TexlipseProperties.setSessionProperty(resource.getProject(), TexlipseProperties.SESSION_LATEX_RERUN, null);
+            sb.append(name);
         }
+        return sb.toString();
     }
 
     public void updateBuilder(IProject project) {
@@ -398,63 +392,4 @@ public class TexBuilder extends AbstractBuilder implements AdaptableBuilder {
         biblatexMode = blModeVal;
         biblatexBackend = newBiblatexBackend;
     }
-
-    /**
-     * Find a handle to the index file of this project.
-     * @param project the current project
-     * @param source buildable resource inside project 
-     * @return handle to index file or null if not found.
-     *         Returns null also if the index file is older than the current output file
-     */
-    private IResource findIndex(IProject project, IResource source) {
-        
-        IContainer srcDir = TexlipseProperties.getProjectSourceDir(project);
-        if (srcDir == null) {
-            srcDir = project;
-        }
-        
-        String name = source.getName();
-        String idxName = name.substring(0, name.length() - source.getFileExtension().length()) + TexlipseProperties.INPUT_FORMAT_IDX;
-        IResource idxFile = srcDir.findMember(idxName);
-        if (idxFile == null) {
-            return null;
-        }
-        
-        IResource outFile = TexlipseProperties.getProjectOutputFile(project);
-        if (outFile.getLocalTimeStamp() > idxFile.getLocalTimeStamp()) {
-            return null;
-        }
-        
-        return idxFile;
-    }
-    
-    /**
-     * Find a handle to the index file of this project.
-     * @param project the current project
-     * @param source buildable resource inside project 
-     * @return handle to index file or null if not found.
-     *         Returns null also if the index file is older than the current output file
-     */
-    private IResource findNomencl(IProject project, IResource source) {
-        
-        IContainer srcDir = TexlipseProperties.getProjectSourceDir(project);
-        if (srcDir == null) {
-            srcDir = project;
-        }
-
-        String name = source.getName();
-        String nomenclName = name.substring(0, name.length() - source.getFileExtension().length()) + TexlipseProperties.INPUT_FORMAT_NOMENCL;
-        IResource idxFile = srcDir.findMember(nomenclName);
-    
-        if (idxFile == null) {
-            return null;
-        }
-        
-        IResource outFile = TexlipseProperties.getProjectOutputFile(project);
-        if (outFile.getLocalTimeStamp() > idxFile.getLocalTimeStamp()) {
-            return null;
-        }
-        
-        return idxFile;
-    }
 }
@@ -123,7 +123,6 @@ public class TexlipseBuilder extends IncrementalProjectBuilder {
         BuilderRegistry.clearConsole();
 
         // reset session variables
-        TexlipseProperties.setSessionProperty(project, TexlipseProperties.SESSION_LATEX_RERUN, null);
         TexlipseProperties.setSessionProperty(project, TexlipseProperties.SESSION_BIBTEX_RERUN, null);
         TexlipseProperties.setSessionProperty(project, TexlipseProperties.BIBFILES_CHANGED, null);
 
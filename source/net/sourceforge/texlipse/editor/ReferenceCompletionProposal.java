@@ -0,0 +1,94 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.editor;
+
+import net.sourceforge.texlipse.model.ReferenceEntry;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+import org.eclipse.jface.text.contentassist.IContextInformation;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.Point;
+
+/**
+ * A completion proposal for a \cite or \ref key. The proposal only refers
+ * to the reference entry, the additional info shown next to the proposal
+ * is wrapped when the proposal is selected the first time.
+ */
+public class ReferenceCompletionProposal implements ICompletionProposal {
+    private ReferenceEntry fentry;
+    private int fReplacementOffset;
+    private int fReplacementLength;
+    private String fInfo;
+
+    /**
+     * Constructs a new completion proposal for a reference
+     *
+     * @param entry The reference entry
+     * @param replacementOffset Offset of where it is to be replaced
+     * @param replacementLength The length of the replacement
+     */
+    public ReferenceCompletionProposal(ReferenceEntry entry, int replacementOffset, int replacementLength) {
+        fentry = entry;
+        fReplacementOffset = replacementOffset;
+        fReplacementLength = replacementLength;
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.contentassist.ICompletionProposal#apply(org.eclipse.jface.text.IDocument)
+     */
+    public void apply(IDocument document) {
+        try {
+            document.replace(fReplacementOffset, fReplacementLength, fentry.key);
+        } catch (BadLocationException x) {
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.contentassist.ICompletionProposal#getSelection(org.eclipse.jface.text.IDocument)
+     */
+    public Point getSelection(IDocument document) {
+        return new Point(fReplacementOffset + fentry.key.length(), 0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.contentassist.ICompletionProposal#getAdditionalProposalInfo()
+     */
+    public String getAdditionalProposalInfo() {
+        if (fInfo == null && fentry.info != null) {
+            fInfo = fentry.info.length() > TexCompletionProcessor.assistLineLength ?
+                    TexCompletionProcessor.wrapString(fentry.info, TexCompletionProcessor.assistLineLength)
+                    : fentry.info;
+        }
+        return fInfo;
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.contentassist.ICompletionProposal#getDisplayString()
+     */
+    public String getDisplayString() {
+        return fentry.key;
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.contentassist.ICompletionProposal#getImage()
+     */
+    public Image getImage() {
+        return null;
+    }
+
+    /* (non-Javadoc)
+     * @see org.eclipse.jface.text.contentassist.ICompletionProposal#getContextInformation()
+     */
+    public IContextInformation getContextInformation() {
+        return null;
+    }
+}
@@ -10,14 +10,17 @@
 package net.sourceforge.texlipse.editor;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
-import net.sourceforge.texlipse.extension.BibProvider;
+import net.sourceforge.texlipse.extension.BibProviderRegistry;
 import net.sourceforge.texlipse.model.ReferenceEntry;
 import net.sourceforge.texlipse.model.ReferenceManager;
+import net.sourceforge.texlipse.model.ReferenceMatches;
 import net.sourceforge.texlipse.model.TexCommandEntry;
 import net.sourceforge.texlipse.model.TexDocumentModel;
 import net.sourceforge.texlipse.model.TexStyleCompletionManager;
@@ -26,12 +29,10 @@ import net.sourceforge.texlipse.templates.TexContextType;
 import net.sourceforge.texlipse.templates.TexTemplateCompletion;
 import net.sourceforge.texlipse.texparser.LatexParserUtils;
 
-import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.IConfigurationElement;
-import org.eclipse.core.runtime.Platform;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITextOperationTarget;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.contentassist.CompletionProposal;
 import org.eclipse.jface.text.contentassist.ContextInformation;
@@ -41,7 +42,9 @@ import org.eclipse.jface.text.contentassist.IContentAssistProcessor;
 import org.eclipse.jface.text.contentassist.IContextInformation;
 import org.eclipse.jface.text.contentassist.IContextInformationValidator;
 import org.eclipse.jface.text.source.ISourceViewer;
+import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.Point;
+import org.eclipse.swt.widgets.Display;
 import org.eclipse.ui.texteditor.HippieProposalProcessor;
 
 /**
@@ -64,6 +67,19 @@ public class TexCompletionProcessor implements IContentAssistProcessor {
 
 	public static final int assistLineLength = 60;
 
+	/**
+	 * The number of \cite and \ref proposals shown at first and the factor
+	 * by which the number grows when more proposals are requested
+	 */
+	private static final int PROPOSAL_LIMIT = 100;
+	private static final int PROPOSAL_LIMIT_GROWTH = 5;
+
+	/**
+	 * The cursor offset and the limit of the last request for more proposals
+	 */
+	private int moreOffset = -1;
+	private int moreLimit;
+
 	private final HippieProposalProcessor hippie = new HippieProposalProcessor();
 
 	/**
@@ -328,37 +344,35 @@ public class TexCompletionProcessor implements IContentAssistProcessor {
 			int replacementLength, String prefix) {
 
 		List<ICompletionProposal> resultAsList = new ArrayList<ICompletionProposal>();
-		List<ReferenceEntry> bibEntries = refManager.getCompletionsBib(prefix);
+		// entries whose key starts with the prefix first, then those
+		// containing it in the key, author, year or other fields
+		int limit = getProposalLimit(offset);
+		ReferenceMatches bibEntries = refManager.searchBib(prefix, limit);
 		//add the entries of the .bib file(s) to the results
 		if (bibEntries != null) {
 			for (int i = 0; i < bibEntries.size(); i++) {
-				ReferenceEntry bib = bibEntries.get(i);
-				String infoText = bib.info.length() > assistLineLength ? wrapString(
-						bib.info, assistLineLength)
-						: bib.info;
-						resultAsList.add(new CompletionProposal(bib.key, offset
-								- replacementLength, replacementLength, bib.key.length(),
-								null, bib.key, null, infoText));
+				resultAsList.add(new ReferenceCompletionProposal(bibEntries.get(i),
+						offset - replacementLength, replacementLength));
+			}
+			if (bibEntries.hasMore()) {
+				resultAsList.add(new MoreProposal(offset, limit));
 			}
 		}
-		//the extension points
-		IConfigurationElement[] configuration = Platform.getExtensionRegistry()
-				.getConfigurationElementsFor(
-						"net.sourceforge.texlipse.CiteAutocompleteExtension");
-		if (configuration.length > 0) {
-			for (IConfigurationElement elem : configuration) {
-				try {
-					//fetches the BibProvider and updates the result
-					BibProvider prov = (BibProvider) elem
-							.createExecutableExtension("class");
-					resultAsList = prov.getCompletions(offset, replacementLength,
-							prefix, refManager.getBibContainer());
-
-				} catch (CoreException e) {
-					// e.printStackTrace();
-					//log
+		//the proposals of the extension points come first
+		List<ICompletionProposal> provided = BibProviderRegistry.getInstance()
+				.getCompletions(offset, replacementLength, prefix,
+						refManager.getBibContainer());
+		if (provided.size() > 0) {
+			Set<String> providedKeys = new HashSet<String>();
+			for (ICompletionProposal proposal : provided) {
+				providedKeys.add(proposal.getDisplayString());
+			}
+			for (ICompletionProposal proposal : resultAsList) {
+				if (!providedKeys.contains(proposal.getDisplayString())) {
+					provided.add(proposal);
 				}
 			}
+			resultAsList = provided;
 		}
 
 		//if there are no entries, return null
@@ -386,24 +400,90 @@ public class TexCompletionProcessor implements IContentAssistProcessor {
 		if (refEntries == null)
 			return null;
 
-		ICompletionProposal[] result = new ICompletionProposal[refEntries
-				.size()];
+		int limit = getProposalLimit(offset);
+		int count = Math.min(refEntries.size(), limit);
+		ICompletionProposal[] result = new ICompletionProposal[count < refEntries
+				.size() ? count + 1 : count];
+
+		for (int i = 0; i < count; i++) {
+			result[i] = new ReferenceCompletionProposal(refEntries.get(i),
+					offset - replacementLength, replacementLength);
+		}
+		if (count < refEntries.size()) {
+			result[count] = new MoreProposal(offset, limit);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the maximum number of \cite or \ref proposals to compute.
+	 * If more proposals were requested at the given offset, the limit is
+	 * the one of that request, otherwise the default limit.
+	 * 
+	 * @param offset
+	 *            Current cursor offset
+	 * @return The maximum number of proposals
+	 */
+	private int getProposalLimit(int offset) {
+		if (offset == moreOffset) {
+			return moreLimit;
+		}
+		moreOffset = -1;
+		return PROPOSAL_LIMIT;
+	}
 
-		for (int i = 0; i < refEntries.size(); i++) {
+	/**
+	 * The last proposal of a capped list of \cite or \ref proposals.
+	 * Applying it opens the completions again with a greater limit.
+	 */
+	private final class MoreProposal implements ICompletionProposal {
+		private final int offset;
+		private final int limit;
+
+		/**
+		 * @param offset
+		 *            The cursor offset of the completion
+		 * @param limit
+		 *            The limit of the capped list
+		 */
+		MoreProposal(int offset, int limit) {
+			this.offset = offset;
+			this.limit = limit;
+		}
 
-			String infoText = null;
-			ReferenceEntry ref = refEntries.get(i);
+		public void apply(IDocument document) {
+			moreOffset = offset;
+			moreLimit = limit * PROPOSAL_LIMIT_GROWTH;
+			// the popup is open while the proposal is applied
+			Display.getCurrent().asyncExec(new Runnable() {
+				public void run() {
+					ITextOperationTarget target = (ITextOperationTarget) fviewer;
+					if (target.canDoOperation(ISourceViewer.CONTENTASSIST_PROPOSALS)) {
+						target.doOperation(ISourceViewer.CONTENTASSIST_PROPOSALS);
+					}
+				}
+			});
+		}
 
-			if (ref.info != null) {
-				infoText = (ref.info.length() > assistLineLength) ? wrapString(
-						ref.info, assistLineLength) : ref.info;
-			}
+		public Point getSelection(IDocument document) {
+			return new Point(offset, 0);
+		}
 
-			result[i] = new CompletionProposal(ref.key, offset
-					- replacementLength, replacementLength, ref.key.length(),
-					null, ref.key, null, infoText);
+		public String getAdditionalProposalInfo() {
+			return TexlipsePlugin.getResourceString("completionMoreMatchesInfo").replaceFirst("%1", "" + limit);
+		}
+
+		public String getDisplayString() {
+			return TexlipsePlugin.getResourceString("completionMoreMatches");
+		}
+
+		public Image getImage() {
+			return null;
+		}
+
+		public IContextInformation getContextInformation() {
+			return null;
 		}
-		return result;
 	}
 
 	/**
@@ -0,0 +1,184 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.extension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.model.ReferenceContainer;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IRegistryChangeEvent;
+import org.eclipse.core.runtime.IRegistryChangeListener;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+
+/**
+ * Registry of the <code>BibProvider</code>s contributed to the
+ * CiteAutocompleteExtension extension point.
+ *
+ * The providers are created once and created again only when the
+ * extensions change. The providers are asked for completions concurrently
+ * in background threads and a provider must answer within
+ * <code>TIME_BUDGET</code> milliseconds, otherwise its completions are
+ * left out, so a slow provider doesn't block the completion popup. Since
+ * the providers are not called in the UI thread, they must not access
+ * the widgets directly.
+ */
+public final class BibProviderRegistry {
+
+    private static final String EXTENSION_POINT = "CiteAutocompleteExtension";
+
+    /**
+     * The time in milliseconds the providers have for their completions
+     */
+    private static final long TIME_BUDGET = 500;
+
+    private static BibProviderRegistry instance;
+
+    private List<BibProvider> providers;
+    private ExecutorService executor;
+    private final IRegistryChangeListener listener;
+
+    private BibProviderRegistry() {
+        listener = new IRegistryChangeListener() {
+            public void registryChanged(IRegistryChangeEvent event) {
+                if (event.getExtensionDeltas(TexlipsePlugin.getPluginId(), EXTENSION_POINT).length > 0) {
+                    reset();
+                }
+            }
+        };
+        Platform.getExtensionRegistry().addRegistryChangeListener(listener,
+                TexlipsePlugin.getPluginId());
+    }
+
+    /**
+     * @return The shared registry
+     */
+    public static synchronized BibProviderRegistry getInstance() {
+        if (instance == null) {
+            instance = new BibProviderRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Stops listening to the extension changes and the threads of the
+     * providers. Called when the plugin is stopped.
+     */
+    public static synchronized void disposeInstance() {
+        if (instance != null) {
+            Platform.getExtensionRegistry().removeRegistryChangeListener(instance.listener);
+            synchronized (instance) {
+                if (instance.executor != null) {
+                    instance.executor.shutdownNow();
+                }
+            }
+            instance = null;
+        }
+    }
+
+    private synchronized void reset() {
+        providers = null;
+    }
+
+    /**
+     * @return The providers, which are created if needed
+     */
+    private synchronized List<BibProvider> getProviders() {
+        if (providers == null) {
+            providers = new ArrayList<BibProvider>();
+            IConfigurationElement[] configuration = Platform.getExtensionRegistry()
+                    .getConfigurationElementsFor(TexlipsePlugin.getPluginId() + "." + EXTENSION_POINT);
+            for (IConfigurationElement elem : configuration) {
+                try {
+                    providers.add((BibProvider) elem.createExecutableExtension("class"));
+                } catch (CoreException e) {
+                    TexlipsePlugin.log("Can't create the BibProvider of "
+                            + elem.getContributor().getName(), e);
+                }
+            }
+        }
+        return providers;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "TeXlipse cite completion");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Asks all providers for \cite completions. The completions of a
+     * provider which fails or doesn't answer in time are left out.
+     *
+     * @param offset The position of the insertion
+     * @param replacementLength The length of the string to replace
+     * @param prefix The prefix of the completion
+     * @param bibContainer The BibTeX entries of the document
+     * @return The completions of the providers in the order of the providers
+     */
+    public List<ICompletionProposal> getCompletions(final int offset, final int replacementLength,
+            final String prefix, final ReferenceContainer bibContainer) {
+        List<ICompletionProposal> result = new ArrayList<ICompletionProposal>();
+        List<BibProvider> provs = getProviders();
+        if (provs.isEmpty()) {
+            return result;
+        }
+
+        List<Future<List<ICompletionProposal>>> futures = new ArrayList<Future<List<ICompletionProposal>>>(provs.size());
+        ExecutorService exec = getExecutor();
+        for (final BibProvider prov : provs) {
+            futures.add(exec.submit(new Callable<List<ICompletionProposal>>() {
+                public List<ICompletionProposal> call() {
+                    return prov.getCompletions(offset, replacementLength, prefix, bibContainer);
+                }
+            }));
+        }
+
+        long deadline = System.currentTimeMillis() + TIME_BUDGET;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<ICompletionProposal>> future = futures.get(i);
+            try {
+                List<ICompletionProposal> proposals = future.get(
+                        Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                if (proposals != null) {
+                    result.addAll(proposals);
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+            } catch (ExecutionException e) {
+                TexlipsePlugin.log("BibProvider " + provs.get(i).getClass().getName() + " failed",
+                        e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return result;
+    }
+}
@@ -23,7 +23,8 @@ import org.eclipse.jface.text.Position;
 public abstract class AbstractEntry implements Comparable {
 
     /**
-     * The key (ie. the name) of the entry
+     * The key (ie. the name) of the entry, which is changed with
+     * <code>setKey</code>
      */
     public String key;
     /**
@@ -39,6 +40,11 @@ public abstract class AbstractEntry implements Comparable {
      */
     public String fileName;
 
+    /**
+     * The lower case key, computed when the key is set
+     */
+    private String lowerKey;
+
     /* (non-Javadoc)
      * @see java.lang.Comparable#compareTo(java.lang.Object)
      */
@@ -60,8 +66,26 @@ public abstract class AbstractEntry implements Comparable {
         this.position = new Position(docOffset, length);
     }
     
+    /**
+     * Sets the key of this entry and computes the lower case key.
+     * 
+     * @param key The key
+     */
+    public void setKey(String key) {
+        this.key = key;
+        this.lowerKey = key != null ? PartialRetriever.toLowerCase(key) : null;
+    }
+    
+    /**
+     * Returns the key of this entry. The lower case key is computed when
+     * the key is set, so the sorting and searching of the containers
+     * doesn't create new strings.
+     * 
+     * @param lowerCase If true, returns the key in lower case
+     * @return The key
+     */
     public String getkey(boolean lowerCase) {
-        if (lowerCase) return key.toLowerCase();
-        return key;
+        if (!lowerCase) return key;
+        return lowerKey;
     }
 }
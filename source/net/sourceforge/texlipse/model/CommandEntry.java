@@ -32,7 +32,7 @@ public final class CommandEntry extends AbstractEntry {
      * @param key Command name without the leading slash
      */
     public CommandEntry(String key) {
-        this.key = key;
+        setKey(key);
     }
 
     /**
@@ -44,7 +44,7 @@ public final class CommandEntry extends AbstractEntry {
      * @param info A descriptive text of the command
      */
     public CommandEntry(String key, String info, int args) {
-        this.key = key;
+        setKey(key);
         this.info = info;
         this.arguments = args;
     }
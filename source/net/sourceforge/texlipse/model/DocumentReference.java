@@ -30,7 +30,7 @@ public final class DocumentReference extends AbstractEntry {
      * @param length The length of the reference text
      */
     public DocumentReference(String key, int line, int pos, int length) {
-        this.key = key;
+        setKey(key);
         this.startLine = line;
         this.pos = pos;
         this.length = length;
@@ -0,0 +1,288 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
+
+/**
+ * Collects marker changes and applies them in a single workspace
+ * operation, so that listeners get one resource delta instead of one
+ * for each marker.
+ *
+ * A marker is only created if the resource doesn't already have an equal
+ * marker, i.e. one of the same type with the same attributes, and each
+ * marker is added only once. For the resources given to
+ * <code>replace</code>, the existing markers that are not added again
+ * are deleted, and the ones that are added again are left untouched.
+ */
+public class MarkerBatch {
+
+    /**
+     * Identifies a marker by its resource, type and attributes.
+     */
+    private static class Key {
+        private final IResource resource;
+        private final String type;
+        private final Map<String, Object> attributes;
+        private final int hash;
+
+        Key(IResource resource, String type, Map<String, Object> attributes) {
+            this.resource = resource;
+            this.type = type;
+            this.attributes = attributes;
+            this.hash = (resource.hashCode() * 31 + type.hashCode()) * 31 + attributes.hashCode();
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) obj;
+            return hash == k.hash && resource.equals(k.resource) && type.equals(k.type)
+                && attributes.equals(k.attributes);
+        }
+    }
+
+    /**
+     * A resource whose markers of a type are replaced.
+     */
+    private static class Scope {
+        private final IResource resource;
+        private final String type;
+        private final int depth;
+
+        Scope(IResource resource, String type, int depth) {
+            this.resource = resource;
+            this.type = type;
+            this.depth = depth;
+        }
+
+        public int hashCode() {
+            return resource.hashCode() * 31 + type.hashCode();
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Scope)) {
+                return false;
+            }
+            Scope s = (Scope) obj;
+            return resource.equals(s.resource) && type.equals(s.type) && depth == s.depth;
+        }
+    }
+
+    // the markers to add, in the order of adding
+    private final List<Key> additions;
+    private final List<Scope> scopes;
+    private final List<IMarker> deletions;
+    // the markers of the additions after the batch has been applied
+    private IMarker[] applied;
+
+    /**
+     * Creates a new empty batch.
+     */
+    public MarkerBatch() {
+        additions = new ArrayList<Key>();
+        scopes = new ArrayList<Scope>();
+        deletions = new ArrayList<IMarker>();
+    }
+
+    /**
+     * Adds a marker. Adding an equal marker again has no effect.
+     *
+     * @param resource The resource of the marker
+     * @param type The marker type
+     * @param attributes The attributes of the marker
+     */
+    public void add(IResource resource, String type, Map<String, ? extends Object> attributes) {
+        additions.add(new Key(resource, type, new HashMap<String, Object>(attributes)));
+    }
+
+    /**
+     * Replaces the markers of the given type on the resource with the
+     * ones added to this batch.
+     *
+     * @param resource The resource
+     * @param type The marker type, subtypes are not included
+     * @param depth The depth of the resources whose markers are replaced,
+     *  as in <code>IResource.findMarkers</code>
+     */
+    public void replace(IResource resource, String type, int depth) {
+        scopes.add(new Scope(resource, type, depth));
+    }
+
+    /**
+     * Deletes a marker.
+     *
+     * @param marker The marker to delete
+     */
+    public void delete(IMarker marker) {
+        deletions.add(marker);
+    }
+
+    /**
+     * @return true, if the batch does nothing
+     */
+    public boolean isEmpty() {
+        return additions.isEmpty() && scopes.isEmpty() && deletions.isEmpty();
+    }
+
+    /**
+     * Applies the changes in a single workspace operation. A batch
+     * should be applied only once.
+     *
+     * @return The markers added with <code>add</code>, in the order they
+     *  were added. An existing marker is returned if it was equal to an
+     *  added one.
+     * @throws CoreException If the markers can't be read or changed
+     */
+    public IMarker[] apply() throws CoreException {
+        return apply(null);
+    }
+
+    /**
+     * Applies the changes in a single workspace operation, unless they
+     * are the same as the changes of the given batch and the markers
+     * that batch added still exist. The workspace is not touched at all
+     * in that case. A batch should be applied only once.
+     *
+     * @param previous The batch applied previously for the same
+     *  resources, or null
+     * @return The markers added with <code>add</code>, in the order they
+     *  were added. An existing marker is returned if it was equal to an
+     *  added one.
+     * @throws CoreException If the markers can't be read or changed
+     */
+    public IMarker[] apply(MarkerBatch previous) throws CoreException {
+        if (previous != null && previous.applied != null && additions.equals(previous.additions)
+                && scopes.equals(previous.scopes) && deletions.isEmpty()
+                && previous.deletions.isEmpty() && exist(previous.applied)) {
+            applied = previous.applied;
+            return applied.clone();
+        }
+        final IMarker[] result = new IMarker[additions.size()];
+        if (isEmpty()) {
+            applied = result;
+            return result.clone();
+        }
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        ISchedulingRule rule = null;
+        Set<IResource> resources = new HashSet<IResource>();
+        for (Key key : additions) {
+            resources.add(key.resource);
+        }
+        for (Scope scope : scopes) {
+            resources.add(scope.resource);
+        }
+        for (IMarker marker : deletions) {
+            resources.add(marker.getResource());
+        }
+        for (IResource resource : resources) {
+            rule = MultiRule.combine(rule, workspace.getRuleFactory().markerRule(resource));
+        }
+
+        workspace.run(new IWorkspaceRunnable() {
+            public void run(IProgressMonitor monitor) throws CoreException {
+                applyChanges(result);
+            }
+        }, rule, IWorkspace.AVOID_UPDATE, null);
+
+        applied = result;
+        return result.clone();
+    }
+
+    private static boolean exist(IMarker[] markers) {
+        for (IMarker marker : markers) {
+            if (!marker.exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void applyChanges(IMarker[] result) throws CoreException {
+        // the existing markers of the resources, fetched once per
+        // resource and type
+        Map<Key, IMarker> existing = new HashMap<Key, IMarker>();
+        Set<Key> fetched = new HashSet<Key>();
+        Map<String, Object> none = Collections.emptyMap();
+        List<IMarker> replaced = new ArrayList<IMarker>();
+        for (Scope scope : scopes) {
+            IMarker[] markers = scope.resource.findMarkers(scope.type, false, scope.depth);
+            for (IMarker marker : markers) {
+                existing.put(createKey(marker, scope.type), marker);
+                replaced.add(marker);
+            }
+        }
+        for (Key key : additions) {
+            if (fetched.add(new Key(key.resource, key.type, none))) {
+                IMarker[] markers = key.resource.findMarkers(key.type, false, IResource.DEPTH_ZERO);
+                for (IMarker marker : markers) {
+                    existing.put(createKey(marker, key.type), marker);
+                }
+            }
+        }
+
+        Map<Key, IMarker> created = new LinkedHashMap<Key, IMarker>();
+        Set<IMarker> kept = new HashSet<IMarker>();
+        for (int i = 0; i < result.length; i++) {
+            Key key = additions.get(i);
+            IMarker marker = created.get(key);
+            if (marker == null) {
+                marker = existing.get(key);
+                if (marker == null) {
+                    marker = key.resource.createMarker(key.type);
+                    marker.setAttributes(key.attributes);
+                } else {
+                    kept.add(marker);
+                }
+                created.put(key, marker);
+            }
+            result[i] = marker;
+        }
+
+        Set<IMarker> obsolete = new LinkedHashSet<IMarker>(replaced);
+        obsolete.addAll(deletions);
+        obsolete.removeAll(kept);
+        if (!obsolete.isEmpty()) {
+            ResourcesPlugin.getWorkspace().deleteMarkers(obsolete.toArray(new IMarker[obsolete.size()]));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Key createKey(IMarker marker, String type) throws CoreException {
+        Map<String, Object> attributes = marker.getAttributes();
+        if (attributes == null) {
+            attributes = new HashMap<String, Object>();
+        }
+        return new Key(marker.getResource(), type, attributes);
+    }
+}
@@ -21,7 +21,6 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.ui.texteditor.ITextEditor;
-import org.eclipse.ui.texteditor.MarkerUtilities;
 
 
 /**
@@ -33,7 +32,11 @@ public class MarkerHandler {
 
     private static MarkerHandler theInstance;
     
+    // the running marker updates by the resources
+    private final Map<IResource, MarkerBatch> updates;
+    
     private MarkerHandler() {
+        updates = new HashMap<IResource, MarkerBatch>();
     }
 
     /**
@@ -48,6 +51,107 @@ public class MarkerHandler {
         return theInstance;
     }
 
+    /**
+     * Starts updating the markers of the file in the editor. Until
+     * <code>endUpdate</code> is called, the markers created for the file
+     * are collected instead of created.
+     * 
+     * @param editor The editor of the file
+     * @param replace true, if the problem and task markers of the file
+     *  which are not created again are deleted at the end of the update
+     */
+    public void beginUpdate(ITextEditor editor, boolean replace) {
+        IResource resource = editor.getEditorInput().getAdapter(IResource.class);
+        if (resource == null) return;
+        MarkerBatch batch = new MarkerBatch();
+        if (replace) {
+            batch.replace(resource, IMarker.PROBLEM, IResource.DEPTH_INFINITE);
+            batch.replace(resource, IMarker.TASK, IResource.DEPTH_INFINITE);
+        }
+        synchronized (updates) {
+            updates.put(resource, batch);
+        }
+    }
+    
+    /**
+     * Ends the update of the markers of the file in the editor. Only
+     * the markers that differ from the existing ones are created or
+     * deleted, and if the markers are the same as in the previous
+     * update, nothing is done.
+     * 
+     * @param editor The editor of the file
+     * @param previous The result of the previous update, or null
+     * @return The result of this update, which is given to the next
+     *  update, or the previous one if there was no update
+     */
+    public MarkerBatch endUpdate(ITextEditor editor, MarkerBatch previous) {
+        IResource resource = editor.getEditorInput().getAdapter(IResource.class);
+        if (resource == null) return previous;
+        MarkerBatch batch;
+        synchronized (updates) {
+            batch = updates.remove(resource);
+        }
+        if (batch == null) {
+            return previous;
+        }
+        try {
+            batch.apply(previous);
+            return batch;
+        } catch (CoreException ce) {
+            TexlipsePlugin.log("Creating marker", ce);
+            return null;
+        }
+    }
+    
+    /**
+     * Cancels the update of the markers of the file in the editor.
+     * The collected markers are discarded and the existing markers
+     * are left as they are.
+     * 
+     * @param editor The editor of the file
+     */
+    public void cancelUpdate(ITextEditor editor) {
+        IResource resource = editor.getEditorInput().getAdapter(IResource.class);
+        if (resource == null) return;
+        synchronized (updates) {
+            updates.remove(resource);
+        }
+    }
+    
+    /**
+     * Returns the batch to add the markers of the resource to.
+     * 
+     * @param resource The resource
+     * @return The batch of the running update of the resource, or a new
+     *  batch which must be applied with <code>applyBatch</code>
+     */
+    private MarkerBatch getBatch(IResource resource) {
+        synchronized (updates) {
+            MarkerBatch batch = updates.get(resource);
+            return batch != null ? batch : new MarkerBatch();
+        }
+    }
+    
+    /**
+     * Applies the marker changes of the batch, unless it belongs to a
+     * running update.
+     * 
+     * @param resource The resource of the markers
+     * @param batch The changes
+     */
+    private void applyBatch(IResource resource, MarkerBatch batch) {
+        synchronized (updates) {
+            if (updates.get(resource) == batch) {
+                return;
+            }
+        }
+        try {
+            batch.apply();
+        } catch (CoreException ce) {
+            TexlipsePlugin.log("Creating marker", ce);
+        }
+    }
+
     /**
      * Create error markers from the given <code>ParseErrorMessage</code>s.
      * 
@@ -81,6 +185,7 @@ public class MarkerHandler {
         //IResource resource = ((FileEditorInput)editor.getEditorInput()).getFile();
         IDocument document = editor.getDocumentProvider().getDocument(editor.getEditorInput());
         
+        MarkerBatch batch = getBatch(resource);
         for (ParseErrorMessage msg : markers) {
             try {
                 int beginOffset = document.getLineOffset(msg.getLine() - 1) + msg.getPos();
@@ -98,15 +203,14 @@ public class MarkerHandler {
                 if (IMarker.TASK == markerType)
                     map.put(IMarker.PRIORITY, Integer.valueOf(msg.getSeverity()));
                 
-                MarkerUtilities.createMarker(resource, map, markerType);
-            } catch (CoreException ce) {
-                TexlipsePlugin.log("Creating marker", ce);
+                batch.add(resource, markerType, map);
             } catch (BadLocationException ble) {
                 TexlipsePlugin.log("Creating marker", ble);
             }
         }
+        applyBatch(resource, batch);
     }
-
+    
     /**
      * Creates warning markers for undefined references. 
      * 
@@ -119,6 +223,7 @@ public class MarkerHandler {
         if (resource == null) return;
         IDocument document = editor.getDocumentProvider().getDocument(editor.getEditorInput());
         
+        MarkerBatch batch = getBatch(resource);
         for (DocumentReference msg : errors) {
             try {
                 int beginOffset = document.getLineOffset(msg.getLine() - 1) + msg.getPos();
@@ -130,13 +235,12 @@ public class MarkerHandler {
                 map.put(IMarker.MESSAGE, "Key " + msg.getKey() + " is undefined");
                 map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_WARNING));
                 
-                MarkerUtilities.createMarker(resource, map, IMarker.PROBLEM);
-            } catch (CoreException ce) {
-                TexlipsePlugin.log("Creating marker", ce);
+                batch.add(resource, IMarker.PROBLEM, map);
             } catch (BadLocationException ble) {
                 TexlipsePlugin.log("Creating marker", ble);
             }
         }
+        applyBatch(resource, batch);
     }
     
     /**
@@ -149,15 +253,13 @@ public class MarkerHandler {
         IResource resource = (IResource) editor.getEditorInput().getAdapter(IResource.class);
         if (resource == null) return;
         //IDocument document = editor.getDocumentProvider().getDocument(editor.getEditorInput());
-        try {
-            Map<String, ? super Object> map = new HashMap<String, Object>();
-            map.put(IMarker.MESSAGE, error);
-            map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
-            
-            MarkerUtilities.createMarker(resource, map, IMarker.PROBLEM);
-        } catch (CoreException ce) {
-            TexlipsePlugin.log("Creating marker", ce);
-        }
+        Map<String, ? super Object> map = new HashMap<String, Object>();
+        map.put(IMarker.MESSAGE, error);
+        map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
+        
+        MarkerBatch batch = getBatch(resource);
+        batch.add(resource, IMarker.PROBLEM, map);
+        applyBatch(resource, batch);
     }
 
     /**
@@ -220,17 +322,15 @@ public class MarkerHandler {
      * @param lineNumber The line number to create the error on
      */
     public void createErrorMarker(IResource resource, String message, int lineNumber) {
-        try {
-            Map<String, ? super Object> map = new HashMap<String, Object>();
-            map.put(IMarker.LINE_NUMBER, Integer.valueOf(lineNumber));
-            map.put(IMarker.MESSAGE, message);
-            
-            map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
-            
-            MarkerUtilities.createMarker(resource, map, IMarker.PROBLEM);
-        } catch (CoreException ce) {
-            TexlipsePlugin.log("Creating marker", ce);
-        }
+        Map<String, ? super Object> map = new HashMap<String, Object>();
+        map.put(IMarker.LINE_NUMBER, Integer.valueOf(lineNumber));
+        map.put(IMarker.MESSAGE, message);
+        
+        map.put(IMarker.SEVERITY, Integer.valueOf(IMarker.SEVERITY_ERROR));
+        
+        MarkerBatch batch = getBatch(resource);
+        batch.add(resource, IMarker.PROBLEM, map);
+        applyBatch(resource, batch);
     }
     
 }
@@ -39,6 +39,19 @@ public class ParseErrorMessage {
         this.severity = severity;
     }
     
+    /**
+     * Returns a copy of this message moved by the given number of lines.
+     * 
+     * @param lineDelta The number of lines to move the message
+     * @return The moved message
+     */
+    public ParseErrorMessage moveLines(int lineDelta) {
+        if (lineDelta == 0) {
+            return this;
+        }
+        return new ParseErrorMessage(line + lineDelta, pos, length, msg, severity);
+    }
+    
     /**
      * @return Returns the length.
      */
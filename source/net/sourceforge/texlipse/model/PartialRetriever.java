@@ -25,6 +25,74 @@ import java.util.List;
  */
 public abstract class PartialRetriever {
     
+    /**
+     * Lower cases the given string character by character. Unlike
+     * <code>String.toLowerCase()</code> this doesn't depend on the locale,
+     * never changes the length of the string and returns the string itself
+     * if it has no upper case characters.
+     * 
+     * @param s The string to lower case
+     * @return The string in lower case
+     */
+    public static String toLowerCase(String s) {
+        int length = s.length();
+        int i = 0;
+        while (i < length && Character.toLowerCase(s.charAt(i)) == s.charAt(i)) i++;
+        if (i == length) return s;
+        
+        char[] chars = s.toCharArray();
+        for (; i < length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Compares a lower case key to the given string as if the string was
+     * lower cased with <code>toLowerCase(String)</code>, without creating
+     * the lower case string.
+     * 
+     * @param lowerKey A lower case key
+     * @param s The string to compare to
+     * @return A negative number, zero or a positive number if the key is
+     * less than, equal to or greater than the lower cased string
+     */
+    public static int compareLowerCase(String lowerKey, String s) {
+        int length = Math.min(lowerKey.length(), s.length());
+        for (int i = 0; i < length; i++) {
+            int c = lowerKey.charAt(i) - Character.toLowerCase(s.charAt(i));
+            if (c != 0) return c;
+        }
+        return lowerKey.length() - s.length();
+    }
+
+    /**
+     * Tests whether a lower case key starts with the given prefix ignoring
+     * the case of the prefix.
+     * 
+     * @param lowerKey A lower case key
+     * @param prefix The prefix
+     * @return True if the key starts with the lower cased prefix
+     */
+    public static boolean startsWithLowerCase(String lowerKey, String prefix) {
+        int length = prefix.length();
+        if (lowerKey.length() < length) return false;
+        for (int i = 0; i < length; i++) {
+            if (lowerKey.charAt(i) != Character.toLowerCase(prefix.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int compare(AbstractEntry entry, String s, boolean lowerCase) {
+        if (lowerCase) return compareLowerCase(entry.getkey(true), s);
+        return entry.key.compareTo(s);
+    }
+
+    private static boolean startsWith(AbstractEntry entry, String prefix, boolean lowerCase) {
+        if (lowerCase) return startsWithLowerCase(entry.getkey(true), prefix);
+        return entry.key.startsWith(prefix);
+    }
+
     /**
      * Returns (if exist) the position of the entry with the given name in 
      * the array 
@@ -35,36 +103,80 @@ public abstract class PartialRetriever {
      */
     public static int getEntry(String entryname, List<? extends AbstractEntry> entries, boolean lowerCase){
         if (entries == null || entries.size() == 0) return -1;
-        String lEntryname = entryname.toLowerCase();
         
+        // find the first entry which is not less than the name
         int start = 0;
         int end = entries.size();
-        while (end - start > 1 && !entries.get((start + end)/2).getkey(lowerCase).equals(lEntryname)){
-            int c = entries.get((start + end)/2).getkey(lowerCase).compareTo(lEntryname);
-            if (c < 0) start = (start + end)/2;
-            else end = (start + end)/2;
+        while (start < end) {
+            int m = (start + end) >>> 1;
+            if (compare(entries.get(m), entryname, lowerCase) < 0) start = m + 1;
+            else end = m;
         }
         
-        if (lowerCase) {
-            //This case is a bit more complicated since there could be different entries with the
-            //same lower case letters
-            int m = (start + end)/2;
-            if (!entries.get(m).getkey(lowerCase).equals(lEntryname)) return -1;
-            
-            m--;
-            while (m >= 0 && entries.get(m).getkey(lowerCase).equals(lEntryname)) m--;
-            m++;
-            
-            while (m < entries.size() && entries.get(m).getkey(lowerCase).equals(lEntryname)) {
-                if (entries.get(m).key.equals(entryname)) return m;
-                m++;
-            }
-            return -1;
+        //There could be different entries with the same lower case letters
+        for (int m = start; m < entries.size() && compare(entries.get(m), entryname, lowerCase) == 0; m++) {
+            if (entries.get(m).key.equals(entryname)) return m;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns (if exist) the position of the entry with the given name
+     * in a list sorted case insensitively, using the lower case keys
+     * of the entries.
+     * 
+     * @param entryname Name of the wanted entry
+     * @param lowerKeys The lower case keys of the entries in the same order
+     * as the entries
+     * @param entries The entries sorted by their lower case keys
+     * @return The position inside the list or -1 if the entry was not found
+     */
+    public static int getEntry(String entryname, String[] lowerKeys, List<? extends AbstractEntry> entries) {
+        int start = lowerBound(entryname, lowerKeys);
+        for (int m = start; m < lowerKeys.length && compareLowerCase(lowerKeys[m], entryname) == 0; m++) {
+            if (entries.get(m).key.equals(entryname)) return m;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index of the first key which is not less than the lower
+     * cased string
+     */
+    private static int lowerBound(String s, String[] lowerKeys) {
+        int start = 0;
+        int end = lowerKeys.length;
+        while (start < end) {
+            int m = (start + end) >>> 1;
+            if (compareLowerCase(lowerKeys[m], s) < 0) start = m + 1;
+            else end = m;
+        }
+        return start;
+    }
+
+    /**
+     * Searches the given lower case keys for all keys which start with the
+     * given string ignoring case.
+     * 
+     * @param start The start of the searchable string
+     * @param lowerKeys The sorted lower case keys
+     * @return A two-element array with the lower (inclusive) and upper
+     * (exclusive) bounds or {-1,-1} if no matching keys were found.
+     */
+    protected int[] getCompletionsBin(String start, String[] lowerKeys) {
+        int left = lowerBound(start, lowerKeys);
+        if (left == lowerKeys.length || !startsWithLowerCase(lowerKeys[left], start)) {
+            return new int[] {-1, -1};
         }
-        else {
-            if (entries.get((start + end)/2).getkey(lowerCase).equals(lEntryname)) return (start + end)/2;
-            else return -1;
+        // the keys with the prefix are consecutive
+        int right = lowerKeys.length;
+        int l = left + 1;
+        while (l < right) {
+            int m = (l + right) >>> 1;
+            if (startsWithLowerCase(lowerKeys[m], start)) l = m + 1;
+            else right = m;
         }
+        return new int[] {left, right};
     }
 
     /**
@@ -109,14 +221,13 @@ public abstract class PartialRetriever {
         int left = initBounds[0], right = initBounds[1] - 1;
         int middle = right/2;
         if (left > right) return bounds;
-        if (lowerCase) start = start.toLowerCase();
         
-        if (entries.get(left).getkey(lowerCase).startsWith(start))
+        if (startsWith(entries.get(left), start, lowerCase))
             right = middle = left;
 
         // get upper bound (inclusive)
         while (left < middle) {
-            if (entries.get(middle).getkey(lowerCase).compareTo(start) >= 0) {
+            if (compare(entries.get(middle), start, lowerCase) >= 0) {
                 right = middle;
                 middle = (left + middle)/2;
             } else {
@@ -124,7 +235,7 @@ public abstract class PartialRetriever {
                 middle = (middle + right)/2;
             }
         }
-        if (!entries.get(right).getkey(lowerCase).startsWith(start))
+        if (!startsWith(entries.get(right), start, lowerCase))
             return bounds;
 
         bounds[0] = right;
@@ -133,13 +244,13 @@ public abstract class PartialRetriever {
         left = right;
         right = initBounds[1] - 1;
         
-        if (entries.get(right).getkey(lowerCase).startsWith(start)) {
+        if (startsWith(entries.get(right), start, lowerCase)) {
             bounds[1] = right + 1;
             return bounds;
         }
         middle = (left + right)/2;
         while (left < middle) {
-            if (entries.get(middle).getkey(lowerCase).startsWith(start)) {
+            if (startsWith(entries.get(middle), start, lowerCase)) {
                 left = middle;
                 middle = (right + middle)/2;
             } else {
@@ -0,0 +1,385 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.properties.TexlipseProperties;
+import net.sourceforge.texlipse.texparser.LatexRefExtractingParser;
+
+import org.eclipse.core.resources.IProject;
+
+/**
+ * Persistent index of the labels, commands and BibTeX files of the LaTeX
+ * files of a project, so that the files which haven't changed need not be
+ * parsed again when Eclipse is restarted. The data of a file is valid as
+ * long as the modification time and the size of the file stay the same.
+ * The BibTeX entries are not indexed, they are shared by the projects
+ * through <code>BibCache</code>.
+ *
+ * The index is stored in a binary file in the plugin state location.
+ *
+ * The indexed entries are never handed out, the users get copies of them,
+ * since the reference containers set the file names of the entries.
+ */
+public final class ProjectIndex {
+
+    private static final int MAGIC = 0x54584958;
+    private static final int VERSION = 2;
+    private static final String INDEX_DIR = "index";
+
+    /**
+     * The data extracted from a LaTeX file.
+     */
+    public static final class TexFile {
+        public boolean fatalErrors;
+        public List<ReferenceEntry> labels;
+        public List<TexCommandEntry> commands;
+        public String[] bibs;
+        public String bibstyle;
+        public String preamble;
+        public boolean biblatexMode;
+        public String biblatexBackend;
+    }
+
+    /**
+     * An indexed file with its modification time and size.
+     */
+    private static final class Record {
+        final long modified;
+        final long size;
+        final TexFile tex;
+
+        Record(long modified, long size, TexFile tex) {
+            this.modified = modified;
+            this.size = size;
+            this.tex = tex;
+        }
+    }
+
+    private final File indexFile;
+    private final Map<String, Record> records;
+    private final Set<String> used;
+    private boolean dirty;
+
+    private ProjectIndex(File indexFile) {
+        this.indexFile = indexFile;
+        this.records = new HashMap<String, Record>();
+        this.used = new HashSet<String>();
+    }
+
+    /**
+     * Returns the index of the given project, loading it from the disk
+     * the first time the index is needed.
+     *
+     * @param project The project
+     * @return The index of the project
+     */
+    public static synchronized ProjectIndex getIndex(IProject project) {
+        ProjectIndex index = (ProjectIndex) TexlipseProperties.getSessionProperty(project,
+                TexlipseProperties.SESSION_PROJECT_INDEX);
+        if (index == null) {
+            File dir = TexlipsePlugin.getDefault().getStateLocation().append(INDEX_DIR).toFile();
+            index = new ProjectIndex(new File(dir, project.getName() + ".idx"));
+            index.load();
+            TexlipseProperties.setSessionProperty(project,
+                    TexlipseProperties.SESSION_PROJECT_INDEX, index);
+        }
+        return index;
+    }
+
+    private Record getRecord(File file) {
+        String path = file.getAbsolutePath();
+        Record r = records.get(path);
+        if (r != null && (r.modified != file.lastModified() || r.size != file.length())) {
+            records.remove(path);
+            dirty = true;
+            return null;
+        }
+        if (r != null) {
+            used.add(path);
+        }
+        return r;
+    }
+
+    private void putRecord(File file, Record r) {
+        String path = file.getAbsolutePath();
+        records.put(path, r);
+        used.add(path);
+        dirty = true;
+    }
+
+    /**
+     * @param file The LaTeX file
+     * @return The indexed data of the file or null if the file is not
+     * indexed or it has changed
+     */
+    public synchronized TexFile getTexFile(File file) {
+        Record r = getRecord(file);
+        return r != null ? copy(r.tex) : null;
+    }
+
+    /**
+     * Stores the data of a parsed LaTeX file into the index.
+     *
+     * @param file The LaTeX file
+     * @param lrep The parser the file was parsed with
+     * @return A copy of the data stored for the file
+     */
+    public synchronized TexFile putTexFile(File file, LatexRefExtractingParser lrep) {
+        TexFile tex = new TexFile();
+        tex.fatalErrors = lrep.isFatalErrors();
+        if (!tex.fatalErrors) {
+            tex.labels = lrep.getLabels();
+            tex.commands = lrep.getCommands();
+            tex.bibs = lrep.getBibs();
+            tex.bibstyle = lrep.getBibstyle();
+            tex.preamble = lrep.getPreamble();
+            tex.biblatexMode = lrep.isBiblatexMode();
+            tex.biblatexBackend = lrep.getBiblatexBackend();
+        }
+        putRecord(file, new Record(file.lastModified(), file.length(), tex));
+        return copy(tex);
+    }
+
+    private static TexFile copy(TexFile tex) {
+        TexFile copy = new TexFile();
+        copy.fatalErrors = tex.fatalErrors;
+        copy.labels = copyReferences(tex.labels);
+        copy.commands = copyCommands(tex.commands);
+        copy.bibs = tex.bibs != null ? tex.bibs.clone() : null;
+        copy.bibstyle = tex.bibstyle;
+        copy.preamble = tex.preamble;
+        copy.biblatexMode = tex.biblatexMode;
+        copy.biblatexBackend = tex.biblatexBackend;
+        return copy;
+    }
+
+    private static List<ReferenceEntry> copyReferences(List<ReferenceEntry> list) {
+        if (list == null) {
+            return null;
+        }
+        List<ReferenceEntry> copies = new ArrayList<ReferenceEntry>(list.size());
+        for (ReferenceEntry re : list) {
+            copies.add((ReferenceEntry) re.copy());
+        }
+        return copies;
+    }
+
+    private static List<TexCommandEntry> copyCommands(List<TexCommandEntry> list) {
+        if (list == null) {
+            return null;
+        }
+        List<TexCommandEntry> copies = new ArrayList<TexCommandEntry>(list.size());
+        for (TexCommandEntry tce : list) {
+            TexCommandEntry copy = new TexCommandEntry(tce);
+            copy.startLine = tce.startLine;
+            copy.fileName = tce.fileName;
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    /**
+     * Drops the files which have not been looked up or stored since the
+     * index was loaded.
+     */
+    public synchronized void removeUnused() {
+        if (records.keySet().retainAll(used)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the index to the disk if it has changed.
+     */
+    public synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        try {
+            indexFile.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(records.size());
+                for (Map.Entry<String, Record> e : records.entrySet()) {
+                    Record r = e.getValue();
+                    writeString(out, e.getKey());
+                    out.writeLong(r.modified);
+                    out.writeLong(r.size);
+                    writeTexFile(out, r.tex);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(indexFile)) {
+                indexFile.delete();
+                tmpFile.renameTo(indexFile);
+            }
+            dirty = false;
+        } catch (IOException e) {
+            TexlipsePlugin.log("Unable to write the project index " + indexFile, e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Reads the index from the disk. A missing, old or damaged index
+     * file gives an empty index.
+     */
+    private void load() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(indexFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = readString(in);
+                    long modified = in.readLong();
+                    long size = in.readLong();
+                    records.put(path, new Record(modified, size, readTexFile(in)));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            records.clear();
+        }
+    }
+
+    private static void writeTexFile(DataOutputStream out, TexFile tex) throws IOException {
+        out.writeBoolean(tex.fatalErrors);
+        if (tex.fatalErrors) {
+            return;
+        }
+        out.writeInt(tex.labels.size());
+        for (ReferenceEntry re : tex.labels) {
+            writeString(out, re.key);
+            writeString(out, re.info);
+            out.writeInt(re.startLine);
+            if (re.position != null) {
+                out.writeInt(re.position.getOffset());
+                out.writeInt(re.position.getLength());
+            } else {
+                out.writeInt(-1);
+                out.writeInt(0);
+            }
+        }
+        out.writeInt(tex.commands.size());
+        for (TexCommandEntry ce : tex.commands) {
+            writeString(out, ce.key);
+            writeString(out, ce.info);
+            out.writeInt(ce.arguments);
+            out.writeInt(ce.context);
+            out.writeInt(ce.startLine);
+            out.writeInt(ce.parameter.length);
+            for (int p : ce.parameter) {
+                out.writeInt(p);
+            }
+        }
+        out.writeInt(tex.bibs.length);
+        for (String bib : tex.bibs) {
+            writeString(out, bib);
+        }
+        writeString(out, tex.bibstyle);
+        writeString(out, tex.preamble);
+        out.writeBoolean(tex.biblatexMode);
+        writeString(out, tex.biblatexBackend);
+    }
+
+    private static TexFile readTexFile(DataInputStream in) throws IOException {
+        TexFile tex = new TexFile();
+        tex.fatalErrors = in.readBoolean();
+        if (tex.fatalErrors) {
+            return tex;
+        }
+        int count = in.readInt();
+        tex.labels = new ArrayList<ReferenceEntry>(count);
+        for (int i = 0; i < count; i++) {
+            ReferenceEntry re = new ReferenceEntry(readString(in), readString(in));
+            re.startLine = in.readInt();
+            int offset = in.readInt();
+            int length = in.readInt();
+            if (offset >= 0) {
+                re.setPosition(offset, length);
+            }
+            tex.labels.add(re);
+        }
+        count = in.readInt();
+        tex.commands = new ArrayList<TexCommandEntry>(count);
+        for (int i = 0; i < count; i++) {
+            String key = readString(in);
+            String info = readString(in);
+            int arguments = in.readInt();
+            int context = in.readInt();
+            int startLine = in.readInt();
+            int[] parameter = new int[in.readInt()];
+            for (int j = 0; j < parameter.length; j++) {
+                parameter[j] = in.readInt();
+            }
+            TexCommandEntry ce = new TexCommandEntry(key, info, arguments, parameter, context);
+            ce.startLine = startLine;
+            tex.commands.add(ce);
+        }
+        tex.bibs = new String[in.readInt()];
+        for (int i = 0; i < tex.bibs.length; i++) {
+            tex.bibs[i] = readString(in);
+        }
+        tex.bibstyle = readString(in);
+        tex.preamble = readString(in);
+        tex.biblatexMode = in.readBoolean();
+        tex.biblatexBackend = readString(in);
+        return tex;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
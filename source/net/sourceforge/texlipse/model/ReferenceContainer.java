@@ -9,7 +9,7 @@
  */
 package net.sourceforge.texlipse.model;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -21,23 +21,65 @@ import java.util.Map;
 /**
  * Container for referencing data (BibTeX and labels.) Holds the reference
  * lists of each file as well as a (case insensitive) sorted array of all references, so that
- * not all files need to be reparsed when the data changes.
+ * not all files need to be reparsed when the data changes. The lower case keys of the
+ * sorted references are kept in a parallel array, so that the lookups don't create strings.
+ * 
+ * The sorted references, their keys and the search index are published together as an
+ * immutable <code>SortedReferences</code>, so that the completions can read them without
+ * locking while the container is organized in another thread.
  * 
  * @author Oskar Ojala
  * @author Boris von Loesch
  */
 public class ReferenceContainer {
 
+    /**
+     * The sorted references of a container and their lower case keys in
+     * the same order. Doesn't change after it has been created, except
+     * that the search index is built when it is needed the first time.
+     */
+    public static final class SortedReferences {
+        /**
+         * The references alphabetically sorted, case insensitively
+         */
+        public final List<ReferenceEntry> references;
+        /**
+         * The lower case keys of the references
+         */
+        public final String[] keys;
+        private ReferenceSearchIndex searchIndex;
+
+        SortedReferences(ReferenceEntry[] references, String[] keys) {
+            this.references = Collections.unmodifiableList(Arrays.asList(references));
+            this.keys = keys;
+        }
+
+        synchronized ReferenceSearchIndex getSearchIndex() {
+            if (searchIndex == null)
+                searchIndex = new ReferenceSearchIndex(references, keys);
+            return searchIndex;
+        }
+    }
+
     private Map<String, List<ReferenceEntry>> referenceHash;
-    private List<ReferenceEntry> sortedReferences;
+    private volatile SortedReferences sorted;
     private int size;
+
+    /**
+     * Sorts the entries case insensitively
+     */
+    private static final Comparator<ReferenceEntry> LOWER_CASE_ORDER = new Comparator<ReferenceEntry>() {
+        public int compare(ReferenceEntry o1, ReferenceEntry o2) {
+            return o1.getkey(true).compareTo(o2.getkey(true));
+        }
+    };
     
     /**
      * Creates a new reference container and initializes its datastructures.
      */
     public ReferenceContainer() {
         referenceHash = new HashMap<String, List<ReferenceEntry>>(4);
-        sortedReferences = null;
+        sorted = null;
         size = 0;
     }
     
@@ -96,32 +138,28 @@ public class ReferenceContainer {
 
     /**
      * Organizes the data from the reference hashes to the sorted array
-     * <code>sortedReferences</code>.
+     * <code>sorted</code>.
      */
     public void organize() {
-        if (referenceHash.size() == 0) {
-            sortedReferences = new ArrayList<ReferenceEntry>(0);
-        	return;
+        int count = 0;
+        for (List<ReferenceEntry> refList : referenceHash.values()) {
+            count += refList.size();
         }
-        
-        List<ReferenceEntry> allRefs = new ArrayList<ReferenceEntry>(size);
-        if (referenceHash.size() > 1) {
-            for (Iterator<List<ReferenceEntry>> iter = referenceHash.values().iterator(); iter.hasNext();) {
-                List<ReferenceEntry> refList = iter.next();
-                allRefs.addAll(refList);
+        ReferenceEntry[] allRefs = new ReferenceEntry[count];
+        int i = 0;
+        for (List<ReferenceEntry> refList : referenceHash.values()) {
+            for (ReferenceEntry r : refList) {
+                allRefs[i++] = r;
             }
-        } else if (referenceHash.size() == 1) {
-            Iterator<List<ReferenceEntry>> iter = referenceHash.values().iterator();
-            allRefs = iter.next();
         }
-        sortedReferences = allRefs;
         
         //Sort collections case insensitive
-        Collections.sort(sortedReferences, new Comparator<ReferenceEntry>() {
-            public int compare(ReferenceEntry o1, ReferenceEntry o2) {
-                return o1.getkey(true).compareTo(o2.getkey(true).toLowerCase());
-            }
-        });
+        Arrays.sort(allRefs, LOWER_CASE_ORDER);
+        String[] keys = new String[allRefs.length];
+        for (i = 0; i < allRefs.length; i++) {
+            keys[i] = allRefs[i].getkey(true);
+        }
+        sorted = new SortedReferences(allRefs, keys);
     }
     
     /**
@@ -186,10 +224,10 @@ public class ReferenceContainer {
      * @return True if <code>key</code> was found, false if it was not found
      */
     public boolean binTest(String key) {
-        if (sortedReferences == null || sortedReferences.size() == 0)
+        SortedReferences s = sorted;
+        if (s == null)
             return false;
-        int nr = PartialRetriever.getEntry(key, sortedReferences, true);
-        return (nr >= 0);
+        return PartialRetriever.getEntry(key, s.keys, s.references) >= 0;
     }
     
     /**
@@ -218,6 +256,61 @@ public class ReferenceContainer {
      * @return Returns the sortedReferences.
      */
     public List<ReferenceEntry> getSortedReferences() {
-        return sortedReferences;
+        SortedReferences s = sorted;
+        return s != null ? s.references : null;
+    }
+
+    /**
+     * Returns the sorted references and their lower case keys. The
+     * references and the keys should be read from the same object, since
+     * organizing the container replaces it.
+     * 
+     * @return The sorted references or null if the container has not been organized
+     */
+    public SortedReferences getSorted() {
+        return sorted;
+    }
+
+    /**
+     * Builds the index for searching the references, unless it has been
+     * built after the references were organized. Lets a background job
+     * build the index, which is otherwise built by the first search.
+     */
+    public void buildSearchIndex() {
+        getSearchIndex();
+    }
+
+    private ReferenceSearchIndex getSearchIndex() {
+        SortedReferences s = sorted;
+        return s != null ? s.getSearchIndex() : null;
+    }
+
+    /**
+     * Searches the references whose key starts with the given text or whose
+     * key, author, year or other fields contain the words of the text.
+     * 
+     * @param text The text to search for
+     * @param limit The maximum number of matches to return
+     * @return The matches ranked by where the text was found, or null if
+     * the container has not been organized
+     * @see ReferenceSearchIndex
+     */
+    public ReferenceMatches search(String text, int limit) {
+        ReferenceSearchIndex index = getSearchIndex();
+        return index != null ? index.search(text, limit) : null;
+    }
+
+    /**
+     * Returns the reference with the given key.
+     * 
+     * @param key The key to look for
+     * @return The reference or null if <code>key</code> was not found
+     */
+    public ReferenceEntry getReference(String key) {
+        SortedReferences s = sorted;
+        if (s == null)
+            return null;
+        int nr = PartialRetriever.getEntry(key, s.keys, s.references);
+        return nr >= 0 ? s.references.get(nr) : null;
     }
 }
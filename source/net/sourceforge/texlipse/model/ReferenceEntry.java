@@ -46,7 +46,7 @@ public final class ReferenceEntry extends AbstractEntry {
      * @param key Reference key
      */
     public ReferenceEntry(String key) {
-        this.key = key;
+        setKey(key);
     }
     
     /**
@@ -58,7 +58,7 @@ public final class ReferenceEntry extends AbstractEntry {
      * @param info A descriptive text of the reference
      */
     public ReferenceEntry(String key, String info) {
-        this.key = key;
+        setKey(key);
         this.info = info;
     }
         
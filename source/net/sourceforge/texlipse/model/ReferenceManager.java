@@ -49,10 +49,7 @@ public class ReferenceManager extends PartialRetriever {
     // B-----borisvl
     
     public ReferenceEntry getBib(String name) {
-        List<ReferenceEntry> bibEntries = bibContainer.getSortedReferences();
-        int nr = getEntry(name, bibEntries, true);
-        if (nr != -1) return bibEntries.get(nr);
-        else return null;
+        return bibContainer.getReference(name);
     }
 
     /**
@@ -62,10 +59,7 @@ public class ReferenceManager extends PartialRetriever {
      * @return The adequate entry or null if no entry was found
      */
     public ReferenceEntry getLabel(String ref) {
-        List<ReferenceEntry> labels = labelContainer.getSortedReferences();
-        int nr = getEntry(ref, labels, true);
-        if (nr != -1) return labels.get(nr);
-        else return null;
+        return labelContainer.getReference(ref);
     }
 
     /**
@@ -95,10 +89,11 @@ public class ReferenceManager extends PartialRetriever {
      * @return An array of completions or null if there were no completions
      */
     public List<ReferenceEntry> getCompletionsRef(String start) {
-        List<ReferenceEntry> labels = labelContainer.getSortedReferences();
+        ReferenceContainer.SortedReferences sorted = labelContainer.getSorted();
 
-        if (labels == null)
+        if (sorted == null)
             return null;
+        List<ReferenceEntry> labels = sorted.references;
         if (start.equals(""))
             return labels;
 
@@ -110,7 +105,7 @@ public class ReferenceManager extends PartialRetriever {
         // else
         // bounds = getCompletionsBin(start, labels);
 
-        bounds = getCompletionsBin(start, labels, true);
+        bounds = getCompletionsBin(start, sorted.keys);
 
         if (bounds[0] == -1) return null;
         return labels.subList(bounds[0], bounds[1]);
@@ -124,10 +119,11 @@ public class ReferenceManager extends PartialRetriever {
      * @return An array of completions or null if there were no completions
      */
     public List<ReferenceEntry> getCompletionsBib(String start) {
-        List<ReferenceEntry> bibEntries = bibContainer.getSortedReferences();
+        ReferenceContainer.SortedReferences sorted = bibContainer.getSorted();
 
-        if (bibEntries == null)
+        if (sorted == null)
             return null;
+        List<ReferenceEntry> bibEntries = sorted.references;
         if (start.equals(""))
             return bibEntries;
 
@@ -140,12 +136,28 @@ public class ReferenceManager extends PartialRetriever {
         // bounds = getCompletionsBin(start, bibEntries);
 
         // ...either solve problems with bounds or remove them...
-        bounds = getCompletionsBin(start, bibEntries, true);
+        bounds = getCompletionsBin(start, sorted.keys);
 
         if (bounds[0] == -1) return null;
         return bibEntries.subList(bounds[0], bounds[1]);
     }
 
+    /**
+     * Searches the BibTeX entries for \cite completions. Besides the
+     * entries whose key starts with the given string, returns the entries
+     * whose key, author, year or other fields contain it.
+     * 
+     * @param start The string to search for
+     * @param limit The maximum number of entries to return
+     * @return The ranked entries or null if there were no completions
+     */
+    public ReferenceMatches searchBib(String start, int limit) {
+        ReferenceMatches matches = bibContainer.search(start, limit);
+        if (matches == null || matches.size() == 0)
+            return null;
+        return matches;
+    }
+
     /**
      * Returns command completions.
      * 
@@ -0,0 +1,59 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * The ranked matches of a reference search. The matches are kept as
+ * indexes of the sorted references, so no list of entries is built
+ * for the matches.
+ */
+public final class ReferenceMatches extends AbstractList<ReferenceEntry> {
+
+    private final List<ReferenceEntry> entries;
+    private final int[] matches;
+    private final boolean more;
+
+    /**
+     * Creates a new list of matches.
+     * 
+     * @param entries The searched references
+     * @param matches The indexes of the matching references in rank order
+     * @param more True if the search was stopped at the limit
+     */
+    ReferenceMatches(List<ReferenceEntry> entries, int[] matches, boolean more) {
+        this.entries = entries;
+        this.matches = matches;
+        this.more = more;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractList#get(int)
+     */
+    public ReferenceEntry get(int index) {
+        return entries.get(matches[index]);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.AbstractCollection#size()
+     */
+    public int size() {
+        return matches.length;
+    }
+
+    /**
+     * @return True if there may be more matches than the limit of the search
+     */
+    public boolean hasMore() {
+        return more;
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index for finding references by the start of their key or by a part
+ * of their key, author, year or the other fields.
+ *
+ * The references are sorted by their lower case keys, so the references
+ * whose key starts with a given string form a range of the sorted keys,
+ * which is found with a binary search. The other matches are found with
+ * an inverted index: the fields are split into lower case words, each
+ * distinct word has a list of the references containing it and each
+ * trigram (three consecutive characters) a list of the words containing it.
+ * A word is matched by its start if the searched string is shorter than
+ * three characters, otherwise by any part of it. Thus the size of the
+ * index depends on the number of words rather than on the length of the
+ * fields, and a search reads only the words and references that can match.
+ *
+ * The matches are ranked: first the references whose key starts with the
+ * searched string, then those with a match in the key, author, year and
+ * the other fields. References with the same rank are in key order.
+ */
+public final class ReferenceSearchIndex {
+
+    /**
+     * The ranks of the matches, which are also the fields of the postings
+     */
+    private static final int KEY_PREFIX = 0;
+    private static final int KEY = 1;
+    private static final int AUTHOR = 2;
+    private static final int YEAR = 3;
+    private static final int OTHER = 4;
+
+    private static final int FIELD_BITS = 3;
+    private static final int RANK_SHIFT = 28;
+
+    private final List<ReferenceEntry> entries;
+    private final String[] lowerKeys;
+    /**
+     * The sorted distinct words of the fields
+     */
+    private final String[] words;
+    /**
+     * The postings of each word: the indexes of the references containing
+     * the word, shifted by <code>FIELD_BITS</code> and or'ed with the field
+     */
+    private final int[][] postings;
+    /**
+     * The numbers of the trigrams of the words
+     */
+    private final TrigramTable trigramNumbers;
+    /**
+     * The sorted word indexes of each trigram by its number
+     */
+    private final int[][] trigramWords;
+
+    /**
+     * A growable array of ints.
+     */
+    private static final class IntList {
+        int[] data = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                int[] newData = new int[size * 2];
+                System.arraycopy(data, 0, newData, 0, size);
+                data = newData;
+            }
+            data[size++] = value;
+        }
+
+        int last() {
+            return size > 0 ? data[size - 1] : -1;
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            System.arraycopy(data, 0, result, 0, size);
+            return result;
+        }
+    }
+
+    /**
+     * A hash table numbering the trigrams, which are packed into longs.
+     */
+    private static final class TrigramTable {
+        long[] keys = new long[1024];
+        int[] numbers = new int[1024];
+        int size;
+
+        /**
+         * @return The number of the trigram or -1 if it is not in the table
+         */
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = hash(key) & mask; numbers[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return numbers[i] - 1;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return The number of the trigram, which is added if needed
+         */
+        int add(long key) {
+            int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            for (; numbers[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return numbers[i] - 1;
+                }
+            }
+            keys[i] = key;
+            // the numbers are stored plus one, so that zero marks a free slot
+            numbers[i] = ++size;
+            if (size * 2 > keys.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldNumbers = numbers;
+            keys = new long[oldKeys.length * 2];
+            numbers = new int[oldNumbers.length * 2];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldNumbers[j] != 0) {
+                    int i = hash(oldKeys[j]) & mask;
+                    while (numbers[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    numbers[i] = oldNumbers[j];
+                }
+            }
+        }
+
+        private static int hash(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    /**
+     * Creates the index of the given references.
+     *
+     * @param entries The references sorted by their lower case keys
+     * @param lowerKeys The lower case keys of the references
+     */
+    ReferenceSearchIndex(List<ReferenceEntry> entries, String[] lowerKeys) {
+        this.entries = entries;
+        this.lowerKeys = lowerKeys;
+
+        Map<String, IntList> wordPostings = new HashMap<String, IntList>();
+        for (int i = 0; i < lowerKeys.length; i++) {
+            ReferenceEntry re = entries.get(i);
+            addWords(wordPostings, lowerKeys[i], i, KEY);
+            addWords(wordPostings, re.author, i, AUTHOR);
+            addWords(wordPostings, re.year, i, YEAR);
+            addWords(wordPostings, re.info, i, OTHER);
+        }
+
+        words = wordPostings.keySet().toArray(new String[wordPostings.size()]);
+        Arrays.sort(words);
+        postings = new int[words.length][];
+        trigramNumbers = new TrigramTable();
+        List<IntList> wordLists = new ArrayList<IntList>();
+        for (int w = 0; w < words.length; w++) {
+            postings[w] = wordPostings.get(words[w]).toArray();
+            String word = words[w];
+            for (int j = 0; j + 3 <= word.length(); j++) {
+                int t = trigramNumbers.add(trigram(word, j));
+                if (t == wordLists.size()) {
+                    wordLists.add(new IntList());
+                }
+                IntList list = wordLists.get(t);
+                if (list.last() != w) {
+                    list.add(w);
+                }
+            }
+        }
+        trigramWords = new int[wordLists.size()][];
+        for (int t = 0; t < trigramWords.length; t++) {
+            trigramWords[t] = wordLists.get(t).toArray();
+        }
+    }
+
+    private static void addWords(Map<String, IntList> wordPostings, String text, int entry, int field) {
+        if (text == null) {
+            return;
+        }
+        String lowerText = PartialRetriever.toLowerCase(text);
+        int code = (entry << FIELD_BITS) | field;
+        int length = lowerText.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(lowerText.charAt(i))) i++;
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(lowerText.charAt(i))) i++;
+            if (i > start) {
+                String word = lowerText.substring(start, i);
+                IntList list = wordPostings.get(word);
+                if (list == null) {
+                    list = new IntList();
+                    wordPostings.put(word, list);
+                }
+                // the fields are added in rank order, so a word occurring
+                // several times in the reference is posted with its best field
+                if (list.size == 0 || (list.last() >>> FIELD_BITS) != entry) {
+                    list.add(code);
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the text into lower case words made of letters and digits.
+     */
+    private static List<String> splitWords(String text) {
+        List<String> result = new ArrayList<String>();
+        String lowerText = PartialRetriever.toLowerCase(text);
+        int length = lowerText.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(lowerText.charAt(i))) i++;
+            int start = i;
+            while (i < length && Character.isLetterOrDigit(lowerText.charAt(i))) i++;
+            if (i > start) {
+                result.add(lowerText.substring(start, i));
+            }
+        }
+        return result;
+    }
+
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    /**
+     * Searches the references whose key starts with the given text or
+     * whose key or fields contain all the words of the text.
+     *
+     * @param text The text to search for
+     * @param limit The maximum number of matches to return
+     * @return The best ranked matches
+     */
+    public ReferenceMatches search(String text, int limit) {
+        int from = prefixStart(text);
+        int to = prefixEnd(text, from);
+        List<String> parts = splitWords(text);
+        if (to - from >= limit || parts.isEmpty()) {
+            int[] matches = new int[Math.min(to - from, limit)];
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] = from + i;
+            }
+            return new ReferenceMatches(entries, matches,
+                    to - from > limit || (to - from == limit && !parts.isEmpty()));
+        }
+
+        // the best rank of each reference matching all the words, in reference order
+        int[] found = null;
+        for (String part : parts) {
+            int[] partFound = searchWord(part);
+            found = found == null ? partFound : intersect(found, partFound, FIELD_BITS);
+            if (found.length == 0) {
+                break;
+            }
+        }
+
+        IntList ranked = new IntList();
+        for (int i = from; i < to; i++) {
+            ranked.add((KEY_PREFIX << RANK_SHIFT) | i);
+        }
+        for (int code : found) {
+            int entry = code >>> FIELD_BITS;
+            if (entry < from || entry >= to) {
+                ranked.add(((code & ((1 << FIELD_BITS) - 1)) << RANK_SHIFT) | entry);
+            }
+        }
+        int[] all = ranked.toArray();
+        Arrays.sort(all, to - from, all.length);
+        int[] matches = new int[Math.min(all.length, limit)];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = all[i] & ((1 << RANK_SHIFT) - 1);
+        }
+        return new ReferenceMatches(entries, matches, all.length > limit);
+    }
+
+    /**
+     * @return The index of the first key not less than the lower cased text
+     */
+    private int prefixStart(String text) {
+        int start = 0;
+        int end = lowerKeys.length;
+        while (start < end) {
+            int m = (start + end) >>> 1;
+            if (PartialRetriever.compareLowerCase(lowerKeys[m], text) < 0) start = m + 1;
+            else end = m;
+        }
+        return start;
+    }
+
+    /**
+     * @return The index after the last key starting with the text
+     */
+    private int prefixEnd(String text, int start) {
+        int end = lowerKeys.length;
+        while (start < end) {
+            int m = (start + end) >>> 1;
+            if (PartialRetriever.startsWithLowerCase(lowerKeys[m], text)) start = m + 1;
+            else end = m;
+        }
+        return start;
+    }
+
+    /**
+     * Finds the references containing the given lower case word.
+     *
+     * @return The codes of the references with their best field, in
+     * reference order
+     */
+    private int[] searchWord(String part) {
+        IntList codes = new IntList();
+        if (part.length() < 3) {
+            int w = Arrays.binarySearch(words, part);
+            for (w = w < 0 ? -w - 1 : w; w < words.length && words[w].startsWith(part); w++) {
+                addPostings(codes, w);
+            }
+        } else {
+            int[] candidates = null;
+            for (int j = 0; j + 3 <= part.length() && (candidates == null || candidates.length > 0); j++) {
+                int t = trigramNumbers.get(trigram(part, j));
+                if (t < 0) {
+                    return new int[0];
+                }
+                int[] list = trigramWords[t];
+                candidates = candidates == null ? list : intersect(candidates, list, 0);
+            }
+            for (int w : candidates) {
+                if (words[w].indexOf(part) >= 0) {
+                    addPostings(codes, w);
+                }
+            }
+        }
+
+        // keep the best field of each reference
+        int[] sorted = codes.toArray();
+        Arrays.sort(sorted);
+        IntList best = new IntList();
+        for (int code : sorted) {
+            if (best.size == 0 || (best.last() >>> FIELD_BITS) != (code >>> FIELD_BITS)) {
+                best.add(code);
+            }
+        }
+        return best.toArray();
+    }
+
+    private void addPostings(IntList codes, int word) {
+        for (int code : postings[word]) {
+            codes.add(code);
+        }
+    }
+
+    /**
+     * Intersects two sorted arrays comparing the values shifted right by
+     * the given amount. Of equal values the greater one is kept, so for
+     * codes of references the worse field is kept.
+     */
+    private static int[] intersect(int[] a, int[] b, int shift) {
+        IntList result = new IntList();
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            int x = a[i] >>> shift;
+            int y = b[j] >>> shift;
+            if (x < y) {
+                i++;
+            } else if (x > y) {
+                j++;
+            } else {
+                result.add(Math.max(a[i], b[j]));
+                i++;
+                j++;
+            }
+        }
+        return result.toArray();
+    }
+}
@@ -74,7 +74,7 @@ public class TexCommandEntry extends AbstractEntry {
      */
 	public TexCommandEntry(String _key, String _info, int _arguments, 
 			int[] _parameter, int _context) {
-        this.key = _key;
+        setKey(_key);
         this.info = _info;
         this.arguments = _arguments;
         this.parameter = _parameter;
@@ -90,7 +90,7 @@ public class TexCommandEntry extends AbstractEntry {
      * @param _arguments Number of mandatory parameters
      */
     public TexCommandEntry(String _key, String _info, int _arguments) {
-        this.key = _key;
+        setKey(_key);
         this.info = _info;
         this.arguments = _arguments;
         this.context = NORMAL_CONTEXT;
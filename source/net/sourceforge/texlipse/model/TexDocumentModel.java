@@ -14,10 +14,17 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
-import net.sourceforge.texlipse.bibparser.BibParser;
+import net.sourceforge.texlipse.bibparser.BibCache;
 import net.sourceforge.texlipse.editor.TexDocumentParseException;
 import net.sourceforge.texlipse.editor.TexEditor;
 import net.sourceforge.texlipse.outline.TexOutlinePage;
@@ -44,9 +51,11 @@ import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.action.SubStatusLineManager;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.DefaultPositionUpdater;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IPositionUpdater;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.jface.util.PropertyChangeEvent;
@@ -127,6 +136,9 @@ public class TexDocumentModel implements IDocumentListener {
                         lock.acquire();
                         pollCancel(monitor);
                         setDirty(false);
+                        // the outline positions now match the document
+                        changeOffset = -1;
+                        regionParseEnabled = true;
                     } finally {
                         lock.release();
                     }
@@ -221,6 +233,106 @@ public class TexDocumentModel implements IDocumentListener {
         }
     }
 
+    /**
+     * Job for extracting the labels and commands of all the files of the
+     * project when the first editor of the project is opened. The files
+     * which have changed since they were stored in the project index are
+     * parsed in parallel and the results are merged into the reference
+     * containers by the next parse, so the outline of the edited file is
+     * not delayed by the rest of the project.
+     */
+    private class ProjectIndexJob extends Job {
+
+        private final IProject project;
+        private volatile Map<IResource, ProjectIndex.TexFile> results;
+
+        /**
+         * @param name name of the job
+         * @param project the project to index
+         */
+        public ProjectIndexJob(String name, IProject project) {
+            super(name);
+            this.project = project;
+        }
+
+        /**
+         * @return the parsed files in the order of the project files, or
+         * null if the job has not finished or was cancelled
+         */
+        public Map<IResource, ProjectIndex.TexFile> getResults() {
+            return results;
+        }
+
+        /**
+         * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+         */
+        protected IStatus run(IProgressMonitor monitor) {
+            Map<IResource, ProjectIndex.TexFile> parsed = new LinkedHashMap<IResource, ProjectIndex.TexFile>();
+            final ProjectIndex index = ProjectIndex.getIndex(project);
+            IResource[] files = TexlipseProperties.getAllProjectFiles(project);
+            if (files == null) {
+                results = parsed;
+                parseJob.schedule();
+                return Status.OK_STATUS;
+            }
+            List<IResource> texFiles = new ArrayList<IResource>();
+            for (IResource file : files) {
+                String ext = file.getFileExtension();
+                // here are the file types we want to parse
+                if ("tex".equals(ext) || "ltx".equals(ext) || "sty".equals(ext)) {
+                    texFiles.add(file);
+                }
+            }
+            monitor.beginTask(getName(), texFiles.size());
+            int threads = Math.min(texFiles.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+            try {
+                List<Future<ProjectIndex.TexFile>> futures = new ArrayList<Future<ProjectIndex.TexFile>>(texFiles.size());
+                for (final IResource file : texFiles) {
+                    futures.add(executor.submit(new Callable<ProjectIndex.TexFile>() {
+                        public ProjectIndex.TexFile call() throws IOException {
+                            File f = file.getLocation().toFile();
+                            ProjectIndex.TexFile tex = index.getTexFile(f);
+                            if (tex == null) {
+                                LatexRefExtractingParser lrep = new LatexRefExtractingParser();
+                                lrep.parse(TexlipseProperties.getFileContents(file));
+                                tex = index.putTexFile(f, lrep);
+                            }
+                            return tex;
+                        }
+                    }));
+                }
+                for (int i = 0; i < texFiles.size(); i++) {
+                    if (monitor.isCanceled()) {
+                        return Status.CANCEL_STATUS;
+                    }
+                    IResource file = texFiles.get(i);
+                    try {
+                        parsed.put(file, futures.get(i).get());
+                    } catch (ExecutionException e) {
+                        TexlipsePlugin.log("Unable to open file " + file.getFullPath() + " for parsing", e.getCause());
+                    }
+                    monitor.worked(1);
+                }
+                // only a complete index is merged, since the labels missing
+                // from a partial one would be marked as undefined
+                results = parsed;
+                parseJob.schedule();
+                return Status.OK_STATUS;
+            } catch (InterruptedException e) {
+                return Status.CANCEL_STATUS;
+            } finally {
+                executor.shutdownNow();
+                monitor.done();
+            }
+        }
+
+        @Override
+        public boolean belongsTo(Object family) {
+            return family.equals(PARSER_FAMILY);
+        }
+    }
+
 
     private TexEditor editor;
     private TexParser parser;
@@ -233,8 +345,12 @@ public class TexDocumentModel implements IDocumentListener {
     private TexCommandContainer commandContainer;
     
     private ReferenceManager refMana;
+    // the running project index, null when there is no index to merge
+    private ProjectIndexJob indexJob;
     
     private boolean firstRun = true;
+    // the markers of the previous parse
+    private MarkerBatch parseMarkers;
 
     // used to synchronize ParseJob rescheduling
     private static ILock lock = Job.getJobManager().newLock();
@@ -243,6 +359,14 @@ public class TexDocumentModel implements IDocumentListener {
     private ParseJob parseJob;
     private PostParseJob postParseJob;
     
+    // the part of the document changed after the latest complete parse,
+    // changeOffset is -1 if nothing has changed
+    private int changeOffset = -1;
+    private int changeEnd;
+    // whether the latest parse results can be used for reparsing only the changed part
+    private boolean regionParseEnabled = false;
+    private IPositionUpdater outlineUpdater = new DefaultPositionUpdater("__outline");
+    
     // preferences
     private int parseDelay;
     private boolean autoParseEnabled;
@@ -279,6 +403,7 @@ public class TexDocumentModel implements IDocumentListener {
 		            parseDelay = TexlipsePlugin.getDefault().getPreferenceStore().getInt(TexlipseProperties.AUTO_PARSING_DELAY);
 		        } else if (TexlipseProperties.SECTION_CHECK.equals(property)) {
                     sectionCheckEnabled = TexlipsePlugin.getDefault().getPreferenceStore().getBoolean(TexlipseProperties.SECTION_CHECK);
+                    regionParseEnabled = false;
                 }
 		    }	
 		});	
@@ -380,6 +505,7 @@ public class TexDocumentModel implements IDocumentListener {
             lock.acquire();
             parseJob.cancel();
             this.setDirty(true);
+            this.addChangedRegion(event);
         } finally {
             lock.release();
         }
@@ -403,6 +529,29 @@ public class TexDocumentModel implements IDocumentListener {
         }
     }
 
+    /**
+     * Extends the changed part of the document to cover the given change.
+     * 
+     * @param event The document change
+     */
+    private void addChangedRegion(DocumentEvent event) {
+        int offset = event.getOffset();
+        int oldEnd = offset + event.getLength();
+        int newEnd = offset + (event.getText() != null ? event.getText().length() : 0);
+        if (changeOffset == -1) {
+            changeOffset = offset;
+            changeEnd = newEnd;
+        } else {
+            // move the previous change to the new document coordinates
+            if (changeEnd >= oldEnd) {
+                changeEnd += newEnd - oldEnd;
+            } else if (changeEnd > offset) {
+                changeEnd = newEnd;
+            }
+            changeOffset = Math.min(changeOffset, offset);
+            changeEnd = Math.max(changeEnd, newEnd);
+        }
+    }
     
     /**
      * Creates if not exist the ProjectOutline
@@ -440,8 +589,23 @@ public class TexDocumentModel implements IDocumentListener {
             createProjectOutline();
         }
         
+        int offset, end;
+        boolean regionParse;
+        try {
+            lock.acquire();
+            offset = changeOffset;
+            end = changeEnd;
+            regionParse = regionParseEnabled && offset != -1;
+            // the results won't match the outline positions until this parse is complete
+            regionParseEnabled = false;
+        } finally {
+            lock.release();
+        }
+        
         try {
-            parser.parseDocument(sectionCheckEnabled);
+            if (!regionParse || !parser.parseRegion(offset, end, sectionCheckEnabled)) {
+                parser.parseDocument(sectionCheckEnabled);
+            }
         } catch (IOException e) {
             TexlipsePlugin.log("Can't read file.", e);
             throw new TexDocumentParseException(e);
@@ -452,42 +616,80 @@ public class TexDocumentModel implements IDocumentListener {
         List<ParseErrorMessage> tasks = parser.getTasks();
         MarkerHandler marker = MarkerHandler.getInstance();
         
-        // somewhat inelegantly ensures that errors marked in createProjectDatastructs()
+        // the markers are collected during the parse, and only the ones
+        // that have changed are created or deleted at the end; somewhat
+        // inelegantly ensures that errors marked in createProjectDatastructs()
         // aren't removed immediately
-        if (!firstRun) {
-            marker.clearErrorMarkers(editor);
-            marker.clearTaskMarkers(editor);
-        } else {
-            firstRun = false;
-        }
+        marker.beginUpdate(editor, !firstRun);
+        firstRun = false;
+        try {
+            // merge the project index here, so that the errors it marks aren't
+            // removed before the next parse
+            if (indexJob != null) {
+                // the results of a finished job are known
+                boolean finished = indexJob.getState() == Job.NONE;
+                Map<IResource, ProjectIndex.TexFile> results = indexJob.getResults();
+                if (results != null) {
+                    IProject project = getCurrentProject();
+                    if (project != null) {
+                        createProjectDatastructs(project, results);
+                    }
+                    indexJob = null;
+                } else if (finished) {
+                    // the index was cancelled, index the project again
+                    indexJob.schedule();
+                }
+            }
 
 
-        if (editor.getProject() != null && editor.getFullOutline() != null) {
-            IResource res = (IResource) editor.getEditorInput().getAdapter(IResource.class);
-            String fileName = res.getProjectRelativePath().toString();
-            projectOutline.addOutline(parser.getOutlineTree(), fileName);
+            if (editor.getProject() != null && editor.getFullOutline() != null) {
+                IResource res = (IResource) editor.getEditorInput().getAdapter(IResource.class);
+                String fileName = res.getProjectRelativePath().toString();
+                projectOutline.addOutline(parser.getOutlineTree(), fileName);
             
-            List<OutlineNode> fo = projectOutline.getFullOutline();
-            postParseJob.setFONodes(fo);
-        } else {
-            postParseJob.setFONodes(null);
-        }
-        pollCancel(monitor);
+                List<OutlineNode> fo = projectOutline.getFullOutline();
+                postParseJob.setFONodes(fo);
+            } else {
+                postParseJob.setFONodes(null);
+            }
+            pollCancel(monitor);
         
-        processIncludes(parser.getInputs(), editor.getEditorInput());
+            processIncludes(parser.getInputs(), editor.getEditorInput());
         
-        if (errors.size() > 0) {
-            marker.createErrorMarkers(editor, errors);
-        }
-        if (tasks.size() > 0) {
-            marker.createTaskMarkers(editor, tasks);
-        }
-        if (parser.isFatalErrors()) {
-            throw new TexDocumentParseException("Fatal errors in file, parsing aborted.");
-        }
+            if (errors.size() > 0) {
+                marker.createErrorMarkers(editor, errors);
+            }
+            if (tasks.size() > 0) {
+                marker.createTaskMarkers(editor, tasks);
+            }
+            if (parser.isFatalErrors()) {
+                throw new TexDocumentParseException("Fatal errors in file, parsing aborted.");
+            }
         
-        updateReferences(monitor);
+            updateReferences(monitor);
         
+            // the references to the other files are known after the index is merged
+            if (indexJob == null) {
+                markReferencingErrors(marker);
+            }
+        
+            return this.parser.getOutlineTree();
+        } catch (OperationCanceledException e) {
+            // keep the markers of the previous parse
+            marker.cancelUpdate(editor);
+            throw e;
+        } finally {
+            parseMarkers = marker.endUpdate(editor, parseMarkers);
+        }
+    }
+
+    /**
+     * Marks the citations and references of the document whose keys
+     * are not found in the reference containers.
+     * 
+     * @param marker The marker handler
+     */
+    private void markReferencingErrors(MarkerHandler marker) {
         List<DocumentReference> cites = parser.getCites();
         List<DocumentReference> bibErrors = null;
         for (DocumentReference cite : cites) {
@@ -511,8 +713,6 @@ public class TexDocumentModel implements IDocumentListener {
         if (refErrors != null) {
         	marker.createReferencingErrorMarkers(editor, refErrors);
         }
-        
-        return this.parser.getOutlineTree();
     }
 
     
@@ -541,6 +741,9 @@ public class TexDocumentModel implements IDocumentListener {
         }
         
         document.addPositionCategory("__outline");
+        // keep the positions up to date with the changes for reparsing only the changed node
+        document.removePositionUpdater(outlineUpdater);
+        document.addPositionUpdater(outlineUpdater);
         pollCancel(monitor);
         
         // add new positions for nodes and their children
@@ -808,9 +1011,8 @@ public class TexDocumentModel implements IDocumentListener {
         	    }
         	    
         		if (filepath.length() > 0) {
-        			BibParser parser = new BibParser(filepath);
         			try {
-        				List<ReferenceEntry> bibEntriesList = parser.getEntries();
+        				List<ReferenceEntry> bibEntriesList = BibCache.getInstance().getFile(filepath).getEntries();
         				if (bibEntriesList != null && bibEntriesList.size() > 0) {
         					bibContainer.addRefSource(path + name, bibEntriesList);
         				} else if (bibEntriesList == null) {
@@ -831,6 +1033,8 @@ public class TexDocumentModel implements IDocumentListener {
         	}
         }
         bibContainer.organize();
+        // build the search index here so that the completion doesn't wait for it
+        bibContainer.buildSearchIndex();
     }
     
     /**
@@ -934,7 +1138,9 @@ public class TexDocumentModel implements IDocumentListener {
         }
         
         if (parseAll) {
-            createProjectDatastructs(project);
+            indexJob = new ProjectIndexJob("Indexing project", project);
+            indexJob.setPriority(Job.DECORATE);
+            indexJob.schedule();
         }
     }
     
@@ -944,67 +1150,50 @@ public class TexDocumentModel implements IDocumentListener {
      * the BibTeX style.
      * 
      * @param project The current project
+     * @param parsed The parsed files of the project
      */
-    private void createProjectDatastructs(IProject project) {
-        //IResource resource = ((FileEditorInput)editor.getEditorInput()).getFile();
-        
-        IResource[] files = TexlipseProperties.getAllProjectFiles(project);        
-        
-        if (files != null) {
-            IFile mainFile = TexlipseProperties.getProjectSourceFile(project);
+    private void createProjectDatastructs(IProject project, Map<IResource, ProjectIndex.TexFile> parsed) {
+        IFile mainFile = TexlipseProperties.getProjectSourceFile(project);
 
-            for (int i = 0; i < files.length; i++) {
-                //IPath path = files[i].getFullPath();
-                String ext = files[i].getFileExtension();
-				// here are the file types we want to parse
-                if ("tex".equals(ext) || "ltx".equals(ext) || "sty".equals(ext)) {
-                    try {
-                        String input = TexlipseProperties.getFileContents(files[i]);
-                        LatexRefExtractingParser lrep = new LatexRefExtractingParser();
-                        lrep.parse(input);
-                        if (lrep.isFatalErrors()) {
-                            MarkerHandler marker = MarkerHandler.getInstance();
-                            marker.addFatalError(editor, "The file " + files[i].getFullPath() + " contains fatal errors, parsing aborted.");
-                            continue;
-                        }
-                        List<ReferenceEntry> labels = lrep.getLabels();
-                        if (labels.size() > 0) {
-                            labelContainer.addRefSource(files[i].getProjectRelativePath().toString(), labels);
-                        }
-                        List<TexCommandEntry> commands = lrep.getCommands();
-                        if (commands.size() > 0) {
-                            commandContainer.addRefSource(files[i].getProjectRelativePath().toString(), commands);
-                        }
-                        //Only update Preamble, Bibstyle if main Document
-                        if (files[i].equals(mainFile)) {
-                            String[] bibs = lrep.getBibs();
-                            boolean biblatexMode = lrep.isBiblatexMode();
-                            String biblatexBackend = lrep.getBiblatexBackend();
-                            this.updateBiblatex(project, biblatexMode, biblatexBackend, true);
-                            this.updateBibs(bibs, biblatexMode, files[i]);
-
-                            String preamble = lrep.getPreamble();
-                            if (preamble != null) {
-                                TexlipseProperties.setSessionProperty(project, 
-                                        TexlipseProperties.PREAMBLE_PROPERTY,
-                                        preamble);
-                            }
+        for (Map.Entry<IResource, ProjectIndex.TexFile> entry : parsed.entrySet()) {
+            IResource file = entry.getKey();
+            ProjectIndex.TexFile tex = entry.getValue();
+            if (tex.fatalErrors) {
+                MarkerHandler marker = MarkerHandler.getInstance();
+                marker.addFatalError(editor, "The file " + file.getFullPath() + " contains fatal errors, parsing aborted.");
+                continue;
+            }
+            if (tex.labels.size() > 0) {
+                labelContainer.addRefSource(file.getProjectRelativePath().toString(), tex.labels);
+            }
+            if (tex.commands.size() > 0) {
+                commandContainer.addRefSource(file.getProjectRelativePath().toString(), tex.commands);
+            }
+            //Only update Preamble, Bibstyle if main Document
+            if (file.equals(mainFile)) {
+                this.updateBiblatex(project, tex.biblatexMode, tex.biblatexBackend, true);
+                this.updateBibs(tex.bibs, tex.biblatexMode, file);
 
-                            String bibstyle = lrep.getBibstyle();
-                            if (bibstyle != null)
-                                TexlipseProperties.setSessionProperty(project, 
-                                        TexlipseProperties.BIBSTYLE_PROPERTY,
-                                        bibstyle);
-                        }
-                    } catch (IOException ioe) {
-                        TexlipsePlugin.log("Unable to open file " + files[i].getFullPath() + " for parsing", ioe);
-                    }
+                if (tex.preamble != null) {
+                    TexlipseProperties.setSessionProperty(project, 
+                            TexlipseProperties.PREAMBLE_PROPERTY,
+                            tex.preamble);
                 }
+
+                if (tex.bibstyle != null)
+                    TexlipseProperties.setSessionProperty(project, 
+                            TexlipseProperties.BIBSTYLE_PROPERTY,
+                            tex.bibstyle);
             }
-            // save time by doing this last
-            labelContainer.organize();
-            commandContainer.organize();
         }
+        // save time by doing this last
+        labelContainer.organize();
+        commandContainer.organize();
+        // the files of the project and the BibTeX files of the main file
+        // are now known, the rest are removed or renamed files
+        ProjectIndex index = ProjectIndex.getIndex(project);
+        index.removeUnused();
+        index.save();
     }
     
     /**
@@ -88,7 +88,7 @@ public class TexlipsePreferenceInitializer extends
         
         pref.setDefault(TexlipseProperties.BUILD_ENV_SETTINGS, "");
         pref.setDefault(TexlipseProperties.VIEWER_ENV_SETTINGS, "");
-        pref.setDefault(TexlipseProperties.TEMP_FILE_EXTS, ".aux,.log,.toc,.ind,.ilg,.bbl,.blg,.lot,.lof,.snm,.nav,.out,.vrb,.run.xml,.bcf");
+        pref.setDefault(TexlipseProperties.TEMP_FILE_EXTS, ".aux,.log,.toc,.ind,.ilg,.bbl,.blg,.lot,.lof,.snm,.nav,.out,.vrb,.run.xml,.bcf,.fls");
         pref.setDefault(TexlipseProperties.DERIVED_FILES, ".synctex.gz,.synctex,.pdfsync");
         
         pref.setDefault(TexlipseProperties.BIB_COMPLETION, true);
@@ -148,6 +148,7 @@ public class TexlipsePreferenceInitializer extends
         pref.setDefault(TexlipseProperties.SPELLCHECKER_IGNORE_COMMENTS, true);
         pref.setDefault(TexlipseProperties.SPELLCHECKER_IGNORE_MATH, false);
         pref.setDefault(TexlipseProperties.SPELLCHECKER_IGNORE_MIXED_CASE, true);
+        pref.setDefault(TexlipseProperties.SPELLCHECKER_PERSIST_CACHE, true);
         
         pref.setDefault(TexlipseProperties.BUILDER_FORCE_RETURN_FOCUS, true);
         pref.setDefault(TexlipseProperties.BUILDER_KEEP_SYNCHRONIZED, false);
@@ -171,12 +171,14 @@ public class TexlipseProperties {
 
     // session variables
     public static final String SESSION_BIBTEX_RERUN = "rerunBibtex";
-    public static final String SESSION_LATEX_RERUN = "rerunLatex";
     public static final String SESSION_MAKEINDEX_RERUN = "rerunMakeindex";
     public static final String SESSION_PROPERTIES_LOAD = "propsLoaded";
     // attribute for session properties to hold the viewer process object
     public static final String SESSION_ATTRIBUTE_VIEWER = "active.viewer";
     public static final String SESSION_PROJECT_FULLOUTLINE = "project.fullTexParser";
+    public static final String SESSION_PROJECT_INDEX = "project.index";
+    public static final String SESSION_BUILD_DEPENDENCIES = "project.buildDependencies";
+    public static final String SESSION_SPELLING_CACHE = "project.spellingCache";
     
     public static final String ECLIPSE_BUILDIN_SPELLCHECKER = "eclipseBuildInSpellChecker";
     public static final String SPELLCHECKER_DICT_DIR = "spellcheckerDictDir";
@@ -184,6 +186,7 @@ public class TexlipseProperties {
     public static final String SPELLCHECKER_IGNORE_COMMENTS = "spellcheckerIgnoreComments"; 
     public static final String SPELLCHECKER_IGNORE_MATH = "spellcheckerIgnoreMath"; 
     public static final String SPELLCHECKER_IGNORE_MIXED_CASE = "spellcheckerIgnoreMixedCase"; 
+    public static final String SPELLCHECKER_PERSIST_CACHE = "spellcheckerPersistCache";
     
     /**
        * A named preference that controls whether bracket matching highlighting is turned on or off.
@@ -45,7 +45,8 @@ public class AddToDictProposal implements ICompletionProposal {
     }
     
     public void apply(IDocument document) {
-        TexSpellDictionary dict = TexSpellingEngine.getDict(fLang);
+        TexSpellDictionary dict = TexSpellingService.getInstance().getDictionary(fLang);
+        if (dict == null) return;
         dict.addWord(ferror.getInvalidWord());
         SpellingProblem.removeAll(fviewer, ferror.getInvalidWord());
     }
@@ -0,0 +1,148 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.spelling;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+
+/**
+ * Loads dictionaries through precompiled images. The first time a word
+ * list is loaded, the dictionary built from it is written to an image in
+ * the plugin state location. Later the image is mapped into memory, so
+ * the words don't have to be read and hashed again, and the operating
+ * system can share the pages between Eclipse instances.
+ *
+ * An image is rebuilt when the modification time or the length of its
+ * word list changes.
+ */
+final class DictionaryImage {
+
+    private static final int MAGIC = 0x54584453;
+    private static final int VERSION = 2;
+    private static final String IMAGE_DIR = "dictionaries";
+
+    private DictionaryImage() {
+    }
+
+    /**
+     * Loads the dictionary of a word list, which is UTF-8 encoded and has
+     * one word on each line.
+     *
+     * @param wordList the word list
+     * @return the dictionary
+     * @throws IOException if the word list can't be read
+     */
+    static TexSpellDictionary load(File wordList) throws IOException {
+        File imageFile = getImageFile(wordList);
+        TexSpellDictionary dict = map(imageFile, wordList);
+        if (dict != null) {
+            return dict;
+        }
+
+        Reader r = new BufferedReader(new InputStreamReader(new FileInputStream(wordList), "UTF-8"));
+        try {
+            dict = new TexSpellDictionary(r);
+        } finally {
+            r.close();
+        }
+        if (write(dict, imageFile, wordList)) {
+            // use the mapped image, so the built dictionary can be freed
+            TexSpellDictionary mapped = map(imageFile, wordList);
+            if (mapped != null) {
+                return mapped;
+            }
+        }
+        return dict;
+    }
+
+    private static File getImageFile(File wordList) {
+        File dir = TexlipsePlugin.getDefault().getStateLocation().append(IMAGE_DIR).toFile();
+        String path = wordList.getAbsolutePath();
+        return new File(dir, wordList.getName() + "-" + Integer.toHexString(path.hashCode()) + ".img");
+    }
+
+    /**
+     * @return the dictionary in the image, or null if the image is
+     *  missing, old or damaged
+     */
+    private static TexSpellDictionary map(File imageFile, File wordList) {
+        if (!imageFile.isFile()) {
+            return null;
+        }
+        try {
+            FileInputStream in = new FileInputStream(imageFile);
+            try {
+                // the mapping stays valid after the file is closed
+                FileChannel channel = in.getChannel();
+                ByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (image.getInt() != MAGIC || image.getInt() != VERSION
+                        || image.getLong() != wordList.lastModified()
+                        || image.getLong() != wordList.length()) {
+                    return null;
+                }
+                return new TexSpellDictionary(image);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        } catch (BufferUnderflowException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true, if the image was written
+     */
+    private static boolean write(TexSpellDictionary dict, File imageFile, File wordList) {
+        File tmpFile = new File(imageFile.getPath() + ".tmp");
+        try {
+            imageFile.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(wordList.lastModified());
+                out.writeLong(wordList.length());
+                dict.write(out);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(imageFile)) {
+                // the old image may still be mapped on some platforms
+                imageFile.delete();
+                if (!tmpFile.renameTo(imageFile)) {
+                    tmpFile.delete();
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            TexlipsePlugin.log("Unable to write the dictionary image " + imageFile, e);
+            tmpFile.delete();
+            return false;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import net.sourceforge.texlipse.PathUtils;
 import net.sourceforge.texlipse.SelectedResourceManager;
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.builder.BuilderRegistry;
+import net.sourceforge.texlipse.model.MarkerBatch;
 import net.sourceforge.texlipse.properties.TexlipseProperties;
 
 import org.eclipse.core.resources.IFile;
@@ -128,6 +129,10 @@ public class SpellChecker implements IPropertyChangeListener {
     // map of proposals so far
     private Map<IMarker, String[]> proposalMap;
     
+    // the markers of the running document check and their proposals
+    private MarkerBatch markers;
+    private List<String[]> markerProposals;
+    
     // the current language
     private String language;
     
@@ -407,7 +412,14 @@ public class SpellChecker implements IPropertyChangeListener {
      * @param file
      */
     private void checkDocumentSpelling(IDocument doc, IFile file, IProgressMonitor monitor) {
-        deleteOldProposals(file);
+        // the markers of the previous check are replaced by the new ones
+        // in a single workspace operation after the check
+        markers = new MarkerBatch();
+        markerProposals = new ArrayList<String[]>();
+        for (IMarker marker : proposalMap.keySet()) {
+            markers.delete(marker);
+        }
+        markers.replace(file, SPELLING_ERROR_MARKER_TYPE, IResource.DEPTH_ONE);
         //doc.addDocumentListener(instance);
         try {
             int num = doc.getNumberOfLines();
@@ -424,6 +436,27 @@ public class SpellChecker implements IPropertyChangeListener {
             TexlipsePlugin.log("Checking spelling on a line", e);
         }
         stopProgram();
+        applyMarkers();
+    }
+
+    /**
+     * Applies the markers collected during a document check and stores
+     * their proposals.
+     */
+    private void applyMarkers() {
+        MarkerBatch batch = markers;
+        List<String[]> proposals = markerProposals;
+        markers = null;
+        markerProposals = null;
+        try {
+            IMarker[] result = batch.apply();
+            proposalMap.clear();
+            for (int i = 0; i < result.length; i++) {
+                proposalMap.put(result[i], proposals.get(i));
+            }
+        } catch (CoreException e) {
+            TexlipsePlugin.log("Adding spelling markers", e);
+        }
     }
 
     /**
@@ -613,13 +646,15 @@ public class SpellChecker implements IPropertyChangeListener {
         attributes.put(IMarker.MESSAGE, 
             MessageFormat.format(TexlipsePlugin.getResourceString("spellMarkerMessage"),
                 new Object[] { word }));
+        if (markers != null) {
+            markers.add(file, SPELLING_ERROR_MARKER_TYPE, attributes);
+            markerProposals.add(proposals);
+            return;
+        }
         try {
-            IMarker marker = file.createMarker(SPELLING_ERROR_MARKER_TYPE);
-            marker.setAttributes(attributes);
-            proposalMap.put(marker, proposals);
-/*            MarkerUtilities.createMarker(file, attributes, SPELLING_ERROR_MARKER_TYPE);
-            addProposal(file, charBegin, charBegin+word.length(), proposals);*/
-            
+            MarkerBatch batch = new MarkerBatch();
+            batch.add(file, SPELLING_ERROR_MARKER_TYPE, attributes);
+            proposalMap.put(batch.apply()[0], proposals);
         } catch (CoreException e) {
             TexlipsePlugin.log("Adding spelling marker", e);
         }
@@ -76,9 +76,12 @@ public class SpellCheckerPreferencePage
         BooleanFieldEditor ignoreMixedCase = new BooleanFieldEditor(TexlipseProperties.SPELLCHECKER_IGNORE_MIXED_CASE, 
                 TexlipsePlugin.getResourceString("preferenceSpellIgnoreMixedCase") , group);
         addField (ignoreMixedCase);
-//        BooleanFieldEditor ignoreMath = new BooleanFieldEditor(TexlipseProperties.SPELLCHECKER_IGNORE_MATH, 
-//                TexlipsePlugin.getResourceString("preferenceSpellIgnoreMath") , group);
-//        addField(ignoreMath);
+        BooleanFieldEditor ignoreMath = new BooleanFieldEditor(TexlipseProperties.SPELLCHECKER_IGNORE_MATH, 
+                TexlipsePlugin.getResourceString("preferenceSpellIgnoreMath") , group);
+        addField(ignoreMath);
+        BooleanFieldEditor persistCache = new BooleanFieldEditor(TexlipseProperties.SPELLCHECKER_PERSIST_CACHE, 
+                TexlipsePlugin.getResourceString("preferenceSpellPersistCache") , group);
+        addField(persistCache);
         TexlipsePreferencePage.addSpacer(3, group);
         
         dictDir = 
@@ -0,0 +1,300 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.spelling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.properties.TexlipseProperties;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Cache of the spelling errors of paragraphs, so that paragraphs that
+ * haven't changed need not be checked again when a document is
+ * reconciled or reopened. A paragraph is identified by a 64-bit hash of
+ * its text, its language, the dictionary and the options of the check.
+ *
+ * The errors are cached before the ignored words, the words added to the
+ * dictionary and the mixed case words are filtered out, so that the
+ * cached errors stay valid when these change.
+ *
+ * The cache of a project is stored in a binary file in the plugin state
+ * location, if this is enabled in the preferences. The file is written
+ * in the background a few seconds after the cache has changed, and when
+ * the plugin is stopped.
+ */
+public final class SpellingCache {
+
+    private static final int MAGIC = 0x54585343;
+    private static final int VERSION = 1;
+    private static final String CACHE_DIR = "spelling";
+
+    /**
+     * The maximum number of cached paragraphs
+     */
+    private static final int MAX_ENTRIES = 20000;
+
+    /**
+     * The delay before the cache is written in milliseconds
+     */
+    private static final long SAVE_DELAY = 10000;
+
+    /**
+     * The spelling errors of a paragraph. The offsets are relative to the
+     * start of the paragraph.
+     */
+    static final class ParagraphErrors {
+        final int[] offsets;
+        final String[] words;
+        final String[][] suggestions;
+
+        ParagraphErrors(int[] offsets, String[] words, String[][] suggestions) {
+            this.offsets = offsets;
+            this.words = words;
+            this.suggestions = suggestions;
+        }
+    }
+
+    private final File cacheFile;
+    // the least recently used entry first
+    private final Map<Long, ParagraphErrors> entries =
+        new LinkedHashMap<Long, ParagraphErrors>(256, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<Long, ParagraphErrors> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    private boolean dirty;
+    private Job saveJob;
+
+    /**
+     * Creates a cache which is kept in memory only.
+     */
+    SpellingCache() {
+        this(null);
+    }
+
+    private SpellingCache(File cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Returns the cache of the given project, loading it from the disk
+     * the first time the cache is needed.
+     *
+     * @param project The project
+     * @return The cache of the project
+     */
+    public static synchronized SpellingCache getCache(IProject project) {
+        SpellingCache cache = (SpellingCache) TexlipseProperties.getSessionProperty(project,
+                TexlipseProperties.SESSION_SPELLING_CACHE);
+        if (cache == null) {
+            File dir = TexlipsePlugin.getDefault().getStateLocation().append(CACHE_DIR).toFile();
+            cache = new SpellingCache(new File(dir, project.getName() + ".spc"));
+            if (isPersistent()) {
+                cache.load();
+            }
+            TexlipseProperties.setSessionProperty(project,
+                    TexlipseProperties.SESSION_SPELLING_CACHE, cache);
+        }
+        return cache;
+    }
+
+    private static boolean isPersistent() {
+        return TexlipsePlugin.getDefault().getPreferenceStore().getBoolean(
+                TexlipseProperties.SPELLCHECKER_PERSIST_CACHE);
+    }
+
+    /**
+     * Computes the key of a paragraph.
+     *
+     * @param text The text containing the paragraph
+     * @param start The start index of the paragraph
+     * @param end The end index of the paragraph
+     * @param seed A hash of the language, the dictionary and the options
+     * @return The 64-bit FNV-1a hash of the paragraph and the seed
+     */
+    static long key(String text, int start, int end, long seed) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (int i = start; i < end; i++) {
+            h = (h ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * @param key The key of a paragraph
+     * @return The errors of the paragraph, or null if it is not cached
+     */
+    synchronized ParagraphErrors get(long key) {
+        return entries.get(Long.valueOf(key));
+    }
+
+    /**
+     * Stores the errors of a paragraph.
+     *
+     * @param key The key of the paragraph
+     * @param entry The errors of the paragraph
+     */
+    synchronized void put(long key, ParagraphErrors entry) {
+        entries.put(Long.valueOf(key), entry);
+        dirty = true;
+        if (cacheFile != null && isPersistent()) {
+            if (saveJob == null) {
+                saveJob = new Job("Save spelling results") {
+                    protected IStatus run(IProgressMonitor monitor) {
+                        save();
+                        return Status.OK_STATUS;
+                    }
+                };
+                saveJob.setSystem(true);
+            }
+            // has no effect while the job is already waiting
+            saveJob.schedule(SAVE_DELAY);
+        }
+    }
+
+    /**
+     * Writes the changed caches of all projects to the disk right away.
+     * Called when the plugin is stopped, since a pending save would be
+     * lost.
+     */
+    public static void saveAll() {
+        if (!isPersistent()) {
+            return;
+        }
+        for (IProject project : ResourcesPlugin.getWorkspace().getRoot().getProjects()) {
+            SpellingCache cache = (SpellingCache) TexlipseProperties.getSessionProperty(project,
+                    TexlipseProperties.SESSION_SPELLING_CACHE);
+            if (cache != null) {
+                cache.saveNow();
+            }
+        }
+    }
+
+    private synchronized void saveNow() {
+        if (saveJob != null) {
+            saveJob.cancel();
+        }
+        save();
+    }
+
+    /**
+     * Writes the cache to the disk, if it has changed.
+     */
+    public synchronized void save() {
+        if (!dirty || cacheFile == null) {
+            return;
+        }
+        File tmpFile = new File(cacheFile.getPath() + ".tmp");
+        try {
+            cacheFile.getParentFile().mkdirs();
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                // in the order of use, so that loading keeps the order
+                for (Map.Entry<Long, ParagraphErrors> e : entries.entrySet()) {
+                    ParagraphErrors entry = e.getValue();
+                    out.writeLong(e.getKey().longValue());
+                    out.writeInt(entry.words.length);
+                    for (int i = 0; i < entry.words.length; i++) {
+                        out.writeInt(entry.offsets[i]);
+                        out.writeUTF(entry.words[i]);
+                        out.writeInt(entry.suggestions[i].length);
+                        for (String s : entry.suggestions[i]) {
+                            out.writeUTF(s);
+                        }
+                    }
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(cacheFile)) {
+                cacheFile.delete();
+                tmpFile.renameTo(cacheFile);
+            }
+            dirty = false;
+        } catch (IOException e) {
+            TexlipsePlugin.log("Unable to write the spelling cache " + cacheFile, e);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Reads the cache from the disk. A missing, old or damaged cache
+     * is ignored.
+     */
+    private void load() {
+        if (!cacheFile.exists()) {
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(cacheFile)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return;
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    long key = in.readLong();
+                    int n = readLength(in);
+                    int[] offsets = new int[n];
+                    String[] words = new String[n];
+                    String[][] suggestions = new String[n][];
+                    for (int j = 0; j < n; j++) {
+                        offsets[j] = in.readInt();
+                        words[j] = in.readUTF();
+                        suggestions[j] = new String[readLength(in)];
+                        for (int k = 0; k < suggestions[j].length; k++) {
+                            suggestions[j][k] = in.readUTF();
+                        }
+                    }
+                    entries.put(Long.valueOf(key), new ParagraphErrors(offsets, words, suggestions));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Reads the length of an array, which can't be larger than the rest
+     * of the file in a valid cache.
+     */
+    private static int readLength(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0 || n > in.available()) {
+            throw new IOException("Damaged spelling cache");
+        }
+        return n;
+    }
+}
@@ -10,6 +10,7 @@
 package net.sourceforge.texlipse.spelling;
 
 import java.io.BufferedReader;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
@@ -17,26 +18,79 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.StringTokenizer;
 
 import com.swabunga.spell.engine.SpellDictionaryASpell;
 
 /**
- * A memory optimized dictionary class 
- * @author Boris von Loesch
+ * A memory optimized dictionary class.
+ *
+ * The words are kept in a <code>WordTable</code>, so checking a word
+ * takes time proportional to its length and creates no objects. The
+ * phonetic codes, which are only needed for suggestions, are computed
+ * when suggestions are asked for the first time. The words of each code
+ * are then stored as a range of word ids, and different codes never share
+ * a range.
+ *
+ * The word list and its codes can be written to an image, which
+ * <code>DictionaryImage</code> maps back into memory. Words added to
+ * the dictionary later are kept apart from the word list.
  *
+ * The word list doesn't change after the dictionary has been built, and
+ * the added words are replaced by a new copy when words are added, so
+ * words can be checked and suggested from several threads at once
+ * without locking.
+ *
+ * @author Boris von Loesch
  */
 public class TexSpellDictionary extends SpellDictionaryASpell {
     private final static int INITIAL_CAPACITY = 32 * 1024;
 
-    private final static char SEP_CHAR = ';';
-    
-    protected Map<Integer, StringBuilder> mainDictionary = new HashMap<Integer, StringBuilder>(INITIAL_CAPACITY);
+    // the word list of the dictionary
+    private final WordTable words;
+    // identifies the contents of the word list
+    private long fingerprint;
+
+    /**
+     * The words of the word list grouped by their phonetic codes
+     */
+    private static final class CodeIndex {
+        private final WordTable codes;
+        // the ids of the words of code i are words[start[i]..start[i + 1]]
+        private final IntBuffer start;
+        private final IntBuffer words;
+
+        CodeIndex(WordTable codes, IntBuffer start, IntBuffer words) {
+            this.codes = codes;
+            this.start = start;
+            this.words = words;
+        }
+    }
+
+    /**
+     * The words added to the dictionary besides the word list, and the
+     * same words by their phonetic codes. Neither changes after creating.
+     */
+    private static final class Additions {
+        private final WordTable words;
+        private final Map<String, List<String>> codes;
+
+        Additions(WordTable words, Map<String, List<String>> codes) {
+            this.words = words;
+            this.codes = codes;
+        }
+    }
+
+    // built when it is needed the first time
+    private volatile CodeIndex codeIndex;
+    private volatile Additions additions = new Additions(new WordTable(16),
+            new HashMap<String, List<String>>());
 
     /**
      * User dictionary
@@ -52,6 +106,7 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      */
     public TexSpellDictionary(Reader wordList) throws IOException {
         super((File) null);
+        words = new WordTable(INITIAL_CAPACITY);
         createDictionary(new BufferedReader(wordList));
     }
 
@@ -66,9 +121,52 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      */
     public TexSpellDictionary(Reader wordList, Reader phonetic) throws IOException {
         super(phonetic);
+        words = new WordTable(INITIAL_CAPACITY);
         createDictionary(new BufferedReader(wordList));
     }
-    
+
+    /**
+     * Dictionary constructor that reads the word list and its codes
+     * from an image written with <code>write</code>. The dictionary uses
+     * the contents of the buffer, which must not be changed afterwards.
+     * @param image The image, positioned at the start of the dictionary
+     * @throws IllegalArgumentException If the image is damaged
+     * @throws IOException If the phonetic transformation can't be set up
+     */
+    TexSpellDictionary(ByteBuffer image) throws IOException {
+        super((File) null);
+        words = new WordTable(image);
+        WordTable codes = new WordTable(image);
+        fingerprint = image.getLong();
+        int n = image.getInt();
+        if (n != codes.size() + 1) {
+            throw new IllegalArgumentException("Invalid dictionary image");
+        }
+        codeIndex = new CodeIndex(codes, WordTable.slice(image, n * 4).asIntBuffer(),
+                WordTable.slice(image, words.size() * 4).asIntBuffer());
+    }
+
+    /**
+     * Writes the word list and its codes, so that they can be read with
+     * <code>TexSpellDictionary(ByteBuffer)</code>. The added words are
+     * not written.
+     * @param out The stream
+     * @throws IOException If writing fails
+     */
+    void write(DataOutputStream out) throws IOException {
+        CodeIndex index = getCodeIndex();
+        words.write(out);
+        index.codes.write(out);
+        out.writeLong(fingerprint);
+        out.writeInt(index.start.capacity());
+        for (int i = 0; i < index.start.capacity(); i++) {
+            out.writeInt(index.start.get(i));
+        }
+        for (int i = 0; i < index.words.capacity(); i++) {
+            out.writeInt(index.words.get(i));
+        }
+    }
+
     /**
      * Add words from a file to existing dictionary hashmap.
      * This function can be called as many times as needed to
@@ -101,9 +199,8 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
 
     /**
      * Add a word permanently to the dictionary (and the dictionary file).
-     * <p>This needs to be made thread safe (synchronized)</p>
      */
-    public void addWord(String word) {
+    public synchronized void addWord(String word) {
         putWordUnique(word);
         if (dictFile == null) return;
         try {
@@ -124,17 +221,22 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      * Constructs the dictionary from a word list file.
      * <p>
      * Each word in the reader should be on a separate line.
-     * <p>
-     * This is a very slow function. On my machine it takes quite a while to
-     * load the data in. I suspect that we could speed this up quite allot.
      */
     protected void createDictionary(BufferedReader in) throws IOException {
-        String line;
-        while ((line = in.readLine()) != null) {
-            if (line.length() > 0) {
-                putWord(line.trim());
-            }
-        }
+        words.addAll(in);
+        compress();
+        fingerprint = words.fingerprint();
+    }
+
+    /**
+     * Returns a fingerprint of the word list, which changes when the
+     * word list changes. The added words are not included, so results
+     * computed with one fingerprint stay valid after adding words, except
+     * for the errors that are now correct words.
+     * @return The fingerprint
+     */
+    public long getFingerprint() {
+        return fingerprint;
     }
 
     /**
@@ -142,21 +244,17 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      * already exists in the dictionary, a new entry is not added.
      * <p>
      * Each word in the reader should be on a separate line.
-     * <p>
-     * Note: for whatever reason that I haven't yet looked into, the phonetic codes
-     * for a particular word map to a vector of words rather than a hash table.
-     * This is a drag since in order to check for duplicates you have to iterate
-     * through all the words that use the phonetic code.
-     * If the vector-based implementation is important, it may be better
-     * to subclass for the cases where duplicates are bad.
      */
     public void addDictionaryHelper(BufferedReader in) throws IOException {
+        List<String> list = new ArrayList<String>();
         String line;
         while ((line = in.readLine()) != null) {
+            line = line.trim();
             if (line.length() > 0) {
-                putWordUnique(line.trim());
+                list.add(line);
             }
         }
+        addWords(list);
     }
 
     /**
@@ -164,67 +262,127 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      * @param word The word to add
      */
     protected void putWord(String word) {
-        int code = getCode(word).hashCode();
-        StringBuilder words = mainDictionary.get(code);
-        if (words != null) {
-            words.append(word);
-            words.append(SEP_CHAR);
-        } else {
-            words = new StringBuilder();
-            words.append(SEP_CHAR);
-            words.append(word);
-            words.append(SEP_CHAR);
-            mainDictionary.put(code, words);
-        }
+        putWordUnique(word);
     }
 
     /**
-     * Allocates a word, if it is not already present in the dictionary. A word
-     * with a different case is considered the same.
+     * Allocates a word, if it is not already present in the dictionary.
      * @param word The word to add
      */
     protected void putWordUnique(String word) {
+        addWords(Collections.singletonList(word));
+    }
 
-        int code = getCode(word).hashCode();
-        StringBuilder words = mainDictionary.get(code);
-
-        if (words != null) {
-            if (words.indexOf(SEP_CHAR + word + SEP_CHAR) == -1) {
-                words.append(word);
-                words.append(SEP_CHAR);            
+    /**
+     * Adds the words that are not already present in the dictionary. The
+     * added words are copied, so that threads using the old ones are
+     * not disturbed.
+     * @param list The words to add
+     */
+    private synchronized void addWords(List<String> list) {
+        Additions old = additions;
+        WordTable t = null;
+        Map<String, List<String>> c = null;
+        for (String word : list) {
+            if (words.indexOf(word, false) >= 0 || old.words.indexOf(word, false) >= 0
+                    || (t != null && t.indexOf(word, false) >= 0)) {
+                continue;
+            }
+            if (t == null) {
+                t = new WordTable(old.words.size() + list.size());
+                for (int id = 0; id < old.words.size(); id++) {
+                    t.add(old.words.get(id));
+                }
+                c = new HashMap<String, List<String>>();
+                for (Map.Entry<String, List<String>> e : old.codes.entrySet()) {
+                    c.put(e.getKey(), new ArrayList<String>(e.getValue()));
+                }
             }
-            //else the word is already in the dictionary
+            t.add(word);
+            String code = getCode(word);
+            List<String> l = c.get(code);
+            if (l == null) {
+                l = new ArrayList<String>(1);
+                c.put(code, l);
+            }
+            l.add(word);
         }
-        else {
-            words = new StringBuilder();
-            words.append(SEP_CHAR);
-            words.append(word);
-            words.append(SEP_CHAR);
-            mainDictionary.put(code, words);
+        if (t != null) {
+            t.trimToSize();
+            additions = new Additions(t, c);
         }
     }
 
     /**
      * Compresses the dictionary so that it takes less memory
      */
-    public void compress() {
-        Collection<StringBuilder> c = mainDictionary.values();
-        for (StringBuilder st : c) {
-            st.trimToSize();
+    public synchronized void compress() {
+        words.trimToSize();
+    }
+
+    /**
+     * Returns the words of the word list grouped by their phonetic codes,
+     * computing the codes if this hasn't been done yet.
+     */
+    private CodeIndex getCodeIndex() {
+        CodeIndex index = codeIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = codeIndex;
+                if (index == null) {
+                    index = indexCodes();
+                    codeIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Computes the phonetic codes of the word list and groups the words
+     * by them.
+     */
+    private CodeIndex indexCodes() {
+        int size = words.size();
+        int[] wordCode = new int[size];
+        WordTable c = new WordTable(size / 2);
+        for (int id = 0; id < size; id++) {
+            wordCode[id] = c.add(getCode(words.get(id)));
+        }
+        c.trimToSize();
+        int[] start = new int[c.size() + 1];
+        for (int id = 0; id < size; id++) {
+            start[wordCode[id] + 1]++;
+        }
+        for (int i = 0; i < c.size(); i++) {
+            start[i + 1] += start[i];
+        }
+        int[] fill = new int[c.size()];
+        int[] w = new int[size];
+        for (int id = 0; id < size; id++) {
+            int code = wordCode[id];
+            w[start[code] + fill[code]++] = id;
         }
+        return new CodeIndex(c, IntBuffer.wrap(start), IntBuffer.wrap(w));
     }
-    
+
     /**
      * Returns a list of strings (words) for the code.
      */
     @Override
     public List<String> getWords(String code) {
-        //Check the main dictionary.
-        StringBuilder mainDictResult = mainDictionary.get(code.hashCode());
-        if (mainDictResult == null) return new ArrayList<String>(1);
-        StringTokenizer stk = new StringTokenizer(mainDictResult.toString(), ""+SEP_CHAR);
+        CodeIndex index = getCodeIndex();
         List<String> list = new ArrayList<String>(1);
-        while (stk.hasMoreTokens()) list.add(stk.nextToken());
+        int i = index.codes.indexOf(code, false);
+        if (i >= 0) {
+            for (int j = index.start.get(i); j < index.start.get(i + 1); j++) {
+                list.add(words.get(index.words.get(j)));
+            }
+        }
+        List<String> added = additions.codes.get(code);
+        if (added != null) {
+            list.addAll(added);
+        }
         return list;
     }
 
@@ -233,13 +391,11 @@ public class TexSpellDictionary extends SpellDictionaryASpell {
      */
     @Override
     public boolean isCorrect(String word) {
-        StringBuilder words = mainDictionary.get(getCode(word).hashCode());
-        if (words == null) return false;
-        if (words.indexOf(SEP_CHAR + word + SEP_CHAR) >= 0) return true;
+        WordTable added = additions.words;
+        if (words.indexOf(word, false) >= 0 || added.indexOf(word, false) >= 0) return true;
         //JMH should we always try the lowercase version. If I dont then capitalised
         //words are always returned as incorrect.
-        if (words.indexOf(SEP_CHAR + word.toLowerCase() + SEP_CHAR) >= 0) return true;
-        return false;
+        return words.indexOf(word, true) >= 0 || added.indexOf(word, true) >= 0;
     }
 
 }
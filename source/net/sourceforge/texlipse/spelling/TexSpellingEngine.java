@@ -9,17 +9,11 @@
  */
 package net.sourceforge.texlipse.spelling;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
 import java.text.MessageFormat;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
 import net.sourceforge.texlipse.editor.TeXSpellingReconcileStrategy.TeXSpellingProblemCollector;
@@ -47,17 +41,15 @@ import org.eclipse.ui.texteditor.spelling.SpellingProblem;
 
 import com.swabunga.spell.engine.Word;
 import com.swabunga.spell.event.SpellCheckEvent;
-import com.swabunga.spell.event.SpellCheckListener;
-import com.swabunga.spell.event.SpellChecker;
-import com.swabunga.spell.event.StringWordTokenizer;
 
 /**
  * The default spelling engine for LaTeX files. Uses Jazzy for spell
- * checking.
+ * checking through the <code>TexSpellingService</code>, so several
+ * documents can be checked at the same time.
  * @author Boris von Loesch
  *
  */
-public class TexSpellingEngine implements ISpellingEngine, SpellCheckListener {
+public class TexSpellingEngine implements ISpellingEngine {
 
     public static class TexSpellingProblem extends SpellingProblem {
         
@@ -94,7 +86,7 @@ public class TexSpellingEngine implements ISpellingEngine, SpellCheckListener {
                 props[i] = new CompletionProposal(suggestion, 
                         fOffset, length, suggestion.length(), fCorrectionImage, s, null, null);
             }
-            props[props.length - 2] = new IgnoreProposal(ignore, fError.getInvalidWord(), context.getSourceViewer());
+            props[props.length - 2] = new IgnoreProposal(TexSpellingService.getInstance().getIgnoredWords(), fError.getInvalidWord(), context.getSourceViewer());
             props[props.length - 1] = new AddToDictProposal(fError, fLang, context.getSourceViewer());
             return props;
         }
@@ -126,70 +118,12 @@ public class TexSpellingEngine implements ISpellingEngine, SpellCheckListener {
     
     private final static String DEFAULT_DICT_PATH = "/dict/";
     private final static String DEFAULT_LANG = "en";
-    
-    private static SpellChecker spellCheck;
-    private static TexSpellDictionary dict;
-    private static String currentLang;
-    private static Set<String> ignore;
-    
-    private List<SpellCheckEvent> errors;
-    
-    /**
-     * Returns a SpellChecker that checks the language of the current project
-     * @param project
-     * @return null, if no dictionary for the current language was found
-     */
-    private static SpellChecker getSpellChecker(String lang) {
-        //Return null, when no language is set
-        if (lang == null) return null;
-        
-        if (lang.equals(currentLang)) return spellCheck;
-                
-        //Get dictionary path from preferences and check if it exists
-        String dictPathSt = TexlipsePlugin.getPreference(TexlipseProperties.SPELLCHECKER_DICT_DIR);
-        if (dictPathSt == null || "".equals(dictPathSt.trim())) return null;
-        File dictPath = new File(dictPathSt);
-        if (!dictPath.exists() || !dictPath.isDirectory()) return null;
-
-        File f = new File(dictPath.getAbsolutePath() + File.separator + lang + ".dict");
-        if (!f.exists() || !f.canRead()) return null;
-        
-        //Set spellCheck to null to allow the GC to trash the current dictionary
-        spellCheck = null;
-        dict = null;
-        currentLang = lang;
 
-        try {
-            FileInputStream input = new FileInputStream(f);
-            Reader r = new BufferedReader(new InputStreamReader(input, "UTF-8"));
-            dict = new TexSpellDictionary(r);
-            r.close();
-
-            String customDictPath = TexlipsePlugin.getPreference(TexlipseProperties.SPELLCHECKER_CUSTOM_DICT_DIR);
-            if (customDictPath != null && !"".equals(customDictPath.trim())) {
-                dict.setUserDict(new File (customDictPath + File.separator + lang + "_user.dict"));
-            }
-            spellCheck = new SpellChecker(dict);
-            return spellCheck;
-        } catch (IOException e) {
-            TexlipsePlugin.log("Error while loading dictionary", e);
-        }
-        return null;
-    }
-    
     /**
-     * <p>Returns the dictionary for that language, or the default dictionary if no
-     * exists.</p> 
-     * <p><b>Beware:</b> Only use local references for the dictionary, otherwise
-     * it can not be trashed by the GC and we get memory problems.
-     * @param lang Language of the file
-     * @return The dictionary
+     * The spelling caches of the documents outside of projects
      */
-    public static TexSpellDictionary getDict(String lang) {
-        getSpellChecker(lang);
-        return dict;
-    }
-    
+    private final static Map<IDocument, SpellingCache> documentCaches =
+        new WeakHashMap<IDocument, SpellingCache>();
     
     /**
      * Returns the project that belongs to the given document.
@@ -213,71 +147,47 @@ public class TexSpellingEngine implements ISpellingEngine, SpellCheckListener {
     public void check(IDocument document, IRegion[] regions, SpellingContext context, 
             ISpellingProblemCollector collector, IProgressMonitor monitor) {
         
-        if (ignore == null) {
-            ignore = new HashSet<String>();
-        }
-
         IProject project = getProject(document);
 
         String lang = DEFAULT_LANG;
+        SpellingCache cache;
         if (project != null) {
             lang = TexlipseProperties.getProjectProperty(project, TexlipseProperties.LANGUAGE_PROPERTY);
+            cache = SpellingCache.getCache(project);
+        } else {
+            synchronized (documentCaches) {
+                cache = documentCaches.get(document);
+                if (cache == null) {
+                    cache = new SpellingCache();
+                    documentCaches.put(document, cache);
+                }
+            }
         }
-        //Get spellchecker for the correct language
-        SpellChecker spellCheck = getSpellChecker(lang);
-        if (spellCheck == null) return;
         
         if (collector instanceof TeXSpellingProblemCollector) {
             ((TeXSpellingProblemCollector) collector).setRegions(regions);
         }
         
         try {
-            spellCheck.addSpellCheckListener(this);
-            for (final IRegion r : regions) {
-                errors = new LinkedList<SpellCheckEvent>();
-                int roffset = r.getOffset();
-                
-                //Create a new wordfinder and initialize it
-                TexlipseWordFinder wf = new TexlipseWordFinder();
-                wf.setIgnoreComments(TexlipsePlugin.getDefault().getPreferenceStore().getBoolean(TexlipseProperties.SPELLCHECKER_IGNORE_COMMENTS));
-                wf.setIgnoreMath(TexlipsePlugin.getDefault().getPreferenceStore().getBoolean(TexlipseProperties.SPELLCHECKER_IGNORE_MATH));
-                
-                spellCheck.checkSpelling(new StringWordTokenizer(
-                        document.get(roffset, r.getLength()), wf));
-                
-                for (SpellCheckEvent error : errors) {
+            List<String> texts = new ArrayList<String>(regions.length);
+            for (IRegion r : regions) {
+                texts.add(document.get(r.getOffset(), r.getLength()));
+            }
+            //Check the regions with the dictionary of the correct language
+            List<List<SpellCheckEvent>> errors = TexSpellingService.getInstance().check(lang, texts, cache);
+            if (errors == null) return;
+            
+            for (int i = 0; i < regions.length; i++) {
+                int roffset = regions[i].getOffset();
+                for (SpellCheckEvent error : errors.get(i)) {
                     SpellingProblem p = new TexSpellingProblem(error, roffset, lang);
                     collector.accept(p);
                 }
             }
-            spellCheck.removeSpellCheckListener(this);                
         } catch (BadLocationException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
-
-    /**
-     * Checks if the input string contains upper case letters after the first letter
-     * @param word
-     * @return
-     */
-    public static boolean isMixedCase(String word) {
-        for (int i = 1; i < word.length(); i++) {
-            if (Character.isUpperCase(word.charAt(i))) return true;
-        }
-        return false;
-    }
-    
-    public void spellingError(SpellCheckEvent event) {
-        String invWord = event.getInvalidWord();
-        if (invWord.length() < 3) return;
-        if (invWord.indexOf('_') > -1) return;
-        if (invWord.indexOf('^') > -1) return;
-        if (ignore.contains(invWord)) return;
-        if (TexlipsePlugin.getDefault().getPreferenceStore().getBoolean(TexlipseProperties.SPELLCHECKER_IGNORE_MIXED_CASE)) {
-            if (isMixedCase(invWord)) return;
-        }
-        
-        errors.add(event);
-      }
 }
@@ -0,0 +1,561 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.spelling;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.properties.TexlipseProperties;
+
+import org.eclipse.jface.preference.IPreferenceStore;
+
+import com.swabunga.spell.engine.Word;
+import com.swabunga.spell.event.SpellCheckEvent;
+import com.swabunga.spell.event.SpellCheckListener;
+import com.swabunga.spell.event.SpellChecker;
+import com.swabunga.spell.event.StringWordTokenizer;
+
+/**
+ * Checks the spelling of LaTeX text in several languages. The
+ * dictionaries of the last few languages stay loaded.
+ *
+ * The service can be used from several threads at once: the
+ * dictionaries are not changed by checking, each check borrows a Jazzy
+ * SpellChecker that no other check uses at the same time, and the errors of a check are collected by a
+ * listener of that check only. Loading the dictionary of one language
+ * doesn't block checking in other languages.
+ *
+ * Texts can be checked with a <code>SpellingCache</code>, so that only
+ * the paragraphs that have changed since the last check are checked.
+ */
+public final class TexSpellingService {
+
+    /**
+     * The number of languages whose dictionaries are kept in memory
+     */
+    private static final int CACHED_LANGUAGES = 3;
+
+    private static TexSpellingService theInstance;
+
+    // checks the paragraphs of large texts in parallel, created when it
+    // is needed the first time
+    private static ExecutorService executor;
+
+    /**
+     * The dictionary of a language, loaded when it is needed the first time
+     */
+    private static final class Language {
+        private final String lang;
+        private TexSpellDictionary dict;
+        private boolean loaded;
+        // a SpellChecker is not thread safe, so each check borrows one of
+        // these, they go away with the language
+        private final List<SpellChecker> idleCheckers = new ArrayList<SpellChecker>();
+
+        Language(String lang) {
+            this.lang = lang;
+        }
+
+        /**
+         * @return the dictionary, or null if no dictionary for the
+         *  language was found
+         */
+        synchronized TexSpellDictionary getDict() {
+            if (!loaded) {
+                dict = loadDict(lang);
+                loaded = true;
+            }
+            return dict;
+        }
+
+        /**
+         * @return a spell checker, which no other thread uses until it
+         *  is given back with <code>releaseChecker</code>
+         */
+        SpellChecker acquireChecker() {
+            synchronized (idleCheckers) {
+                if (!idleCheckers.isEmpty()) {
+                    return idleCheckers.remove(idleCheckers.size() - 1);
+                }
+            }
+            return new SpellChecker(getDict());
+        }
+
+        void releaseChecker(SpellChecker checker) {
+            synchronized (idleCheckers) {
+                idleCheckers.add(checker);
+            }
+        }
+    }
+
+    /**
+     * The options of a check, read from the preferences
+     */
+    private static final class Options {
+        private final boolean ignoreComments;
+        private final boolean ignoreMath;
+        private final boolean ignoreMixedCase;
+
+        Options() {
+            IPreferenceStore prefs = TexlipsePlugin.getDefault().getPreferenceStore();
+            ignoreComments = prefs.getBoolean(TexlipseProperties.SPELLCHECKER_IGNORE_COMMENTS);
+            ignoreMath = prefs.getBoolean(TexlipseProperties.SPELLCHECKER_IGNORE_MATH);
+            ignoreMixedCase = prefs.getBoolean(TexlipseProperties.SPELLCHECKER_IGNORE_MIXED_CASE);
+        }
+    }
+
+    /**
+     * Collects the errors of one check, before any of them are ignored
+     */
+    private static final class ErrorCollector implements SpellCheckListener {
+        private final List<SpellCheckEvent> errors = new ArrayList<SpellCheckEvent>();
+
+        public void spellingError(SpellCheckEvent event) {
+            errors.add(event);
+        }
+
+        @SuppressWarnings("unchecked")
+        SpellingCache.ParagraphErrors getErrors() {
+            int n = errors.size();
+            int[] offsets = new int[n];
+            String[] words = new String[n];
+            String[][] suggestions = new String[n][];
+            for (int i = 0; i < n; i++) {
+                SpellCheckEvent event = errors.get(i);
+                offsets[i] = event.getWordContextPosition();
+                words[i] = event.getInvalidWord();
+                List<Word> sugg = event.getSuggestions();
+                suggestions[i] = new String[sugg.size()];
+                for (int j = 0; j < suggestions[i].length; j++) {
+                    suggestions[i][j] = sugg.get(j).getWord();
+                }
+            }
+            return new SpellingCache.ParagraphErrors(offsets, words, suggestions);
+        }
+    }
+
+    /**
+     * A paragraph of a text, which is checked on its own
+     */
+    private static final class Paragraph {
+        private final String text;
+        private final int start;
+        private final int end;
+        private long key;
+        private SpellingCache.ParagraphErrors errors;
+
+        Paragraph(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * A spelling error, which can be created from a cached check
+     */
+    private static final class SpellingError implements SpellCheckEvent {
+        private final String word;
+        private final String[] suggestions;
+        private final int position;
+
+        SpellingError(String word, String[] suggestions, int position) {
+            this.word = word;
+            this.suggestions = suggestions;
+            this.position = position;
+        }
+
+        public List<Word> getSuggestions() {
+            List<Word> l = new ArrayList<Word>(suggestions.length);
+            for (String s : suggestions) {
+                l.add(new Word(s, 0));
+            }
+            return l;
+        }
+
+        public String getInvalidWord() {
+            return word;
+        }
+
+        public String getWordContext() {
+            return null;
+        }
+
+        public int getWordContextPosition() {
+            return position;
+        }
+
+        public short getAction() {
+            return INITIAL;
+        }
+
+        public String getReplaceWord() {
+            return null;
+        }
+
+        public void replaceWord(String newWord, boolean replaceAll) {
+        }
+
+        public void ignoreWord(boolean ignoreAll) {
+        }
+
+        public void addToDictionary(String newWord) {
+        }
+
+        public void cancel() {
+        }
+    }
+
+    /**
+     * The recently used languages, the least recently used first
+     */
+    private final Map<String, Language> languages =
+        new LinkedHashMap<String, Language>(CACHED_LANGUAGES + 1, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Language> eldest) {
+                return size() > CACHED_LANGUAGES;
+            }
+        };
+
+    /**
+     * The words ignored for the rest of the session
+     */
+    private final Set<String> ignore = Collections.synchronizedSet(new HashSet<String>());
+
+    private TexSpellingService() {
+    }
+
+    /**
+     * Returns the sole instance of the service
+     *
+     * @return The service
+     */
+    public static synchronized TexSpellingService getInstance() {
+        if (theInstance == null) {
+            theInstance = new TexSpellingService();
+        }
+        return theInstance;
+    }
+
+    /**
+     * Loads the dictionary of a language from the dictionary directory
+     * @param lang
+     * @return null, if no dictionary for the language was found
+     */
+    private static TexSpellDictionary loadDict(String lang) {
+        //Get dictionary path from preferences and check if it exists
+        String dictPathSt = TexlipsePlugin.getPreference(TexlipseProperties.SPELLCHECKER_DICT_DIR);
+        if (dictPathSt == null || "".equals(dictPathSt.trim())) return null;
+        File dictPath = new File(dictPathSt);
+        if (!dictPath.exists() || !dictPath.isDirectory()) return null;
+
+        File f = new File(dictPath.getAbsolutePath() + File.separator + lang + ".dict");
+        if (!f.exists() || !f.canRead()) return null;
+
+        try {
+            TexSpellDictionary dict = DictionaryImage.load(f);
+
+            String customDictPath = TexlipsePlugin.getPreference(TexlipseProperties.SPELLCHECKER_CUSTOM_DICT_DIR);
+            if (customDictPath != null && !"".equals(customDictPath.trim())) {
+                dict.setUserDict(new File (customDictPath + File.separator + lang + "_user.dict"));
+            }
+            return dict;
+        } catch (IOException e) {
+            TexlipsePlugin.log("Error while loading dictionary", e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the loaded dictionary of a language
+     * @param lang
+     * @return null, if no dictionary for the language was found
+     */
+    private Language getLanguage(String lang) {
+        //Return null, when no language is set
+        if (lang == null) return null;
+
+        Language l;
+        synchronized (languages) {
+            l = languages.get(lang);
+            if (l == null) {
+                l = new Language(lang);
+                languages.put(lang, l);
+            }
+        }
+        if (l.getDict() == null) {
+            // look again next time, the dictionary may be installed later
+            synchronized (languages) {
+                if (languages.get(lang) == l) {
+                    languages.remove(lang);
+                }
+            }
+            return null;
+        }
+        return l;
+    }
+
+    /**
+     * Returns the dictionary for the given language.
+     * @param lang Language of the file
+     * @return The dictionary, or null if no dictionary for the language
+     * was found
+     */
+    public TexSpellDictionary getDictionary(String lang) {
+        Language l = getLanguage(lang);
+        return l != null ? l.getDict() : null;
+    }
+
+    /**
+     * @return The set of the words ignored for the rest of the session.
+     * The set is synchronized.
+     */
+    public Set<String> getIgnoredWords() {
+        return ignore;
+    }
+
+    /**
+     * Checks the spelling of a text.
+     * @param lang The language of the text
+     * @param text The text
+     * @return The spelling errors, or null if no dictionary for the
+     * language was found
+     */
+    public List<SpellCheckEvent> check(String lang, String text) {
+        Language l = getLanguage(lang);
+        if (l == null) return null;
+        Options options = new Options();
+        List<SpellCheckEvent> errors = new ArrayList<SpellCheckEvent>();
+        addErrors(check(l, text, 0, text.length(), options), 0, l.getDict(), options, errors);
+        return errors;
+    }
+
+    /**
+     * Checks the spelling of several texts in parallel.
+     * @param lang The language of the texts
+     * @param texts The texts
+     * @return The spelling errors of each text in the order of the texts,
+     * or null if no dictionary for the language was found
+     * @throws InterruptedException If the thread is interrupted while waiting
+     * for the checks
+     */
+    public List<List<SpellCheckEvent>> check(String lang, List<String> texts) throws InterruptedException {
+        return check(lang, texts, null);
+    }
+
+    /**
+     * Checks the spelling of several texts in parallel. The texts are
+     * split into paragraphs at empty lines, and only the paragraphs whose
+     * errors are not in the cache are checked.
+     * @param lang The language of the texts
+     * @param texts The texts
+     * @param cache The cache of the errors of paragraphs, or null
+     * @return The spelling errors of each text in the order of the texts,
+     * or null if no dictionary for the language was found
+     * @throws InterruptedException If the thread is interrupted while waiting
+     * for the checks
+     */
+    public List<List<SpellCheckEvent>> check(String lang, List<String> texts, SpellingCache cache)
+            throws InterruptedException {
+        final Language l = getLanguage(lang);
+        if (l == null) return null;
+        final Options options = new Options();
+        TexSpellDictionary dict = l.getDict();
+
+        long seed = dict.getFingerprint() * 31 + lang.hashCode();
+        seed = seed * 4 + (options.ignoreComments ? 2 : 0) + (options.ignoreMath ? 1 : 0);
+
+        List<List<Paragraph>> paragraphs = new ArrayList<List<Paragraph>>(texts.size());
+        List<Paragraph> unchecked = new ArrayList<Paragraph>();
+        for (String text : texts) {
+            List<Paragraph> list = split(text);
+            for (Paragraph p : list) {
+                if (cache != null) {
+                    p.key = SpellingCache.key(text, p.start, p.end, seed);
+                    p.errors = cache.get(p.key);
+                }
+                if (p.errors == null) {
+                    unchecked.add(p);
+                }
+            }
+            paragraphs.add(list);
+        }
+
+        check(l, unchecked, options);
+        if (cache != null) {
+            for (Paragraph p : unchecked) {
+                if (p.errors != null) {
+                    cache.put(p.key, p.errors);
+                }
+            }
+        }
+
+        List<List<SpellCheckEvent>> results = new ArrayList<List<SpellCheckEvent>>(texts.size());
+        for (List<Paragraph> list : paragraphs) {
+            List<SpellCheckEvent> errors = new ArrayList<SpellCheckEvent>();
+            for (Paragraph p : list) {
+                if (p.errors != null) {
+                    addErrors(p.errors, p.start, dict, options, errors);
+                }
+            }
+            results.add(errors);
+        }
+        return results;
+    }
+
+    /**
+     * Splits a text into paragraphs, which end after an empty line. The
+     * paragraphs cover the whole text.
+     */
+    private static List<Paragraph> split(String text) {
+        List<Paragraph> paragraphs = new ArrayList<Paragraph>();
+        int length = text.length();
+        int start = 0;
+        int i = text.indexOf('\n');
+        while (i >= 0) {
+            int j = i + 1;
+            while (j < length && text.charAt(j) != '\n' && Character.isWhitespace(text.charAt(j))) {
+                j++;
+            }
+            if (j < length && text.charAt(j) == '\n') {
+                paragraphs.add(new Paragraph(text, start, j + 1));
+                start = j + 1;
+            }
+            i = text.indexOf('\n', j);
+        }
+        if (start < length || paragraphs.isEmpty()) {
+            paragraphs.add(new Paragraph(text, start, length));
+        }
+        return paragraphs;
+    }
+
+    /**
+     * Checks the paragraphs in parallel and sets their errors. The errors
+     * of a paragraph whose check failed stay null.
+     */
+    private void check(final Language l, List<Paragraph> paragraphs, final Options options)
+            throws InterruptedException {
+        if (paragraphs.size() <= 1 || Runtime.getRuntime().availableProcessors() <= 1) {
+            for (Paragraph p : paragraphs) {
+                p.errors = check(l, p.text, p.start, p.end, options);
+            }
+            return;
+        }
+        List<Future<SpellingCache.ParagraphErrors>> futures = new ArrayList<Future<SpellingCache.ParagraphErrors>>(paragraphs.size());
+        try {
+            for (final Paragraph p : paragraphs) {
+                futures.add(getExecutor().submit(new Callable<SpellingCache.ParagraphErrors>() {
+                    public SpellingCache.ParagraphErrors call() {
+                        return check(l, p.text, p.start, p.end, options);
+                    }
+                }));
+            }
+            for (int i = 0; i < paragraphs.size(); i++) {
+                try {
+                    paragraphs.get(i).errors = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    TexlipsePlugin.log("Error while checking spelling", e.getCause());
+                }
+            }
+        } finally {
+            // the checks of an interrupted reconcile are no longer needed
+            for (Future<SpellingCache.ParagraphErrors> f : futures) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "TeXlipse spell checker");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Checks the spelling of a part of a text.
+     * @return The errors before any of them are ignored, with offsets
+     * relative to the start index
+     */
+    private SpellingCache.ParagraphErrors check(Language l, String text, int start, int end, Options options) {
+        //Create a new wordfinder and initialize it
+        TexlipseWordFinder wf = new TexlipseWordFinder();
+        wf.setIgnoreComments(options.ignoreComments);
+        wf.setIgnoreMath(options.ignoreMath);
+
+        ErrorCollector collector = new ErrorCollector();
+        SpellChecker spellCheck = l.acquireChecker();
+        spellCheck.addSpellCheckListener(collector);
+        try {
+            spellCheck.checkSpelling(new StringWordTokenizer(text.substring(start, end), wf));
+        } finally {
+            spellCheck.removeSpellCheckListener(collector);
+            l.releaseChecker(spellCheck);
+        }
+        return collector.getErrors();
+    }
+
+    /**
+     * Adds the errors that are not ignored. Words which have been added
+     * to the dictionary after the check are not errors any more.
+     * @param checked The errors of a check
+     * @param offset The offset of the checked part of the text
+     * @param dict The dictionary
+     * @param options The options of the check
+     * @param errors The list to add the errors to
+     */
+    private void addErrors(SpellingCache.ParagraphErrors checked, int offset, TexSpellDictionary dict,
+            Options options, List<SpellCheckEvent> errors) {
+        for (int i = 0; i < checked.words.length; i++) {
+            String invWord = checked.words[i];
+            if (invWord.length() < 3) continue;
+            if (invWord.indexOf('_') > -1) continue;
+            if (invWord.indexOf('^') > -1) continue;
+            if (ignore.contains(invWord)) continue;
+            if (options.ignoreMixedCase && isMixedCase(invWord)) continue;
+            if (dict.isCorrect(invWord)) continue;
+            errors.add(new SpellingError(invWord, checked.suggestions[i], offset + checked.offsets[i]));
+        }
+    }
+
+    /**
+     * Checks if the input string contains upper case letters after the first letter
+     * @param word
+     * @return
+     */
+    public static boolean isMixedCase(String word) {
+        for (int i = 1; i < word.length(); i++) {
+            if (Character.isUpperCase(word.charAt(i))) return true;
+        }
+        return false;
+    }
+}
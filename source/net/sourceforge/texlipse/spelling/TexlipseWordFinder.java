@@ -1,6 +1,6 @@
 /*
  * $Id$
- * 
+ *
  * Copyright (c) 2010 by the TeXlapse Team.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
@@ -9,33 +9,83 @@
  */
 package net.sourceforge.texlipse.spelling;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import com.swabunga.spell.event.AbstractWordFinder;
 import com.swabunga.spell.event.Word;
 import com.swabunga.spell.event.WordNotFoundException;
 
 /**
- * Finds the non TeX words in a given text. Ignores arguments 
+ * Finds the non TeX words in a given text. Ignores arguments
  * of some special commands like \ref, \label, \begin,...
- * 
+ *
+ * The text is scanned once from left to right. The name of a command is
+ * looked up in a table of the commands whose arguments are ignored, and
+ * the arguments are skipped by counting braces. Math, i.e. $...$, $$...$$,
+ * \(...\), \[...\] and math environments like equation, is ignored if the
+ * closing delimiter is found. Inline and display math can't contain an
+ * empty line, so the closing delimiter is only looked for up to the end
+ * of the paragraph.
+ *
  * @author Boris von Loesch
  *
  */
 public class TexlipseWordFinder extends AbstractWordFinder {
 
-    private final static Pattern MAND_ARG = Pattern.compile("\\A\\s*\\{[^\\}]+\\}");
-    private final static Pattern OPT_MAND_ARG = Pattern.compile("\\A\\s*(\\[[^\\]]+\\])?\\s*\\{[^\\}]+\\}");
-    
-    private boolean IGNORE_COMMENTS = true;
-    private boolean IGNORE_MATH = true;
-    
+    /**
+     * The command has a mandatory argument
+     */
+    private final static int MAND_ARG = 0;
+    /**
+     * The command has an optional and a mandatory argument
+     */
+    private final static int OPT_MAND_ARG = 1;
+
+    /**
+     * The commands whose arguments are ignored, without the backslash
+     */
+    private final static String[] COMMANDS = {
+        "documentclass", "usepackage", "newcounter", "setcounter", "addtocounter",
+        "value", "arabic", "stepcounter", "newenvironment", "renewenvironment",
+        "ref", "vref", "eqref", "pageref", "label", "cite", "tag", "begin", "end"
+    };
+    private final static int[] COMMAND_ARGS = {
+        OPT_MAND_ARG, OPT_MAND_ARG, MAND_ARG, MAND_ARG, MAND_ARG,
+        MAND_ARG, MAND_ARG, MAND_ARG, MAND_ARG, MAND_ARG,
+        MAND_ARG, MAND_ARG, MAND_ARG, MAND_ARG, MAND_ARG, OPT_MAND_ARG, MAND_ARG, MAND_ARG, MAND_ARG
+    };
+
+    /**
+     * The environments whose contents are math
+     */
+    private final static String[] MATH_ENVIRONMENTS = {
+        "math", "displaymath", "equation", "equation*", "eqnarray", "eqnarray*",
+        "align", "align*", "alignat", "alignat*", "flalign", "flalign*",
+        "gather", "gather*", "multline", "multline*"
+    };
+
+    private final static WordTable COMMAND_TABLE = new WordTable(COMMANDS.length);
+    private final static WordTable MATH_TABLE = new WordTable(MATH_ENVIRONMENTS.length);
+    private final static int BEGIN;
+
+    static {
+        for (String command : COMMANDS) {
+            COMMAND_TABLE.add(command);
+        }
+        for (String env : MATH_ENVIRONMENTS) {
+            MATH_TABLE.add(env);
+        }
+        BEGIN = COMMAND_TABLE.indexOf("begin", false);
+    }
+
+    // inverted, so that comments and math are ignored already while the
+    // super class constructor finds the first word
+    private boolean checkComments;
+    private boolean checkMath;
+
 
     public TexlipseWordFinder(String st) {
         super(st);
     }
-    
+
     public TexlipseWordFinder() {
         super();
     }
@@ -56,76 +106,28 @@ public class TexlipseWordFinder extends AbstractWordFinder {
         currentWord.copy(nextWord);
         setSentenceIterator(currentWord);
 
-
+        int length = text.length();
         int i = currentWord.getEnd();
-        boolean finished = false;
-        boolean started = false;
-
-        while (i < text.length() && !finished) {
-
-            if (!started && isWordChar(i)) {
-                nextWord.setStart(i++);
-                started = true;
-                continue;
-            } else if (started) {
-                if (isWordChar(i)) {
-                    i++;
-                    continue;
-                } else {
-                    nextWord.setText(text.substring(nextWord.getStart(), i));
-                    finished = true;
-                    break;
-                }
-            } 
-
-            // Ignores should be in order of importance and then specificity.
-            int j = i;
-            if (IGNORE_COMMENTS) j = ignore(j, '%', '\n');
+        int start = -1;
 
-            if (IGNORE_MATH) {
-                //FIXME: Is not working correctly when parsing just a single line
-                //j = ignore(j, '$', '$');
-            }
-
-            if (j < text.length() && text.charAt(j) == '\\') { 
-                // Ignore certain command parameters.
-                j = ignore(j, "\\documentclass", OPT_MAND_ARG);
-                j = ignore(j, "\\usepackage", OPT_MAND_ARG);
-                j = ignore(j, "\\newcounter", MAND_ARG);
-                j = ignore(j, "\\setcounter", MAND_ARG);
-                j = ignore(j, "\\addtocounter", MAND_ARG);
-                j = ignore(j, "\\value", MAND_ARG);
-                j = ignore(j, "\\arabic", MAND_ARG);
-                j = ignore(j, "\\stepcounter", MAND_ARG);
-                j = ignore(j, "\\newenvironment", MAND_ARG);
-                j = ignore(j, "\\renewenvironment", MAND_ARG);
-                j = ignore(j, "\\ref", MAND_ARG);
-                j = ignore(j, "\\vref", MAND_ARG);
-                j = ignore(j, "\\eqref", MAND_ARG);
-                j = ignore(j, "\\pageref", MAND_ARG);
-                j = ignore(j, "\\label", MAND_ARG);
-                j = ignore(j, "\\cite", OPT_MAND_ARG);
-                j = ignore(j, "\\tag", MAND_ARG);
-
-                // Ignore environment names.
-                j = ignore(j, "\\begin", MAND_ARG);
-                j = ignore(j, "\\end", MAND_ARG);        
-
-                // Ignore commands.
-                j = ignore(j, '\\');
-            }
-            
-            if (i != j){
-                i = j;
-                continue;
+        while (i < length) {
+            if (isWordChar(i)) {
+                if (start < 0) {
+                    start = i;
+                }
+                i++;
+            } else if (start >= 0) {
+                break;
+            } else {
+                i = skip(i);
             }
-            i++;
         }
 
-        if (!started) {
+        if (start < 0) {
             nextWord = null;
-        } else if (!finished) {
-            nextWord.setText(text.substring(nextWord.getStart(), i));
+        } else {
+            nextWord.setStart(start);
+            nextWord.setText(text.substring(start, i));
         }
 
         return currentWord;
@@ -136,32 +138,194 @@ public class TexlipseWordFinder extends AbstractWordFinder {
      * @param ignore an indication if comments content is to be ignored
      */
     public void setIgnoreComments(boolean ignore) {
-        IGNORE_COMMENTS = ignore;
+        checkComments = !ignore;
     }
 
     public void setIgnoreMath(boolean ignore) {
-        IGNORE_MATH = ignore;
+        checkMath = !ignore;
     }
-    
+
+    /**
+     * Skips the character at the given index, or the comment, command
+     * or math starting there.
+     * @param index
+     * @return The index after the skipped text
+     */
+    private int skip(int index) {
+        switch (text.charAt(index)) {
+        case '%':
+            if (!checkComments) {
+                int end = text.indexOf('\n', index);
+                return end < 0 ? text.length() : end + 1;
+            }
+            break;
+        case '$':
+            if (!checkMath) {
+                if (index + 1 < text.length() && text.charAt(index + 1) == '$') {
+                    return skipMath(index + 2, "$$");
+                }
+                return skipMath(index + 1, "$");
+            }
+            break;
+        case '\\':
+            return skipCommand(index);
+        }
+        return index + 1;
+    }
+
     /**
-     * Ignores a command string
-     * @param index 
-     * @param command The command with leading backslash
-     * @param p Regexp pattern for the command arguments
-     * @return new index
+     * Skips a command and the ignored arguments of it
+     * @param index The index of the backslash
+     * @return The index after the skipped text
      */
-    public int ignore(int index, String command, Pattern p) {
-        int i = 0;
-        //Is this the right command
-        while (i < command.length()) {
-            if (index + i >= text.length()) return index;
-            if (command.charAt(i) != text.charAt(i + index)) return index;
+    private int skipCommand(int index) {
+        int length = text.length();
+        int end = index + 1;
+        if (end >= length) {
+            return end;
+        }
+        char c = text.charAt(end);
+        if (!Character.isLetter(c)) {
+            // a control symbol like \$ or \%
+            if (!checkMath && c == '(') {
+                return skipMath(end + 1, "\\)");
+            }
+            if (!checkMath && c == '[') {
+                return skipMath(end + 1, "\\]");
+            }
+            return end + 1;
+        }
+        while (end < length && Character.isLetter(text.charAt(end))) {
+            end++;
+        }
+
+        int command = COMMAND_TABLE.indexOf(text, index + 1, end, false);
+        if (command < 0) {
+            return end;
+        }
+        int argStart = end;
+        if (COMMAND_ARGS[command] == OPT_MAND_ARG) {
+            int optEnd = skipArgument(argStart, '[', ']');
+            if (optEnd > 0) {
+                argStart = optEnd;
+            }
+        }
+        int argEnd = skipArgument(argStart, '{', '}');
+        if (argEnd < 0) {
+            return end;
+        }
+
+        if (command == BEGIN && !checkMath) {
+            int nameStart = text.indexOf('{', argStart) + 1;
+            int nameEnd = argEnd - 1;
+            if (MATH_TABLE.indexOf(text, nameStart, nameEnd, false) >= 0) {
+                int envEnd = findEnd(argEnd, nameStart, nameEnd);
+                return envEnd < 0 ? length : envEnd;
+            }
+        }
+        return argEnd;
+    }
+
+    /**
+     * Skips an argument in brackets or braces. Nested braces are counted,
+     * and an optional argument ends at the first closing bracket outside
+     * of braces.
+     * @param index The index after the command or the previous argument
+     * @param open The opening bracket or brace
+     * @param close The closing bracket or brace
+     * @return The index after the argument, or -1 if there is no complete
+     * argument at the index
+     */
+    private int skipArgument(int index, char open, char close) {
+        int length = text.length();
+        int i = index;
+        while (i < length && Character.isWhitespace(text.charAt(i))) {
             i++;
         }
-        i = i + index;
-        Matcher m = p.matcher(text.substring(i));
-        if (m.find()) 
-            return i + m.end() - 1;
-        return index;
+        if (i >= length || text.charAt(i) != open) {
+            return -1;
+        }
+        int depth = 0;
+        for (i++; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == close && depth == 0) {
+                return i + 1;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    // a brace closing an outer group
+                    return -1;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the \end command of an environment
+     * @param index The index after the \begin command
+     * @param nameStart The start index of the environment name
+     * @param nameEnd The end index of the environment name
+     * @return The index after the \end command, or -1 if there is none
+     */
+    private int findEnd(int index, int nameStart, int nameEnd) {
+        int nameLength = nameEnd - nameStart;
+        int i = index;
+        while ((i = text.indexOf("\\end", i)) >= 0) {
+            i += 4;
+            int j = i;
+            while (j < text.length() && Character.isWhitespace(text.charAt(j))) {
+                j++;
+            }
+            if (j < text.length() && text.charAt(j) == '{'
+                    && text.regionMatches(j + 1, text, nameStart, nameLength)
+                    && j + 1 + nameLength < text.length()
+                    && text.charAt(j + 1 + nameLength) == '}') {
+                return j + 2 + nameLength;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips math up to the closing delimiter
+     * @param start The index after the opening delimiter
+     * @param close The closing delimiter
+     * @return The index after the closing delimiter, or the start index
+     * if the math is not closed in the same paragraph
+     */
+    private int skipMath(int start, String close) {
+        int length = text.length();
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (text.startsWith(close, i)) {
+                return i + close.length();
+            } else if (c == '\\') {
+                i++;
+            } else if (c == '\n' && isParagraphEnd(i)) {
+                break;
+            }
+        }
+        return start;
+    }
+
+    /**
+     * @param index The index of a line break
+     * @return true, if the line break is followed by an empty line
+     */
+    private boolean isParagraphEnd(int index) {
+        for (int i = index + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                return true;
+            } else if (!Character.isWhitespace(c)) {
+                return false;
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,406 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.spelling;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A set of words, each of which has an id. The characters of all words
+ * are stored one after another in a single array and the words are found
+ * through an open addressing hash table of their ids, so a word takes
+ * little more memory than its characters and looking up a word doesn't
+ * create any objects.
+ *
+ * A table can be written to a stream and read back from a byte buffer
+ * without copying, e.g. from a memory mapped file. Such a table is read
+ * only.
+ */
+final class WordTable {
+
+    private static final int INITIAL_WORDS = 1024;
+    private static final int AVERAGE_LENGTH = 10;
+
+    // the characters of the words
+    private CharBuffer chars;
+    private int charCount;
+    // word i is chars[offsets[i]..offsets[i + 1]]
+    private IntBuffer offsets;
+    private int size;
+    // the ids of the words plus one by their hash codes, 0 is an empty slot
+    private IntBuffer table;
+    private final boolean readOnly;
+
+    WordTable() {
+        this(INITIAL_WORDS);
+    }
+
+    /**
+     * @param expectedSize The number of words the table is expected to hold
+     */
+    WordTable(int expectedSize) {
+        int capacity = Math.max(expectedSize, 16);
+        chars = CharBuffer.wrap(new char[capacity * AVERAGE_LENGTH]);
+        offsets = IntBuffer.wrap(new int[capacity + 1]);
+        table = IntBuffer.wrap(new int[tableSize(capacity)]);
+        readOnly = false;
+    }
+
+    /**
+     * Reads a table written with <code>write</code>. The table uses the
+     * contents of the buffer, which must not be changed afterwards.
+     *
+     * @param in The buffer, positioned at the start of the table. The
+     *  position is moved to the end of the table.
+     * @throws IllegalArgumentException If the buffer doesn't contain a
+     *  valid table
+     */
+    WordTable(ByteBuffer in) {
+        size = in.getInt();
+        charCount = in.getInt();
+        int tableLength = in.getInt();
+        if (size < 0 || charCount < 0 || tableLength < 16
+                || Integer.bitCount(tableLength) != 1 || size * 2 > tableLength) {
+            throw new IllegalArgumentException("Invalid word table");
+        }
+        offsets = slice(in, (size + 1) * 4).asIntBuffer();
+        table = slice(in, tableLength * 4).asIntBuffer();
+        chars = slice(in, (charCount + 1) / 2 * 4).asCharBuffer();
+        readOnly = true;
+    }
+
+    /**
+     * @return A read only buffer of the next bytes of the given buffer
+     * @throws IllegalArgumentException If the buffer is too short
+     */
+    static ByteBuffer slice(ByteBuffer in, int length) {
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Invalid word table");
+        }
+        ByteBuffer b = in.slice();
+        b.limit(length);
+        in.position(in.position() + length);
+        return b.asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the table, so that it can be read with
+     * <code>WordTable(ByteBuffer)</code>. The length of the table is
+     * a multiple of four bytes.
+     *
+     * @param out The stream
+     * @throws IOException If writing fails
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(charCount);
+        out.writeInt(table.capacity());
+        for (int i = 0; i <= size; i++) {
+            out.writeInt(offsets.get(i));
+        }
+        for (int i = 0; i < table.capacity(); i++) {
+            out.writeInt(table.get(i));
+        }
+        for (int i = 0; i < charCount; i++) {
+            out.writeChar(chars.get(i));
+        }
+        if (charCount % 2 != 0) {
+            out.writeChar(0);
+        }
+    }
+
+    /**
+     * @return The size of a hash table which is at most half full with
+     *  the given number of words
+     */
+    private static int tableSize(int words) {
+        int n = 16;
+        while (n < words * 2) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * @return The number of words
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a word, if it is not in the table.
+     *
+     * @param s An array containing the word
+     * @param start The start index of the word
+     * @param length The length of the word
+     * @return The id of the word
+     * @throws UnsupportedOperationException If the table is read only
+     */
+    int add(char[] s, int start, int length) {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Read only word table");
+        }
+        int mask = table.capacity() - 1;
+        int i = hash(s, start, length, false) & mask;
+        int id;
+        while ((id = table.get(i)) != 0) {
+            if (equals(id - 1, s, start, length, false)) {
+                return id - 1;
+            }
+            i = (i + 1) & mask;
+        }
+        if (charCount + length > chars.capacity()) {
+            chars = CharBuffer.wrap(grow(chars.array(), charCount + length));
+        }
+        if (size + 2 > offsets.capacity()) {
+            offsets = IntBuffer.wrap(grow(offsets.array(), size + 2));
+        }
+        System.arraycopy(s, start, chars.array(), charCount, length);
+        charCount += length;
+        id = size++;
+        offsets.put(size, charCount);
+        table.put(i, id + 1);
+        if (size * 2 > table.capacity()) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Adds a word, if it is not in the table.
+     *
+     * @param word The word
+     * @return The id of the word
+     */
+    int add(String word) {
+        return add(word.toCharArray(), 0, word.length());
+    }
+
+    /**
+     * Adds the words of a word list, which has one word on each line.
+     * Whitespace around the words and empty lines are skipped.
+     *
+     * @param in The word list
+     * @throws IOException If the word list can't be read
+     */
+    void addAll(Reader in) throws IOException {
+        char[] buffer = new char[8192];
+        char[] line = new char[64];
+        int length = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                char c = buffer[i];
+                if (c == '\n' || c == '\r') {
+                    addTrimmed(line, length);
+                    length = 0;
+                } else {
+                    if (length == line.length) {
+                        line = grow(line, length + 1);
+                    }
+                    line[length++] = c;
+                }
+            }
+        }
+        addTrimmed(line, length);
+    }
+
+    private void addTrimmed(char[] line, int length) {
+        int start = 0;
+        while (start < length && line[start] <= ' ') {
+            start++;
+        }
+        while (length > start && line[length - 1] <= ' ') {
+            length--;
+        }
+        if (length > start) {
+            add(line, start, length - start);
+        }
+    }
+
+    /**
+     * Finds a word.
+     *
+     * @param word The word
+     * @param lowerCase true, if the word is looked up in lower case
+     * @return The id of the word, or -1 if it is not in the table
+     */
+    int indexOf(CharSequence word, boolean lowerCase) {
+        return indexOf(word, 0, word.length(), lowerCase);
+    }
+
+    /**
+     * Finds a word, which is a part of a longer text.
+     *
+     * @param s The text
+     * @param start The start index of the word in the text
+     * @param end The end index of the word in the text
+     * @param lowerCase true, if the word is looked up in lower case
+     * @return The id of the word, or -1 if it is not in the table
+     */
+    int indexOf(CharSequence s, int start, int end, boolean lowerCase) {
+        int length = end - start;
+        IntBuffer t = table;
+        int m = t.capacity() - 1;
+        int i = hash(s, start, length, lowerCase) & m;
+        int id;
+        while ((id = t.get(i)) != 0) {
+            if (equals(id - 1, s, start, length, lowerCase)) {
+                return id - 1;
+            }
+            i = (i + 1) & m;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id The id of a word
+     * @return The word
+     */
+    String get(int id) {
+        int start = offsets.get(id);
+        char[] c = new char[offsets.get(id + 1) - start];
+        for (int i = 0; i < c.length; i++) {
+            c[i] = chars.get(start + i);
+        }
+        return new String(c);
+    }
+
+    /**
+     * Computes a 64-bit FNV-1a hash of the words in the order of their
+     * ids, which identifies the contents of the table.
+     *
+     * @return The fingerprint
+     */
+    long fingerprint() {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < charCount; i++) {
+            h = (h ^ chars.get(i)) * 0x100000001b3L;
+        }
+        for (int i = 1; i <= size; i++) {
+            h = (h ^ offsets.get(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Releases the memory reserved for words that haven't been added.
+     */
+    void trimToSize() {
+        if (readOnly) {
+            return;
+        }
+        if (chars.capacity() > charCount) {
+            char[] c = new char[charCount];
+            System.arraycopy(chars.array(), 0, c, 0, charCount);
+            chars = CharBuffer.wrap(c);
+        }
+        if (offsets.capacity() > size + 1) {
+            int[] o = new int[size + 1];
+            System.arraycopy(offsets.array(), 0, o, 0, size + 1);
+            offsets = IntBuffer.wrap(o);
+        }
+    }
+
+    private void rehash() {
+        int[] t = new int[table.capacity() * 2];
+        int m = t.length - 1;
+        char[] c = chars.array();
+        for (int id = 0; id < size; id++) {
+            int start = offsets.get(id);
+            int i = hash(c, start, offsets.get(id + 1) - start, false) & m;
+            while (t[i] != 0) {
+                i = (i + 1) & m;
+            }
+            t[i] = id + 1;
+        }
+        table = IntBuffer.wrap(t);
+    }
+
+    private boolean equals(int id, char[] s, int start, int length, boolean lowerCase) {
+        int offset = offsets.get(id);
+        if (offsets.get(id + 1) - offset != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s[start + i];
+            if (lowerCase) {
+                c = Character.toLowerCase(c);
+            }
+            if (chars.get(offset + i) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equals(int id, CharSequence s, int start, int length, boolean lowerCase) {
+        int offset = offsets.get(id);
+        if (offsets.get(id + 1) - offset != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(start + i);
+            if (lowerCase) {
+                c = Character.toLowerCase(c);
+            }
+            if (chars.get(offset + i) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(char[] s, int start, int length, boolean lowerCase) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s[start + i];
+            h = 31 * h + (lowerCase ? Character.toLowerCase(c) : c);
+        }
+        return mix(h);
+    }
+
+    private static int hash(CharSequence s, int start, int length, boolean lowerCase) {
+        int h = 0;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(start + i);
+            h = 31 * h + (lowerCase ? Character.toLowerCase(c) : c);
+        }
+        return mix(h);
+    }
+
+    /**
+     * Spreads the bits of a hash code, so that the low bits used for the
+     * table index depend on all characters.
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static char[] grow(char[] a, int min) {
+        char[] b = new char[Math.max(a.length * 2, min)];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+
+    private static int[] grow(int[] a, int min) {
+        int[] b = new int[Math.max(a.length * 2, min)];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+}
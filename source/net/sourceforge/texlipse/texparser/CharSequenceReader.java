@@ -0,0 +1,142 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser;
+
+import java.io.PushbackReader;
+import java.io.Reader;
+
+/**
+ * Lexer input reading directly from a <code>CharSequence</code>. The
+ * generated lexers read and push back one character at a time, which
+ * a <code>PushbackReader</code> over a <code>StringReader</code> does
+ * with synchronized calls and an extra copy of the input. This reader
+ * only moves an index over the sequence instead.
+ *
+ * The reader is not thread-safe and the sequence must not change while
+ * it is read.
+ */
+public class CharSequenceReader extends PushbackReader {
+
+    /**
+     * The reader the superclass gets, never read from
+     */
+    private static final Reader EMPTY = new Reader() {
+        public int read(char[] cbuf, int off, int len) {
+            return -1;
+        }
+        public void close() {
+        }
+    };
+
+    private final CharSequence input;
+    private final int start;
+    private final int end;
+    private int index;
+
+    /**
+     * Characters pushed back that differ from the input, last one on top
+     */
+    private char[] pushback;
+    private int pushed;
+
+    /**
+     * Creates a reader for the whole sequence.
+     *
+     * @param input The characters to read
+     */
+    public CharSequenceReader(CharSequence input) {
+        this(input, 0, input.length());
+    }
+
+    /**
+     * Creates a reader for a part of the sequence.
+     *
+     * @param input The characters to read
+     * @param start The index of the first character to read
+     * @param end The index after the last character to read
+     */
+    public CharSequenceReader(CharSequence input, int start, int end) {
+        super(EMPTY, 1);
+        if (start < 0 || end > input.length() || start > end) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.input = input;
+        this.start = start;
+        this.end = end;
+        this.index = start;
+    }
+
+    public int read() {
+        if (pushed > 0) {
+            return pushback[--pushed];
+        }
+        if (index < end) {
+            return input.charAt(index++);
+        }
+        return -1;
+    }
+
+    public int read(char[] cbuf, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        while (n < len) {
+            int c = read();
+            if (c == -1) {
+                break;
+            }
+            cbuf[off + n++] = (char) c;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    public void unread(int c) {
+        // the lexers push back what they just read, so normally this
+        // only moves the index back
+        if (pushed == 0 && index > start && input.charAt(index - 1) == (char) c) {
+            index--;
+            return;
+        }
+        if (pushback == null) {
+            pushback = new char[16];
+        } else if (pushed == pushback.length) {
+            char[] tmp = new char[pushed * 2];
+            System.arraycopy(pushback, 0, tmp, 0, pushed);
+            pushback = tmp;
+        }
+        pushback[pushed++] = (char) c;
+    }
+
+    public void unread(char[] cbuf, int off, int len) {
+        for (int i = off + len - 1; i >= off; i--) {
+            unread(cbuf[i]);
+        }
+    }
+
+    public void unread(char[] cbuf) {
+        unread(cbuf, 0, cbuf.length);
+    }
+
+    public long skip(long n) {
+        long skipped = 0;
+        while (skipped < n && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    public boolean ready() {
+        return true;
+    }
+
+    public void close() {
+    }
+}
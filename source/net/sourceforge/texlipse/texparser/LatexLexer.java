@@ -67,6 +67,15 @@ public class LatexLexer extends Lexer {
         commandDef = false;
     }
     
+    /**
+     * Creates a new lexer reading directly from the given characters.
+     * 
+     * @param input The characters to tokenize
+     */
+    public LatexLexer(CharSequence input) {
+        this(new CharSequenceReader(input));
+    }
+    
     /**
      * We define a filter that recognizes braced strings and verbatims
      */
@@ -16,6 +16,7 @@ import java.util.List;
 import java.util.regex.Pattern;
 
 import net.sourceforge.texlipse.TexlipsePlugin;
+import net.sourceforge.texlipse.model.AbstractEntry;
 import net.sourceforge.texlipse.model.DocumentReference;
 import net.sourceforge.texlipse.model.OutlineNode;
 import net.sourceforge.texlipse.model.ParseErrorMessage;
@@ -78,6 +79,13 @@ public class LatexParser {
             return (size == 0);
         }
         
+        /**
+         * @return The number of items in the stack
+         */
+        public int size() {
+            return size;
+        }
+        
         /**
          * @return The item at the top of the stack
          */
@@ -150,6 +158,9 @@ public class LatexParser {
     private boolean index;
     private boolean fatalErrors;
     
+    private HashMap<String, Integer> sectioning;
+    private List<Integer> regionBarriers;
+    
     /**
      * Initializes the internal datastructures that are exported after parsing.
      */
@@ -171,6 +182,9 @@ public class LatexParser {
         this.localBib = false;
         this.index = false;
         this.fatalErrors = false;
+        
+        this.sectioning = new HashMap<String, Integer>();
+        this.regionBarriers = new ArrayList<Integer>();
     }
 
     /**
@@ -192,6 +206,7 @@ public class LatexParser {
                 level,
                 startLine,
                 null);
+        regionBarriers.add(startLine);
 
         if (!blocks.empty()) {
             boolean traversing = true;
@@ -334,9 +349,54 @@ public class LatexParser {
             final boolean checkForMissingSections)
     throws LexerException, IOException {
         initializeDatastructs();
+        parseTokens(lexer, preamble, checkForMissingSections);
+    }
+
+    /**
+     * Parses a region of a document whose full parse results are held by
+     * <code>base</code>. The commands defined in the document are made known
+     * to the lexer and the parser before parsing, so that the region is
+     * tokenized as it would be in a full parse.
+     * 
+     * @param lexer The lexer to use for extracting the region tokens
+     * @param base The parser holding the results of the full parse
+     * @param parent A stand-in for the sectioning node enclosing the region,
+     * null if the region is an environment or has no enclosing node
+     * @param checkForMissingSections
+     * @throws LexerException If the given lexer cannot tokenize the region
+     * @throws IOException If the region is unreadable
+     */
+    public void parseRegion(final LatexLexer lexer,
+            final LatexParser base,
+            final OutlineNode parent,
+            final boolean checkForMissingSections)
+    throws LexerException, IOException {
+        initializeDatastructs();
+        sectioning.putAll(base.sectioning);
+        for (TexCommandEntry command : base.commands) {
+            lexer.registerCommand(command.key);
+        }
+        parseTokens(lexer, parent, checkForMissingSections);
+    }
+
+    /**
+     * Does the actual parsing for <code>parse</code> and
+     * <code>parseRegion</code>.
+     * 
+     * @param lexer The lexer to use for extracting the document tokens
+     * @param preamble The outermost node of the outline, null if there is none
+     * @param checkForMissingSections
+     * @throws LexerException If the given lexer cannot tokenize the document
+     * @throws IOException If the document is unreadable
+     */
+    private void parseTokens(final LatexLexer lexer,
+            final OutlineNode preamble,
+            final boolean checkForMissingSections)
+    throws LexerException, IOException {
         StackUnsynch<OutlineNode> blocks = new StackUnsynch<OutlineNode>();
         StackUnsynch<OutlineNode> envBlocks = new StackUnsynch<OutlineNode>();
         StackUnsynch<Token> braces = new StackUnsynch<Token>();
+        StackUnsynch<Integer> envBraces = new StackUnsynch<Integer>();
         
         boolean expectArg = false;
         boolean expectArg2 = false;
@@ -348,8 +408,6 @@ public class LatexParser {
         int argCount = 0;
         int nodeType;
         
-        HashMap<String, Integer> sectioning = new HashMap<String, Integer>();
-        
         if (preamble != null) {
             outlineTree.add(preamble);
             blocks.push(preamble);
@@ -361,11 +419,15 @@ public class LatexParser {
         
         
         int accumulatedLength = 0;
+        TokenIndex tokenIndex = new TokenIndex();
+        int prevKind = TokenIndex.OTHER;
         Token t = lexer.next();
-        for (; !(t instanceof EOF); t = lexer.next()) { 
+        int kind = tokenIndex.index(t);
+        for (; kind != TokenIndex.EOF; t = lexer.next(), kind = tokenIndex.index(t)) {
             if (expectArg) {
-                if (t instanceof TArgument) {
-                    if (prevToken instanceof TClabel) {
+                if (kind == TokenIndex.ARGUMENT) {
+                    switch (prevKind) {
+                    case TokenIndex.LABEL: {
                         //this.labels.add(new ReferenceEntry(t.getText()));
                         ReferenceEntry l = new ReferenceEntry(t.getText());
                         l.setPosition(t.getPos(), t.getText().length());
@@ -386,13 +448,15 @@ public class LatexParser {
                         } else {
                             outlineTree.add(on);
                         }
-                        
-                    } else if (prevToken instanceof TCref) {
+                        break;
+                    }
+                    case TokenIndex.REF:
                         this.refs.add(new DocumentReference(t.getText(),
                                 t.getLine(),
                                 t.getPos(),
                                 t.getText().length()));
-                    } else if (prevToken instanceof TCcite) {
+                        break;
+                    case TokenIndex.CITE:
                         if (!"*".equals(t.getText())) {
                             String[] cs = t.getText().split(",");
                             for (String c : cs) {
@@ -401,8 +465,8 @@ public class LatexParser {
                                 		t.getLine(), t.getPos(), t.getText().length()));								
 							}
                         }
-                        
-                    } else if (prevToken instanceof TCbegin) { // \begin{...}
+                        break;
+                    case TokenIndex.BEGIN: { // \begin{...}
                         OutlineNode on = new OutlineNode(t.getText(),
                                 OutlineNode.TYPE_ENVIRONMENT,
                                 t.getLine(), prevToken.getPos(),
@@ -412,6 +476,7 @@ public class LatexParser {
                             if (preamble != null) preamble.setEndLine(t.getLine());
                             blocks.clear();
                             documentEnv = on;
+                            regionBarriers.add(t.getLine());
                         } else {
                             if (!blocks.empty()) {
                                 OutlineNode prev = blocks.peek();
@@ -422,15 +487,18 @@ public class LatexParser {
                             }
                             blocks.push(on);
                             envBlocks.push(on);
+                            envBraces.push(braces.size());
                         }
-                        
-                    } else if (prevToken instanceof TCend) { // \end{...}
+                        break;
+                    }
+                    case TokenIndex.END: { // \end{...}
                         int endLine = t.getLine();
                         OutlineNode prev = null;
 
                         // check if the document ends
                         if ("document".equals(t.getText())) {
                             documentEnv.setEndLine(endLine + 1);
+                            regionBarriers.add(endLine);
                             
                             // terminate open blocks here; check for errors
                             while (!blocks.empty()) {
@@ -450,6 +518,10 @@ public class LatexParser {
                             if (!envBlocks.empty()) {
                                 prev = envBlocks.pop();
                                 prev.setEndLine(endLine + 1);
+                                if (envBraces.pop() != braces.size()) {
+                                    // braces are not balanced inside the environment
+                                    regionBarriers.add(prev.getBeginLine());
+                                }
                                 if (!prev.getName().equals(t.getText())) {
                                     fatalErrors = true;
                                     errors.add(new ParseErrorMessage(prev.getBeginLine(),
@@ -476,16 +548,21 @@ public class LatexParser {
                                         IMarker.SEVERITY_ERROR));
                             }
                         }
-                    } else if (prevToken instanceof TCpart) {
+                        break;
+                    }
+                    case TokenIndex.PART:
                         addSectionNode(blocks, envBlocks, prevToken.getLine(),
                                 OutlineNode.TYPE_PART, t.getText());                        
-                    } else if (prevToken instanceof TCchapter) {
+                        break;
+                    case TokenIndex.CHAPTER:
                         addSectionNode(blocks, envBlocks, prevToken.getLine(),
                                 OutlineNode.TYPE_CHAPTER, t.getText());
-                    } else if (prevToken instanceof TCsection) {
+                        break;
+                    case TokenIndex.SECTION:
                         addSectionNode(blocks, envBlocks, prevToken.getLine(),
                                 OutlineNode.TYPE_SECTION, t.getText());
-                    } else if (prevToken instanceof TCssection) {
+                        break;
+                    case TokenIndex.SSECTION:
                         boolean foundSection = addSectionNode(blocks, envBlocks,
                                 prevToken.getLine(), OutlineNode.TYPE_SUBSECTION, t.getText())
                                 >= OutlineNode.TYPE_SECTION;
@@ -497,7 +574,8 @@ public class LatexParser {
                                     "Subsection " + prevToken.getText() + " has no preceding section",
                                     IMarker.SEVERITY_WARNING));
                         }
-                    } else if (prevToken instanceof TCsssection) {
+                        break;
+                    case TokenIndex.SSSECTION:
                         boolean foundSsection = addSectionNode(blocks, envBlocks,
                                 prevToken.getLine(), OutlineNode.TYPE_SUBSUBSECTION, t.getText())
                                 >= OutlineNode.TYPE_SUBSECTION;
@@ -509,7 +587,8 @@ public class LatexParser {
                                     "Subsubsection " + prevToken.getText() + " has no preceding subsection",
                                     IMarker.SEVERITY_WARNING));
                         }
-                    } else if (prevToken instanceof TCparagraph) {
+                        break;
+                    case TokenIndex.PARAGRAPH:
                         boolean foundSssection = addSectionNode(blocks, envBlocks,
                                 prevToken.getLine(), OutlineNode.TYPE_PARAGRAPH, t.getText())
                                 >= OutlineNode.TYPE_SUBSUBSECTION;
@@ -521,7 +600,9 @@ public class LatexParser {
                                     "Paragraph " + prevToken.getText() + " has no preceding subsubsection",
                                     IMarker.SEVERITY_WARNING));
                         }
-                    } else if (prevToken instanceof TCbib) {
+                        break;
+                    case TokenIndex.BIB:
+                        regionBarriers.add(prevToken.getLine());
                         if (biblatexMode) {
                             bibs.add(t.getText().trim());
                         }
@@ -540,9 +621,11 @@ public class LatexParser {
                                 prev.setEndLine(startLine);
                             }
                         }
-                    } else if (prevToken instanceof TCbibstyle) {
+                        break;
+                    case TokenIndex.BIBSTYLE: {
                         this.bibstyle = t.getText();
                         int startLine = prevToken.getLine();
+                        regionBarriers.add(startLine);
                         while (!blocks.empty()) {
                             OutlineNode prev = blocks.pop();
                             if (prev.getType() == OutlineNode.TYPE_ENVIRONMENT) { // this is an error...
@@ -551,9 +634,12 @@ public class LatexParser {
                             }
                             prev.setEndLine(startLine);
                         }
-                    } else if (prevToken instanceof TCinput
-                            || prevToken instanceof TCinclude) {
+                        break;
+                    }
+                    case TokenIndex.INPUT:
+                    case TokenIndex.INCLUDE:
                         //inputs.add(t.getText());
+                        regionBarriers.add(t.getLine());
                         if (!blocks.empty()) {
                             OutlineNode prev = blocks.peek();
                             OutlineNode on = new OutlineNode(t.getText(), OutlineNode.TYPE_INPUT, t.getLine(), prev);
@@ -566,15 +652,17 @@ public class LatexParser {
                             outlineTree.add(on);
                             inputs.add(on);
                         }
-                        
-                    
-                    } else if (prevToken instanceof TCnew) {
+                        break;
+                    case TokenIndex.NEW:
                         //currentCommand = new CommandEntry(t.getText().substring(1));
                         currentCommand = new TexCommandEntry(t.getText().substring(1), "", 0);
                         currentCommand.startLine = t.getLine();
                         lexer.registerCommand(currentCommand.key);
+                        regionBarriers.add(t.getLine());
                         expectArg2 = true;
-                    } else if (prevToken instanceof TCpackage) {
+                        break;
+                    case TokenIndex.PACKAGE:
+                        regionBarriers.add(t.getLine());
                         if (t.getText().equals("biblatex")) {
                             biblatexMode = true;
                             if (packageOptions != null) {
@@ -583,6 +671,9 @@ public class LatexParser {
                                 packageOptions = null;
                             }
                         }
+                        break;
+                    default:
+                        break;
                     }
                     
                     // reset state to normal scanning
@@ -590,45 +681,51 @@ public class LatexParser {
                     prevToken = null;
                     expectArg = false;
                     
-                } else if ((t instanceof TCword) && (prevToken instanceof TCnew)) {
+                } else if (kind == TokenIndex.CWORD && prevKind == TokenIndex.NEW) {
                     // this handles the \newcommand\comx{...} -format
                     //currentCommand = new CommandEntry(t.getText().substring(1));
                     currentCommand = new TexCommandEntry(t.getText().substring(1), "", 0);
                     currentCommand.startLine = t.getLine();
                     lexer.registerCommand(currentCommand.key);
+                    regionBarriers.add(t.getLine());
                     expectArg2 = true;
                     accumulatedLength = 0;
                     prevToken = null;
                     expectArg = false;
 
-                } else if (t instanceof TOptargument) {
-                    if (prevToken instanceof TCpackage) {
-                        packageOptions = t.getText();
-                    }
-                    accumulatedLength += t.getText().length();
-                } else if (!(t instanceof TWhitespace)
-                        && !(t instanceof TStar)
-                        && !(t instanceof TCommentline)
-                        && !(t instanceof TTaskcomment)) {
-                    
-                    // if we didn't get the mandatory argument we were expecting...
-                    //fatalErrors = true;
-                    errors.add(new ParseErrorMessage(prevToken.getLine(),
-                            prevToken.getPos(),
-                            prevToken.getText().length() + accumulatedLength + t.getText().length(),
-                            "No argument following " + prevToken.getText(),
-                            IMarker.SEVERITY_WARNING));
-                    
-                    accumulatedLength = 0;
-                    prevToken = null;
-                    expectArg = false;
                 } else {
-                    accumulatedLength += t.getText().length();
+                    switch (kind) {
+                    case TokenIndex.OPTARGUMENT:
+                        if (prevKind == TokenIndex.PACKAGE) {
+                            packageOptions = t.getText();
+                        }
+                        accumulatedLength += t.getText().length();
+                        break;
+                    case TokenIndex.WHITESPACE:
+                    case TokenIndex.STAR:
+                    case TokenIndex.COMMENTLINE:
+                    case TokenIndex.TASKCOMMENT:
+                        accumulatedLength += t.getText().length();
+                        break;
+                    default:
+                        // if we didn't get the mandatory argument we were expecting...
+                        //fatalErrors = true;
+                        errors.add(new ParseErrorMessage(prevToken.getLine(),
+                                prevToken.getPos(),
+                                prevToken.getText().length() + accumulatedLength + t.getText().length(),
+                                "No argument following " + prevToken.getText(),
+                                IMarker.SEVERITY_WARNING));
+                        
+                        accumulatedLength = 0;
+                        prevToken = null;
+                        expectArg = false;
+                        break;
+                    }
                 }
             } else if (expectArg2) {
                 // we are capturing the second argument of a command with two arguments
                 // the only one of those that interests us is newcommand
-                if (t instanceof TArgument) {
+                if (kind == TokenIndex.ARGUMENT) {
                     currentCommand.info = t.getText();
                     commands.add(currentCommand);
                     if (PART_RE.matcher(currentCommand.info).find())
@@ -654,7 +751,7 @@ public class LatexParser {
 
                     argCount = 0;
                     expectArg2 = false;
-                } else if (t instanceof TOptargument) {
+                } else if (kind == TokenIndex.OPTARGUMENT) {
                     if (argCount == 0) {
                         try {
                             currentCommand.arguments = Integer.parseInt(t.getText());
@@ -668,8 +765,8 @@ public class LatexParser {
                         }
                     }
                     argCount++;
-                } else if (!(t instanceof TWhitespace) && !(t instanceof TCommentline)
-                        && !(t instanceof TTaskcomment)) {
+                } else if (kind != TokenIndex.WHITESPACE && kind != TokenIndex.COMMENTLINE
+                        && kind != TokenIndex.TASKCOMMENT) {
                     // if we didn't get the mandatory argument we were expecting...
                     errors.add(new ParseErrorMessage(t.getLine(), t.getPos(), t.getText().length(),
                             "No 2nd argument following newcommand",
@@ -678,52 +775,77 @@ public class LatexParser {
                     expectArg2 = false;
                 }
             } else {
-                if (t instanceof TClabel || t instanceof TCref || t instanceof TCcite
-                        || t instanceof TCbib || t instanceof TCbibstyle 
-                        || t instanceof TCbegin || t instanceof TCend 
-                        || t instanceof TCinput || t instanceof TCinclude
-                        || t instanceof TCpart || t instanceof TCchapter 
-                        || t instanceof TCsection || t instanceof TCssection 
-                        || t instanceof TCsssection || t instanceof TCparagraph
-                        || t instanceof TCpackage || t instanceof TCnew) {
+                switch (kind) {
+                case TokenIndex.LABEL:
+                case TokenIndex.REF:
+                case TokenIndex.CITE:
+                case TokenIndex.BIB:
+                case TokenIndex.BIBSTYLE:
+                case TokenIndex.BEGIN:
+                case TokenIndex.END:
+                case TokenIndex.INPUT:
+                case TokenIndex.INCLUDE:
+                case TokenIndex.PART:
+                case TokenIndex.CHAPTER:
+                case TokenIndex.SECTION:
+                case TokenIndex.SSECTION:
+                case TokenIndex.SSSECTION:
+                case TokenIndex.PARAGRAPH:
+                case TokenIndex.PACKAGE:
+                case TokenIndex.NEW:
                     prevToken = t;
+                    prevKind = kind;
                     expectArg = true;
-                } else if (t instanceof TCword) {
+                    break;
+                case TokenIndex.CWORD:
                     // macros (\newcommand) show up as TCword when used, so we need
                     // to check (for each word!) whether it happens to be a command
-                    if (sectioning.containsKey(t.getText())) {
-                        nodeType = sectioning.get(t.getText());
+                    Integer sectionType = sectioning.get(t.getText());
+                    if (sectionType != null) {
+                        nodeType = sectionType;
                         switch (nodeType) {
                         case OutlineNode.TYPE_PART:
                             prevToken = new TCpart(t.getLine(), t.getPos());
+                            prevKind = TokenIndex.PART;
                             break;
                         case OutlineNode.TYPE_CHAPTER:
                             prevToken = new TCchapter(t.getLine(), t.getPos());
+                            prevKind = TokenIndex.CHAPTER;
                             break;
                         case OutlineNode.TYPE_SECTION:
                             prevToken = new TCsection(t.getLine(), t.getPos());
+                            prevKind = TokenIndex.SECTION;
                             break;
                         case OutlineNode.TYPE_SUBSECTION:
                             prevToken = new TCssection(t.getLine(), t.getPos());
+                            prevKind = TokenIndex.SSECTION;
                             break;
                         case OutlineNode.TYPE_SUBSUBSECTION:
                             prevToken = new TCsssection(t.getLine(), t.getPos());
+                            prevKind = TokenIndex.SSSECTION;
                             break;
                         case OutlineNode.TYPE_PARAGRAPH:
                             prevToken = new TCparagraph(t.getLine(), t.getPos());
+                            prevKind = TokenIndex.PARAGRAPH;
                             break;
                         case LatexParser.TYPE_LABEL:
                             prevToken = new TClabel(t.getLine(), t.getPos());
+                            prevKind = TokenIndex.LABEL;
                             break;
                         default:
+                            prevKind = TokenIndex.OTHER;
                             break;
                         }
                         expectArg = true;
                     }
-                } else if (t instanceof TCpindex) {
+                    break;
+                case TokenIndex.PINDEX:
                     this.index = true;
-                } else if (t instanceof TCpbib) {
+                    regionBarriers.add(t.getLine());
+                    break;
+                case TokenIndex.PBIB: {
                     int startLine = t.getLine();
+                    regionBarriers.add(startLine);
                     while (!blocks.empty()) {
                         OutlineNode prev = blocks.pop();
                         if (prev.getType() == OutlineNode.TYPE_ENVIRONMENT) { // this is an error...
@@ -733,7 +855,9 @@ public class LatexParser {
                         prev.setEndLine(startLine);
                     }
                     this.localBib = true;
-                } else if (t instanceof TTaskcomment) {
+                    break;
+                }
+                case TokenIndex.TASKCOMMENT: {
                     int severity = IMarker.PRIORITY_HIGH;
                     int start = t.getText().indexOf("FIXME");
                     if (start == -1) {
@@ -745,7 +869,9 @@ public class LatexParser {
                     }
                     String taskText = t.getText().substring(start).trim();                    
                     tasks.add(new ParseErrorMessage(t.getLine(), t.getPos(), taskText.length(), taskText, severity));
-                } else if (t instanceof TVtext) {
+                    break;
+                }
+                case TokenIndex.VTEXT: {
                     // Fold
                     OutlineNode on = new OutlineNode(t.getText(),
                             OutlineNode.TYPE_ENVIRONMENT,
@@ -763,13 +889,18 @@ public class LatexParser {
                     } else {
                         outlineTree.add(on);
                     }
+                    break;
+                }
+                default:
+                    break;
                 }
             }
-            if (t instanceof TLBrace) {
+            if (kind == TokenIndex.LBRACE) {
                 braces.push(t);
-            } else if (t instanceof TRBrace) {
+            } else if (kind == TokenIndex.RBRACE) {
                 if (braces.empty()) {
                     //There is an opening brace missing
+                    regionBarriers.add(t.getLine());
                     errors.add(new ParseErrorMessage(t.getLine(), t.getPos()-1, 1, 
                             TexlipsePlugin.getResourceString("parseErrorMissingLBrace"),
                             IMarker.SEVERITY_ERROR));
@@ -782,6 +913,7 @@ public class LatexParser {
         //Check for missing closing braces
         while (!braces.empty()) {
             Token mt = (Token) braces.pop();
+            regionBarriers.add(mt.getLine());
             errors.add(new ParseErrorMessage(mt.getLine(), mt.getPos() - 1, 1, 
                     TexlipsePlugin.getResourceString("parseErrorMissingRBrace"),
                     IMarker.SEVERITY_ERROR));
@@ -793,6 +925,8 @@ public class LatexParser {
             prev.setEndLine(endLine);
             if (prev.getType() == OutlineNode.TYPE_ENVIRONMENT) {
                 envBlocks.pop();
+                // the environment might end after the parsed region
+                regionBarriers.add(prev.getBeginLine());
             }
         }
         while (!envBlocks.empty()) {
@@ -807,6 +941,179 @@ public class LatexParser {
         }
     }
     
+    /**
+     * Counts the commands on the lines <code>fromLine</code> to
+     * <code>toLine</code> (exclusive) that prevent these lines from being
+     * reparsed in isolation, i.e. commands whose effect reaches outside of
+     * their enclosing node (sectioning, bibliography, package, input and
+     * command definition commands, the document environment and unbalanced
+     * braces).
+     * 
+     * @param fromLine The first line
+     * @param toLine The line after the last line
+     * @return The number of such commands
+     */
+    int countRegionBarriers(int fromLine, int toLine) {
+        int count = 0;
+        for (int line : regionBarriers) {
+            if (line >= fromLine && line < toLine) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Replaces the results of the outline node <code>oldNode</code> with
+     * the results of a region parse done with <code>region</code>, and
+     * moves the results following the node by the change in the number
+     * of lines of the node.
+     * 
+     * @param region The parser holding the results of the region, in
+     * line numbers relative to the beginning of the region
+     * @param newNode The node replacing <code>oldNode</code>, taken from the
+     * outline tree of <code>region</code>
+     * @param oldNode The node of this parser's outline tree to replace
+     * @param newEndLine The line (exclusive) where the region ends after
+     * the change
+     * @return True if the results were updated, false if the node could
+     * not be found from the outline tree (nothing is changed then)
+     */
+    boolean spliceRegion(final LatexParser region, final OutlineNode newNode,
+            final OutlineNode oldNode, final int newEndLine) {
+        OutlineNode parent = oldNode.getParent();
+        List<OutlineNode> siblings = parent != null ? parent.getChildren() : outlineTree;
+        int index = siblings.indexOf(oldNode);
+        if (index == -1) {
+            return false;
+        }
+        int beginLine = oldNode.getBeginLine();
+        int endLine = oldNode.getEndLine();
+        int lineDelta = newEndLine - endLine;
+        
+        // move the region results to document lines, then everything after the region
+        newNode.setParent(null);
+        shiftLines(newNode, 0, beginLine - 1, null);
+        newNode.setEndLine(newEndLine);
+        for (OutlineNode on : outlineTree) {
+            shiftLines(on, endLine, lineDelta, oldNode);
+        }
+        if (documentEnv != null) {
+            shiftLines(documentEnv, endLine, lineDelta, documentEnv);
+        }
+        siblings.set(index, newNode);
+        newNode.setParent(parent);
+        
+        this.labels = spliceEntries(labels, region.labels, beginLine, endLine, lineDelta);
+        this.cites = spliceEntries(cites, region.cites, beginLine, endLine, lineDelta);
+        this.refs = spliceEntries(refs, region.refs, beginLine, endLine, lineDelta);
+        this.errors = spliceMessages(errors, region.errors, beginLine, endLine, lineDelta);
+        this.tasks = spliceMessages(tasks, region.tasks, beginLine, endLine, lineDelta);
+        
+        List<Integer> barriers = new ArrayList<Integer>(regionBarriers.size());
+        for (int line : regionBarriers) {
+            barriers.add(line < endLine ? line : line + lineDelta);
+        }
+        this.regionBarriers = barriers;
+        
+        // the label info shows the surrounding lines, so it is outdated near the region
+        for (ReferenceEntry label : labels) {
+            if (label.startLine >= beginLine - 3 && label.startLine < newEndLine + 3) {
+                label.info = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Moves the lines of the given node and its children by
+     * <code>lineDelta</code> if they are at or after <code>fromLine</code>.
+     * 
+     * @param node The node to move
+     * @param fromLine The first line to move
+     * @param lineDelta The number of lines to move
+     * @param skip A subtree that is not moved, or null
+     */
+    private static void shiftLines(OutlineNode node, int fromLine, int lineDelta,
+            OutlineNode skip) {
+        if (node == skip) {
+            return;
+        }
+        if (node.getBeginLine() >= fromLine) {
+            node.setBeginLine(node.getBeginLine() + lineDelta);
+        }
+        if (node.getEndLine() >= fromLine) {
+            node.setEndLine(node.getEndLine() + lineDelta);
+        }
+        if (node.hasChildren()) {
+            for (OutlineNode child : node.getChildren()) {
+                shiftLines(child, fromLine, lineDelta, skip);
+            }
+        }
+    }
+
+    /**
+     * Replaces the entries on the lines <code>beginLine</code> to
+     * <code>endLine</code> (exclusive) with the region entries and moves
+     * the entries after the region by <code>lineDelta</code> lines.
+     * 
+     * @param entries The entries of the document
+     * @param regionEntries The entries of the region, relative to the region
+     * @param beginLine The first line of the region
+     * @param endLine The line after the region before the change
+     * @param lineDelta The change in the number of lines of the region
+     * @return The spliced entries, in document order
+     */
+    private static <E extends AbstractEntry> List<E> spliceEntries(List<E> entries,
+            List<E> regionEntries, int beginLine, int endLine, int lineDelta) {
+        List<E> result = new ArrayList<E>(entries.size() + regionEntries.size());
+        int i = 0;
+        for (; i < entries.size() && entries.get(i).startLine < beginLine; i++) {
+            result.add(entries.get(i));
+        }
+        for (E entry : regionEntries) {
+            entry.startLine += beginLine - 1;
+            result.add(entry);
+        }
+        for (; i < entries.size(); i++) {
+            E entry = entries.get(i);
+            if (entry.startLine >= endLine) {
+                entry.startLine += lineDelta;
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the messages on the lines <code>beginLine</code> to
+     * <code>endLine</code> (exclusive) with the region messages and moves
+     * the messages after the region by <code>lineDelta</code> lines.
+     * 
+     * @param messages The messages of the document
+     * @param regionMessages The messages of the region, relative to the region
+     * @param beginLine The first line of the region
+     * @param endLine The line after the region before the change
+     * @param lineDelta The change in the number of lines of the region
+     * @return The spliced messages
+     */
+    private static List<ParseErrorMessage> spliceMessages(List<ParseErrorMessage> messages,
+            List<ParseErrorMessage> regionMessages, int beginLine, int endLine, int lineDelta) {
+        List<ParseErrorMessage> result = new ArrayList<ParseErrorMessage>(messages.size()
+                + regionMessages.size());
+        for (ParseErrorMessage msg : messages) {
+            if (msg.getLine() < beginLine) {
+                result.add(msg);
+            } else if (msg.getLine() >= endLine) {
+                result.add(msg.moveLines(lineDelta));
+            }
+        }
+        for (ParseErrorMessage msg : regionMessages) {
+            result.add(msg.moveLines(beginLine - 1));
+        }
+        return result;
+    }
+    
     /**
      * @return The labels defined in this document
      */
@@ -9,8 +9,6 @@
 package net.sourceforge.texlipse.texparser;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -118,7 +116,7 @@ public class LatexRefExtractingParser {
      */
     public void parse(String input) throws IOException {
         this.extractPreamble(input);
-        LatexLexer lexer = new LatexLexer(new PushbackReader(new StringReader(input), 4096));
+        LatexLexer lexer = new LatexLexer(input);
         boolean expectArg = false;
         boolean expectArg2 = false;
         Token prevToken = null;
@@ -9,8 +9,6 @@
 package net.sourceforge.texlipse.texparser;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 
 import net.sourceforge.texlipse.texparser.lexer.LexerException;
 import net.sourceforge.texlipse.texparser.node.EOF;
@@ -58,7 +56,7 @@ public class LatexWordCounter {
      */
     public int countWords() {
         try {
-            LatexLexer lexer = new LatexLexer(new PushbackReader(new StringReader(selection), 4096));
+            LatexLexer lexer = new LatexLexer(selection);
 
             int words = 0;
             boolean expectArg = false;
@@ -9,8 +9,6 @@
 package net.sourceforge.texlipse.texparser;
 
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,8 +20,10 @@ import net.sourceforge.texlipse.model.TexCommandEntry;
 import net.sourceforge.texlipse.texparser.lexer.LexerException;
 
 import org.eclipse.core.resources.IMarker;
+import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Position;
 
 
 
@@ -56,23 +56,21 @@ public class TexParser {
 
     
     /**
-     * Removes trailing whitespace from the document. This is needed since
-     * the lexer and Eclipse have a different view of how the positions in
-     * the trailing whitespace work out, so it's best to just remove it.
+     * Finds the length of the document without trailing whitespace. The
+     * trailing whitespace isn't lexed since the lexer and Eclipse have a
+     * different view of how the positions in the trailing whitespace work
+     * out, so it's best to just leave it out.
      * 
      * @param input The document to process
-     * @return The document with trailing whitespace removed
+     * @return The length of the document with trailing whitespace removed
      * 
      * @see Character.isWhitespace
      */
-    private String rmTrailingWhitespace(String input) {
+    private static int trimmedLength(CharSequence input) {
         int lastChar = input.length() - 1;
         while (lastChar >= 0 && Character.isWhitespace(input.charAt(lastChar)))
             lastChar--;
-        lastChar++;
-        if (lastChar < input.length())
-            return input.substring(0, lastChar);
-        return input;
+        return lastChar + 1;
     }
     
     static String extractLaTeXPreamble(String input) {
@@ -139,15 +137,13 @@ public class TexParser {
      */
     public void parseDocument(String input, boolean checkForMissingSections) throws IOException {
         
-        // remove trailing ws (this is because a discrepancy in the lexer's 
-        // and IDocument's line counting for trailing whitespace)
-        input = this.rmTrailingWhitespace(input);
-        
         this.extractPreamble(input);
         
+        // leave out trailing ws (this is because a discrepancy in the lexer's 
+        // and IDocument's line counting for trailing whitespace)
+        LatexLexer lexer = new LatexLexer(new CharSequenceReader(input, 0, trimmedLength(input)));
         try {
             // start the parse
-            LatexLexer lexer = new LatexLexer(new PushbackReader(new StringReader(input), 4096));
             //LatexLexer lexer = this.getLexer(input); 
             if (this.preamble != null) {
                 OutlineNode on = new OutlineNode("Preamble",
@@ -176,6 +172,188 @@ public class TexParser {
         }
     }
 
+    /**
+     * Reparses only the smallest environment or sectioning node of the
+     * previous parse that encloses the changed part of the document and
+     * splices the results into the results of the previous parse. The
+     * outline nodes of the previous parse must have document positions
+     * that are up to date with the document.
+     * 
+     * @param changeOffset The offset of the first changed character
+     * @param changeEnd The offset after the last changed character
+     * @param checkForMissingSections
+     * @return True if the results were updated, false if the change can't
+     * be handled without parsing the whole document (nothing is changed then)
+     * @throws IOException
+     */
+    public boolean parseRegion(int changeOffset, int changeEnd,
+            boolean checkForMissingSections) throws IOException {
+        if (errors == null || fatalErrors || inputDoc == null) {
+            return false;
+        }
+        OutlineNode node = findEnclosingNode(lparser.getOutlineTree(), changeOffset, changeEnd);
+        for (; node != null; node = node.getParent()) {
+            int type = node.getType();
+            if (type == OutlineNode.TYPE_PREAMBLE) {
+                return false;
+            }
+            if ((type == OutlineNode.TYPE_ENVIRONMENT || type <= OutlineNode.TYPE_PARAGRAPH)
+                    && parseRegion(node, checkForMissingSections)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Reparses the lines of the given node and splices the results in.
+     * 
+     * @param node An environment or sectioning node
+     * @param checkForMissingSections
+     * @return True if the results were updated, false if not
+     * @throws IOException
+     */
+    private boolean parseRegion(OutlineNode node, boolean checkForMissingSections)
+    throws IOException {
+        int beginLine = node.getBeginLine();
+        int endLine = node.getEndLine();
+        boolean isSection = node.getType() <= OutlineNode.TYPE_PARAGRAPH;
+        OutlineNode parent = node.getParent();
+        if (isSection && parent != null && parent.getType() > OutlineNode.TYPE_PARAGRAPH) {
+            return false;
+        }
+        if (lparser.countRegionBarriers(beginLine, endLine) != (isSection ? 1 : 0)
+                || !isOnlyNodeOnLines(lparser.getOutlineTree(), node, beginLine, endLine)) {
+            return false;
+        }
+        
+        String region;
+        int newEndLine;
+        boolean toEnd;
+        try {
+            Position position = node.getPosition();
+            int end = position.getOffset() + position.getLength();
+            region = inputDoc.get(position.getOffset(), position.getLength());
+            toEnd = end == inputDoc.getLength();
+            newEndLine = inputDoc.getLineOfOffset(end) + 1;
+        } catch (BadLocationException e) {
+            return false;
+        }
+        int regionEnd = toEnd ? trimmedLength(region) : region.length();
+        
+        // the parent is only needed for finding out the section level
+        OutlineNode standIn = null;
+        if (isSection && parent != null) {
+            standIn = new OutlineNode(parent.getName(), parent.getType(), 0, null);
+        }
+        LatexParser regionParser = new LatexParser();
+        try {
+            LatexLexer lexer = new LatexLexer(new CharSequenceReader(region, 0, regionEnd));
+            regionParser.parseRegion(lexer, lparser, standIn, checkForMissingSections);
+        } catch (LexerException e) {
+            return false;
+        }
+        if (regionParser.isFatalErrors()
+                || regionParser.countRegionBarriers(0, Integer.MAX_VALUE) != (isSection ? 1 : 0)) {
+            return false;
+        }
+        
+        List<OutlineNode> roots = standIn != null ? standIn.getChildren()
+                : regionParser.getOutlineTree();
+        if (roots == null || roots.size() != 1 || regionParser.getOutlineTree().size() != 1) {
+            return false;
+        }
+        OutlineNode newNode = roots.get(0);
+        if (newNode.getType() != node.getType() || newNode.getBeginLine() != 1) {
+            return false;
+        }
+        if (toEnd) {
+            newEndLine = newNode.getEndLine() + beginLine - 1;
+        } else if (!isSection && newNode.getEndLine() + beginLine - 1 != newEndLine) {
+            // there is something after \end on the last line
+            return false;
+        }
+        
+        if (!lparser.spliceRegion(regionParser, newNode, node, newEndLine)) {
+            return false;
+        }
+        this.errors = lparser.getErrors();
+        return true;
+    }
+    
+    /**
+     * Finds the deepest node whose document position contains the given
+     * range.
+     * 
+     * @param nodes The nodes to search
+     * @param offset The start of the range
+     * @param end The end of the range
+     * @return The deepest enclosing node or null if there is none
+     */
+    private static OutlineNode findEnclosingNode(List<OutlineNode> nodes, int offset, int end) {
+        if (nodes == null) {
+            return null;
+        }
+        for (OutlineNode node : nodes) {
+            Position p = node.getPosition();
+            // a change at the very end of the node may also affect the next line
+            if (p != null && !p.isDeleted() && offset >= p.getOffset()
+                    && end < p.getOffset() + p.getLength()) {
+                OutlineNode child = findEnclosingNode(node.getChildren(), offset, end);
+                return child != null ? child : node;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Checks that the nodes beginning on the lines <code>beginLine</code> to
+     * <code>endLine</code> (exclusive) are exactly <code>node</code> and its
+     * descendants, so that replacing the node replaces everything on these lines.
+     * 
+     * @param nodes The nodes to check
+     * @param node The node that is reparsed
+     * @param beginLine The first line of the node
+     * @param endLine The line after the node
+     * @return True if the nodes on the lines belong to <code>node</code>
+     */
+    private static boolean isOnlyNodeOnLines(List<OutlineNode> nodes, OutlineNode node,
+            int beginLine, int endLine) {
+        if (nodes == null) {
+            return true;
+        }
+        for (OutlineNode on : nodes) {
+            boolean inside = on.getBeginLine() >= beginLine && on.getBeginLine() < endLine;
+            if (on == node) {
+                if (!isInsideLines(on.getChildren(), beginLine, endLine)) {
+                    return false;
+                }
+            } else if (inside || !isOnlyNodeOnLines(on.getChildren(), node, beginLine, endLine)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @param nodes The nodes to check
+     * @param beginLine The first line
+     * @param endLine The line after the last line
+     * @return True if the nodes and their descendants begin on the given lines
+     */
+    private static boolean isInsideLines(List<OutlineNode> nodes, int beginLine, int endLine) {
+        if (nodes == null) {
+            return true;
+        }
+        for (OutlineNode on : nodes) {
+            if (on.getBeginLine() < beginLine || on.getBeginLine() >= endLine
+                    || !isInsideLines(on.getChildren(), beginLine, endLine)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @return The outline tree
      */
@@ -188,8 +366,13 @@ public class TexParser {
      */
     public List<ReferenceEntry> getLabels() {
     	List<ReferenceEntry> labels = lparser.getLabels();
+    	String input = null;
     	for (ReferenceEntry label : labels) {
-    		label.setLabelInfo(inputDoc.get());
+    		// labels kept from the previous parse already have their info
+    		if (label.info == null) {
+    			if (input == null) input = inputDoc.get();
+    			label.setLabelInfo(input);
+    		}
     	}
         return labels;
     }
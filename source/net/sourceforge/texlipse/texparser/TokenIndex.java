@@ -0,0 +1,194 @@
+/*
+ * $Id$
+ *
+ * Copyright (c) 2004-2011 by the TeXlapse Team.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package net.sourceforge.texlipse.texparser;
+
+import net.sourceforge.texlipse.texparser.analysis.AnalysisAdapter;
+import net.sourceforge.texlipse.texparser.node.*;
+
+/**
+ * Maps tokens to integer kinds so that the parser can dispatch on them
+ * with a switch instead of chains of <code>instanceof</code> tests. The
+ * kind is found with a single call through the token's
+ * <code>apply</code>-method, like the index of the generated parsers.
+ * 
+ * Not thread-safe, each parse needs its own instance.
+ */
+final class TokenIndex extends AnalysisAdapter {
+
+    /**
+     * Tokens the parser doesn't distinguish
+     */
+    static final int OTHER = 0;
+    static final int EOF = 1;
+    static final int WHITESPACE = 2;
+    static final int ARGUMENT = 3;
+    static final int OPTARGUMENT = 4;
+    static final int STAR = 5;
+    static final int COMMENTLINE = 6;
+    static final int TASKCOMMENT = 7;
+    static final int LBRACE = 8;
+    static final int RBRACE = 9;
+    static final int CWORD = 10;
+    static final int VTEXT = 11;
+    static final int PART = 12;
+    static final int CHAPTER = 13;
+    static final int SECTION = 14;
+    static final int SSECTION = 15;
+    static final int SSSECTION = 16;
+    static final int PARAGRAPH = 17;
+    static final int LABEL = 18;
+    static final int REF = 19;
+    static final int CITE = 20;
+    static final int BIB = 21;
+    static final int BIBSTYLE = 22;
+    static final int BEGIN = 23;
+    static final int END = 24;
+    static final int INPUT = 25;
+    static final int INCLUDE = 26;
+    static final int PACKAGE = 27;
+    static final int NEW = 28;
+    static final int PINDEX = 29;
+    static final int PBIB = 30;
+
+    private int index;
+
+    /**
+     * @param token A token from <code>LatexLexer</code>
+     * @return The kind of the token
+     */
+    int index(Token token) {
+        token.apply(this);
+        return index;
+    }
+
+    public void caseEOF(EOF node) {
+        index = EOF;
+    }
+
+    public void caseTWhitespace(TWhitespace node) {
+        index = WHITESPACE;
+    }
+
+    public void caseTArgument(TArgument node) {
+        index = ARGUMENT;
+    }
+
+    public void caseTOptargument(TOptargument node) {
+        index = OPTARGUMENT;
+    }
+
+    public void caseTStar(TStar node) {
+        index = STAR;
+    }
+
+    public void caseTCommentline(TCommentline node) {
+        index = COMMENTLINE;
+    }
+
+    public void caseTTaskcomment(TTaskcomment node) {
+        index = TASKCOMMENT;
+    }
+
+    public void caseTLBrace(TLBrace node) {
+        index = LBRACE;
+    }
+
+    public void caseTRBrace(TRBrace node) {
+        index = RBRACE;
+    }
+
+    public void caseTCword(TCword node) {
+        index = CWORD;
+    }
+
+    public void caseTVtext(TVtext node) {
+        index = VTEXT;
+    }
+
+    public void caseTCpart(TCpart node) {
+        index = PART;
+    }
+
+    public void caseTCchapter(TCchapter node) {
+        index = CHAPTER;
+    }
+
+    public void caseTCsection(TCsection node) {
+        index = SECTION;
+    }
+
+    public void caseTCssection(TCssection node) {
+        index = SSECTION;
+    }
+
+    public void caseTCsssection(TCsssection node) {
+        index = SSSECTION;
+    }
+
+    public void caseTCparagraph(TCparagraph node) {
+        index = PARAGRAPH;
+    }
+
+    public void caseTClabel(TClabel node) {
+        index = LABEL;
+    }
+
+    public void caseTCref(TCref node) {
+        index = REF;
+    }
+
+    public void caseTCcite(TCcite node) {
+        index = CITE;
+    }
+
+    public void caseTCbib(TCbib node) {
+        index = BIB;
+    }
+
+    public void caseTCbibstyle(TCbibstyle node) {
+        index = BIBSTYLE;
+    }
+
+    public void caseTCbegin(TCbegin node) {
+        index = BEGIN;
+    }
+
+    public void caseTCend(TCend node) {
+        index = END;
+    }
+
+    public void caseTCinput(TCinput node) {
+        index = INPUT;
+    }
+
+    public void caseTCinclude(TCinclude node) {
+        index = INCLUDE;
+    }
+
+    public void caseTCpackage(TCpackage node) {
+        index = PACKAGE;
+    }
+
+    public void caseTCnew(TCnew node) {
+        index = NEW;
+    }
+
+    public void caseTCpindex(TCpindex node) {
+        index = PINDEX;
+    }
+
+    public void caseTCpbib(TCpbib node) {
+        index = PBIB;
+    }
+
+    public void defaultCase(Node node) {
+        index = OTHER;
+    }
+}